@@ -0,0 +1,62 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** StagingArea.add of one changed file in a repository tracking FILES
+ *  files, including the reads of the stage and the current commit and
+ *  the write of the stage.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AddBenchmark {
+
+    /** Build a repository with one commit of FILES files. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fixture.create(files, 0, "linear", SEED);
+        random = new Random(SEED + 1);
+    }
+
+    /** Give the file added new contents, so that each add stores a new
+     *  blob. */
+    @Setup(Level.Invocation)
+    public void change() {
+        Fixture.write(NAME, random);
+    }
+
+    /** Add the file. */
+    @Benchmark
+    public void add() {
+        StagingArea.readStage().add(NAME);
+    }
+
+    /** The number of files tracked. */
+    @Param({"100", "10000"})
+    public int files;
+
+    /** The source of new contents. */
+    private Random random;
+
+    /** The file added. */
+    private static final String NAME = Fixture.name(0);
+
+    /** The seed of the repository. */
+    private static final long SEED = 61;
+}
@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Checkout of a branch, switching back and forth between master and a
+ *  branch "other" whose commit differs from master's in a fraction CHURN
+ *  of FILES files.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CheckoutBenchmark {
+
+    /** Build the repository and commit the changed files on "other". */
+    @Setup
+    public void setUp() {
+        Fixture.create(files, 0, "linear", SEED);
+        Random random = new Random(SEED + 1);
+        WorkingDirectory.checkout("other");
+        int changed = Math.max(1, (int) (files * churn));
+        for (int i = 0; i < changed; i += 1) {
+            Fixture.write(Fixture.name(i * files / changed), random);
+        }
+        StagingArea.readStage().addAll();
+        new Commit("churn");
+        WorkingDirectory.checkout("master");
+        next = "other";
+    }
+
+    /** Check out the branch not checked out. */
+    @Benchmark
+    public void checkout() {
+        WorkingDirectory.checkout(next);
+        next = next.equals("master") ? "other" : "master";
+    }
+
+    /** The number of files tracked. */
+    @Param({"1000", "10000"})
+    public int files;
+
+    /** The fraction of files that differ between the branches. */
+    @Param({"0.01", "0.5"})
+    public double churn;
+
+    /** The branch checked out next. */
+    private String next;
+
+    /** The seed of the repository. */
+    private static final long SEED = 61;
+}
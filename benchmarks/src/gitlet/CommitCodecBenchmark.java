@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Encoding and decoding of a commit whose snapshot holds FILES files:
+ *  serialization alone, deserialization alone, and a read of the commit
+ *  from the object store, which adds the file and the codec.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CommitCodecBenchmark {
+
+    /** Build a repository with one commit of FILES files. */
+    @Setup
+    public void setUp() {
+        Fixture.create(files, 0, "linear", SEED);
+        commitID = Branch.readBranch("master").getCommitID();
+        commit = Commit.readCommit(commitID);
+        encoded = Utils.serialize(commit);
+    }
+
+    /** Serialize the commit.
+     *  @return : The serialized commit. */
+    @Benchmark
+    public byte[] encode() {
+        return Utils.serialize(commit);
+    }
+
+    /** Deserialize the commit.
+     *  @return : The commit.
+     *  @throws IOException : In case of problems reading.
+     *  @throws ClassNotFoundException : Never. */
+    @Benchmark
+    public Object decode() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(encoded))) {
+            return in.readObject();
+        }
+    }
+
+    /** Read the commit from the object store.
+     *  @return : The commit. */
+    @Benchmark
+    public Commit read() {
+        return ObjectStore.local().readCommit(commitID);
+    }
+
+    /** The number of files in the snapshot. */
+    @Param({"100", "10000"})
+    public int files;
+
+    /** The Sha-1 Hash of the commit. */
+    private String commitID;
+
+    /** The commit. */
+    private Commit commit;
+
+    /** The commit, serialized. */
+    private byte[] encoded;
+
+    /** The seed of the repository. */
+    private static final long SEED = 61;
+}
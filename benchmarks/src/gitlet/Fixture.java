@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/** Repositories for the benchmarks, built in the current directory, and
+ *  changes to their files. Gitlet always works on the current directory,
+ *  so benchmarks are run from a scratch directory holding the file
+ *  .gitlet-bench, which `make run` creates; everything else in that
+ *  directory is deleted each time a repository is built.
+ *  @author David Oh */
+class Fixture {
+
+    /** Delete everything in the current directory and build a repository
+     *  there with RepoGenerator: FILES files committed at once, then a
+     *  branch "other" at that commit, then a history of COMMITS more
+     *  commits of the given SHAPE, each changing one file. The contents
+     *  of the files follow from SEED.
+     *  @param files : The number of files tracked.
+     *  @param commits : The number of commits after the first.
+     *  @param shape : "linear" for one branch, or "criss-cross" for two
+     *  branches that merge each other after every commit, as in
+     *  test43-criss-cross-merge.
+     *  @param seed : The seed of the file contents. */
+    static void create(int files, int commits, String shape, long seed) {
+        File root = WorkingDirectory.cwd();
+        if (!Utils.join(root, MARKER).isFile()) {
+            throw new IllegalStateException("run the benchmarks from a"
+                    + " directory holding " + MARKER);
+        }
+        for (File file : root.listFiles()) {
+            if (!file.getName().equals(MARKER)) {
+                delete(file);
+            }
+        }
+        RepoGenerator.generate("--files", Integer.toString(files),
+                "--commits", Integer.toString(commits), "--shape", shape,
+                "--merge-every", "1", "--churn", "0",
+                "--sizes", "fixed:" + FILE_SIZE, "--seed", Long.toString(seed));
+    }
+
+    /** Write new contents to the file NAME.
+     *  @param name : The name of a file.
+     *  @param random : The source of file contents. */
+    static void write(String name, Random random) {
+        File file = WorkingTree.file(name);
+        file.getParentFile().mkdirs();
+        byte[] contents = new byte[FILE_SIZE];
+        for (int i = 0; i < contents.length; i += 1) {
+            contents[i] = (byte) ('a' + random.nextInt(26));
+        }
+        Utils.writeContents(file, contents);
+    }
+
+    /** Return the name of the Ith file of a generated repository.
+     *  @param i : The index of the file.
+     *  @return : The name. */
+    static String name(int i) {
+        return RepoGenerator.name(i);
+    }
+
+    /** Send standard output, which commands such as status and log print
+     *  to, nowhere.
+     *  @return : The standard output before, to be restored. */
+    static PrintStream quiet() {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return out;
+    }
+
+    /** Delete FILE and, if it is a directory, everything in it.
+     *  @param file : A file or directory. */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** The file marking a directory the benchmarks may overwrite. */
+    static final String MARKER = ".gitlet-bench";
+
+    /** The size of each file in bytes. */
+    private static final int FILE_SIZE = 256;
+}
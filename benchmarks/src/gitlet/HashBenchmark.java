@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Throughput of the hash engines, which name every object, on contents
+ *  in memory and on a file, against a digest fetched from the providers
+ *  for every hash as Utils.sha1 once did. Bytes per second are the score
+ *  times the size.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class HashBenchmark {
+
+    /** Fill the contents with random bytes and write them to a file.
+     *  @throws IOException : In case of problems making the file. */
+    @Setup
+    public void setUp() throws IOException {
+        engine = HashEngine.forName(hash);
+        contents = new byte[size];
+        new Random(SEED).nextBytes(contents);
+        file = File.createTempFile("hash", ".bench");
+        Utils.writeContents(file, contents);
+    }
+
+    /** Delete the file. */
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    /** Hash the contents with the engine's digest for this thread.
+     *  @return : The hash. */
+    @Benchmark
+    public String bytes() {
+        return engine.hash(contents);
+    }
+
+    /** Hash the file, mapped if it is large enough.
+     *  @return : The hash. */
+    @Benchmark
+    public String file() {
+        return engine.hashFile(file);
+    }
+
+    /** Hash the contents with a digest fetched for the purpose.
+     *  @return : The hash.
+     *  @throws NoSuchAlgorithmException : Never, for the known engines. */
+    @Benchmark
+    public String fresh() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance(
+                hash.equals("sha1") ? "SHA-1" : "SHA-256");
+        return HashEngine.hex(digest.digest(contents));
+    }
+
+    /** The name of the engine. */
+    @Param({"sha1", "sha256"})
+    public String hash;
+
+    /** The size of the contents in bytes. */
+    @Param({"64", "4096", "1048576", "67108864"})
+    public int size;
+
+    /** The engine. */
+    private HashEngine engine;
+
+    /** The contents hashed. */
+    private byte[] contents;
+
+    /** A file holding the contents. */
+    private File file;
+
+    /** The seed of the contents. */
+    private static final long SEED = 61;
+}
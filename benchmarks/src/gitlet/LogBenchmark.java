@@ -0,0 +1,65 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The log command, from the head of master back to the initial commit,
+ *  reading one commit at a time. The history is linear, as log follows
+ *  first parents only.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LogBenchmark {
+
+    /** Build a history of COMMITS commits. */
+    @Setup
+    public void setUp() {
+        Fixture.create(FILES, commits, "linear", SEED);
+        head = Commit.readCommit(Branch.readBranch("master"));
+        out = Fixture.quiet();
+    }
+
+    /** Restore standard output. */
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    /** Print the log. */
+    @Benchmark
+    public void log() {
+        Commit.log(head);
+    }
+
+    /** The number of commits after the first. */
+    @Param({"100", "1000", "10000"})
+    public int commits;
+
+    /** The head of master. */
+    private Commit head;
+
+    /** Standard output, while log prints nowhere. */
+    private PrintStream out;
+
+    /** The number of files tracked. */
+    private static final int FILES = 10;
+
+    /** The seed of the repository. */
+    private static final long SEED = 61;
+}
@@ -0,0 +1,125 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Loose object lookups in a store of OBJECTS empty commit files, laid
+ *  out flat, every file in .gitlet/commits as before the fan-out, or
+ *  fanned out over .gitlet/commits/ab/. Measures finding one object by
+ *  its id, resolving an abbreviated id as checkout and reset do, and
+ *  listing every id as gc and fsck do, all through ObjectStore, which
+ *  looks in the fan-out directory first and then in the flat one.
+ *
+ *  Making a million files takes a while, so the store is kept in the
+ *  scratch directory and reused by later runs until a benchmark that
+ *  builds a repository clears the directory.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LookupBenchmark {
+
+    /** Make the objects, unless an earlier run left them, and the ids to
+     *  look up.
+     *  @throws IOException : In case of problems making the files. */
+    @Setup
+    public void setUp() throws IOException {
+        File root = WorkingDirectory.cwd();
+        if (!Utils.join(root, Fixture.MARKER).isFile()) {
+            throw new IllegalStateException("run the benchmarks from a"
+                    + " directory holding " + Fixture.MARKER);
+        }
+        File repo = Utils.join(root, "lookup-" + layout + "-" + objects);
+        File commits = Utils.join(repo, "commits");
+        File done = Utils.join(repo, DONE);
+        Random random = new Random(SEED);
+        ids = new String[objects];
+        byte[] id = new byte[ID_BYTES];
+        for (int i = 0; i < objects; i += 1) {
+            random.nextBytes(id);
+            ids[i] = HashEngine.hex(id);
+        }
+        if (!done.isFile()) {
+            commits.mkdirs();
+            boolean flat = layout.equals("flat");
+            for (String name : ids) {
+                File file = flat ? new File(commits, name)
+                        : ObjectStore.fanOut(commits, name);
+                file.getParentFile().mkdirs();
+                file.createNewFile();
+            }
+            done.createNewFile();
+        }
+        store = new ObjectStore(repo);
+        this.random = new Random(SEED + 1);
+    }
+
+    /** Find the file of a random object.
+     *  @return : True, as every id looked up is stored. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public boolean lookup() {
+        return store.commitFile(ids[random.nextInt(objects)]).isFile();
+    }
+
+    /** Resolve the first PREFIX_LENGTH digits of a random id.
+     *  @return : The full id. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String prefix() {
+        return store.findCommitID(ids[random.nextInt(objects)]
+                .substring(0, PREFIX_LENGTH));
+    }
+
+    /** List the id of every object.
+     *  @return : The number of ids. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int list() {
+        return store.looseCommitIds().size();
+    }
+
+    /** flat or fanout. */
+    @Param({"flat", "fanout"})
+    public String layout;
+
+    /** The number of objects stored. */
+    @Param({"10000", "1000000"})
+    public int objects;
+
+    /** The store. */
+    private ObjectStore store;
+
+    /** The ids of the objects, in the order they were made. */
+    private String[] ids;
+
+    /** The source of the ids looked up. */
+    private Random random;
+
+    /** The name of the file marking a store that is complete. */
+    private static final String DONE = "done";
+
+    /** The length of an id in bytes, that of a SHA-1 hash. */
+    private static final int ID_BYTES = 20;
+
+    /** The digits of an abbreviated id, as in a short log. */
+    private static final int PREFIX_LENGTH = 7;
+
+    /** The seed of the ids. */
+    private static final long SEED = 61;
+}
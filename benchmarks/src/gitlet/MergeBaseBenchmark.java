@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The search for the split point of master and "other" that merge does,
+ *  without the merge base cache, which would answer every search after
+ *  the first. In a criss-cross history every round of merges doubles
+ *  the paths the search follows, so keep COMMITS small for that shape.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class MergeBaseBenchmark {
+
+    /** Build a history of the given shape. */
+    @Setup
+    public void setUp() {
+        Fixture.create(FILES, commits, shape, SEED);
+        currentID = Branch.readBranch("master").getCommitID();
+        givenID = Branch.readBranch("other").getCommitID();
+    }
+
+    /** Find the split point.
+     *  @return : The Sha-1 Hash of the split point. */
+    @Benchmark
+    public String findSplitPoint() {
+        HashMap<String, Integer> ancestors = new HashMap<String, Integer>();
+        WorkingDirectory.findCurrentAncestors(currentID, ancestors, 0);
+        int[] min = {Integer.MAX_VALUE};
+        String[] result = {givenID};
+        WorkingDirectory.findSplitPoints(givenID, ancestors, min, result);
+        return result[0];
+    }
+
+    /** The number of commits after the first. */
+    @Param({"16", "32"})
+    public int commits;
+
+    /** The shape of the history. */
+    @Param({"linear", "criss-cross"})
+    public String shape;
+
+    /** The head of master. */
+    private String currentID;
+
+    /** The head of "other". */
+    private String givenID;
+
+    /** The number of files tracked. */
+    private static final int FILES = 10;
+
+    /** The seed of the repository. */
+    private static final long SEED = 61;
+}
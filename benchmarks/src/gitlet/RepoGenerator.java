@@ -0,0 +1,448 @@
+package gitlet;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** Builds large repositories in the current directory for benchmarks and
+ *  experiments, such as a million commits, a deep criss-cross history or
+ *  a snapshot of a hundred thousand files. The commands would take hours
+ *  for that, reading and writing the stage, HEAD and commit tree once a
+ *  commit, so the generator makes Commit and MergeCommit objects itself,
+ *  keeps the snapshots, branches and commit tree in memory, and writes
+ *  only the objects as it goes, on a pool of threads while the next
+ *  commit is made. The branches, stage and commit tree are written
+ *  once at the end, and the working directory is checked out to master.
+ *  The result is a repository like any other: the same SEED and options
+ *  give the same files, commits and ids every time.
+ *
+ *  Usage, from the directory to fill:
+ *
+ *     java gitlet.RepoGenerator [--commits N] [--files N]
+ *          [--shape linear|criss-cross] [--merge-every N] [--churn F]
+ *          [--sizes fixed:N|uniform:MIN-MAX|lognormal:MEDIAN[:SIGMA]]
+ *          [--seed N] [--hash sha1|sha256]
+ *
+ *  The first commit adds all the files and the branch "other" is made
+ *  there. A linear history then adds COMMITS commits to master and leaves
+ *  "other" behind. A criss-cross history commits MERGE-EVERY times to
+ *  each of master and "other", master changing the even-numbered files
+ *  and "other" the odd ones, then merges each into the other, as in
+ *  test43-criss-cross-merge, and repeats until there are COMMITS commits,
+ *  merges included. Each commit changes CHURN of the files it may change,
+ *  and at least one. File sizes are drawn from SIZES, below the size at
+ *  which blobs are chunked. Objects are named by the hash engine HASH, as
+ *  after init --hash=HASH.
+ *  @author David Oh */
+class RepoGenerator {
+
+    /** Generate a repository as ARGS ask and report what was made.
+     *  @param args : The options. */
+    public static void main(String... args) {
+        try {
+            long start = System.nanoTime();
+            RepoGenerator generator = generate(args);
+            System.out.printf("%d commits (%d merges), %d files, %d blobs"
+                    + " of %d bytes in %.1f s%n", generator.commits + 1,
+                    generator.merges, generator.files, generator.blobs,
+                    generator.blobBytes,
+                    (System.nanoTime() - start) / 1e9);
+        } catch (GitletException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Generate a repository in the current directory as ARGS ask.
+     *  @param args : The options, as for main().
+     *  @return : The generator, for its counts. */
+    static RepoGenerator generate(String... args) {
+        RepoGenerator generator = new RepoGenerator();
+        generator.parse(args);
+        generator.run();
+        return generator;
+    }
+
+    /** Set the options from ARGS.
+     *  @param args : Pairs of an option and its value. */
+    private void parse(String... args) {
+        if (args.length % 2 != 0) {
+            throw new GitletException("Incorrect operands.");
+        }
+        for (int i = 0; i < args.length; i += 2) {
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                case "--commits":
+                    totalCommits = Integer.parseInt(value);
+                    break;
+                case "--files":
+                    files = Integer.parseInt(value);
+                    break;
+                case "--shape":
+                    shape = value;
+                    break;
+                case "--merge-every":
+                    mergeEvery = Integer.parseInt(value);
+                    break;
+                case "--churn":
+                    churn = Double.parseDouble(value);
+                    break;
+                case "--sizes":
+                    sizes = new Sizes(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--hash":
+                    hash = HashEngine.forName(value);
+                    break;
+                default:
+                    throw new GitletException("Unknown option " + args[i]);
+                }
+            } catch (NumberFormatException excp) {
+                throw new GitletException("Bad value for " + args[i] + ": "
+                        + value);
+            }
+        }
+        if (!shape.equals("linear") && !shape.equals("criss-cross")) {
+            throw new GitletException("Unknown shape " + shape);
+        }
+        if (totalCommits < 0 || files < 2 || mergeEvery < 1
+                || churn < 0 || churn > 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+    }
+
+    /** Generate the repository. */
+    private void run() {
+        WorkingDirectory.init(hash);
+        Branch head = WorkingDirectory.readHead();
+        random = new Random(seed);
+        tree = Utils.readObject(Utils.join(WorkingDirectory.repo(),
+                "commitTree"), CommitTree.class);
+        int threads = Runtime.getRuntime().availableProcessors();
+        pool = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_PER_THREAD * threads),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            HashMap<String, String> snap = new HashMap<String, String>();
+            for (int i = 0; i < files; i += 1) {
+                snap.put(name(i), blob());
+            }
+            Commit master = commit(new Commit(files + " files", time(),
+                    head.getBranchPointer().getCommitID(), snap));
+            Commit other = master;
+            if (shape.equals("linear")) {
+                while (commits < totalCommits) {
+                    master = change(master, 0, 1);
+                }
+            } else {
+                while (commits < totalCommits) {
+                    for (int i = 0; i < mergeEvery; i += 1) {
+                        master = change(master, 0, 2);
+                        other = change(other, 1, 2);
+                    }
+                    Commit oldMaster = master;
+                    master = merge(master, other, "other", "master");
+                    other = merge(other, oldMaster, "master", "other");
+                }
+            }
+            finish();
+            Branch branch = new Branch("master", master);
+            WorkingDirectory.saveBranch(branch, "generated");
+            WorkingDirectory.saveBranch(new Branch("other", other),
+                    "generated");
+            Utils.writeObject(Utils.join(WorkingDirectory.repo(),
+                    "commitTree"), tree);
+            checkout(master.getSnapshot());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return a commit on top of PARENT changing some of the files whose
+     *  number is FIRST more than a multiple of STEP.
+     *  @param parent : The commit changed.
+     *  @param first : The least number of a file that may change.
+     *  @param step : The distance between the files that may change.
+     *  @return : The new commit. */
+    private Commit change(Commit parent, int first, int step) {
+        HashMap<String, String> snap =
+                new HashMap<String, String>(parent.getSnapshot());
+        int choices = (files - first + step - 1) / step;
+        int changes = Math.max(1, (int) Math.round(churn * choices));
+        String name = null;
+        for (int i = 0; i < changes; i += 1) {
+            name = name(first + step * random.nextInt(choices));
+            snap.put(name, blob());
+        }
+        String message = changes == 1 ? "change " + name
+                : "change " + changes + " files";
+        return commit(new Commit(message, time(), parent.getSha1(), snap));
+    }
+
+    /** Return the commit merging FROM, the head of branch GIVEN, into
+     *  INTO, the head of branch CURRENT. FROM's files are those its side
+     *  changes, so the merge takes them and keeps INTO's others.
+     *  @param into : The head of the current branch.
+     *  @param from : The head of the given branch.
+     *  @param given : The name of the given branch.
+     *  @param current : The name of the current branch.
+     *  @return : The merge commit. */
+    private Commit merge(Commit into, Commit from, String given,
+                         String current) {
+        HashMap<String, String> snap =
+                new HashMap<String, String>(into.getSnapshot());
+        int first = current.equals("master") ? 1 : 0;
+        for (int i = first; i < files; i += 2) {
+            snap.put(name(i), from.getSnapshot().get(name(i)));
+        }
+        merges += 1;
+        return commit(new MergeCommit("Merged " + given + " into "
+                + current + ".", time(), into.getSha1(), from.getSha1(),
+                snap));
+    }
+
+    /** Give COMMIT its id, add it to the commit tree and store it.
+     *  @param commit : A commit, not yet saved.
+     *  @return : COMMIT. */
+    private Commit commit(Commit commit) {
+        String id = commit.computeSha1();
+        tree.getAllCommits().add(id);
+        write(STORE.get().commitFile(id), Utils.serialize(commit));
+        commits += 1;
+        return commit;
+    }
+
+    /** Make new contents of a size drawn from SIZES and store them as a
+     *  blob. The contents are lines of random lowercase letters.
+     *  @return : The Sha-1 Hash of the blob. */
+    private String blob() {
+        byte[] contents = new byte[sizes.next(random)];
+        random.nextBytes(contents);
+        for (int i = 0; i < contents.length; i += 1) {
+            if (i % LINE == LINE - 1) {
+                contents[i] = '\n';
+            } else {
+                contents[i] = (byte) ('a' + (contents[i] & 0xff) % 26);
+            }
+        }
+        String id = hash.hash(contents);
+        write(STORE.get().blobFile(id), contents);
+        blobs += 1;
+        blobBytes += contents.length;
+        return id;
+    }
+
+    /** Return the time stamp of the next commit, a minute after the last.
+     *  @return : The time stamp. */
+    private String time() {
+        return TIME_FORMAT.format(EPOCH.plusMinutes(commits + 1));
+    }
+
+    /** Write the object CONTENTS to FILE on the pool, or on this thread
+     *  if the pool is behind.
+     *  @param file : The file of a blob or commit.
+     *  @param contents : The contents of the object. */
+    private void write(final File file, final byte[] contents) {
+        check();
+        pool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    STORE.get().writeObject(file, contents);
+                } catch (RuntimeException excp) {
+                    failure.compareAndSet(null, excp);
+                }
+            }
+        });
+    }
+
+    /** Wait for every object to be written. */
+    private void finish() {
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+                continue;
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        check();
+    }
+
+    /** Throw the first error met writing an object, if any. */
+    private void check() {
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /** Write the files of SNAP to the working directory, in parallel.
+     *  @param snap : The snapshot of the head commit. */
+    private static void checkout(HashMap<String, String> snap) {
+        final HashMap<String, String> files = snap;
+        WorkingTree.map(new ArrayList<String>(files.keySet()),
+                new Utils.Function<String, String>() {
+                    @Override
+                    String apply(String name) {
+                        File file = WorkingTree.file(name);
+                        file.getParentFile().mkdirs();
+                        STORE.get().copyBlob(files.get(name), file);
+                        return null;
+                    }
+                });
+    }
+
+    /** Return the name of the Ith file, FILES_PER_DIR to a directory.
+     *  @param i : The index of the file.
+     *  @return : The name. */
+    static String name(int i) {
+        return "d" + i / FILES_PER_DIR + "/f" + i + ".txt";
+    }
+
+    /** A distribution of file sizes. */
+    private static class Sizes {
+
+        /** The distribution described by SPEC: fixed:N, uniform:MIN-MAX or
+         *  lognormal:MEDIAN[:SIGMA], SIGMA being 1 if not given.
+         *  @param spec : The description. */
+        Sizes(String spec) {
+            String[] parts = spec.split("[:-]");
+            kind = parts[0];
+            if (kind.equals("fixed") && parts.length == 2) {
+                low = Integer.parseInt(parts[1]);
+                high = low;
+            } else if (kind.equals("uniform") && parts.length == 3) {
+                low = Integer.parseInt(parts[1]);
+                high = Integer.parseInt(parts[2]);
+            } else if (kind.equals("lognormal")
+                    && (parts.length == 2 || parts.length == 3)) {
+                low = Integer.parseInt(parts[1]);
+                high = low;
+                if (parts.length == 3) {
+                    sigma = Double.parseDouble(parts[2]);
+                }
+            } else {
+                throw new GitletException("Unknown sizes " + spec);
+            }
+            if (low < 0 || high < low || high > MAX_SIZE || sigma < 0) {
+                throw new GitletException("Unknown sizes " + spec);
+            }
+        }
+
+        /** Return a size drawn using RANDOM.
+         *  @param random : The source of sizes.
+         *  @return : A size in bytes, at most MAX_SIZE. */
+        int next(Random random) {
+            if (kind.equals("uniform")) {
+                return low + random.nextInt(high - low + 1);
+            } else if (kind.equals("lognormal")) {
+                double size = low * Math.exp(sigma * random.nextGaussian());
+                return (int) Math.min(MAX_SIZE, Math.round(size));
+            }
+            return low;
+        }
+
+        /** fixed, uniform or lognormal. */
+        private final String kind;
+
+        /** The least size, or the median of a lognormal distribution. */
+        private final int low;
+
+        /** The greatest size. */
+        private final int high;
+
+        /** The standard deviation of the log of a lognormal size. */
+        private double sigma = 1;
+    }
+
+    /** The number of commits to make after the first. */
+    private int totalCommits = 1000;
+
+    /** The number of files. */
+    private int files = 100;
+
+    /** linear or criss-cross. */
+    private String shape = "linear";
+
+    /** The commits to each branch between merges. */
+    private int mergeEvery = 8;
+
+    /** The fraction of the files a commit may change that it changes. */
+    private double churn = 0.01;
+
+    /** The sizes of the files. */
+    private Sizes sizes = new Sizes("fixed:256");
+
+    /** The seed of everything random. */
+    private long seed = 61;
+
+    /** The hash engine objects are named by. */
+    private HashEngine hash = HashEngine.SHA1;
+
+    /** The source of file contents and of the files changed. */
+    private Random random;
+
+    /** Every commit made, written at the end. */
+    private CommitTree tree;
+
+    /** The threads writing objects. */
+    private ThreadPoolExecutor pool;
+
+    /** The first error met writing an object. */
+    private final AtomicReference<RuntimeException> failure =
+            new AtomicReference<RuntimeException>();
+
+    /** The commits made after the first. */
+    private int commits = -1;
+
+    /** The merge commits made. */
+    private int merges;
+
+    /** The blobs made. */
+    private long blobs;
+
+    /** The bytes in the blobs made. */
+    private long blobBytes;
+
+    /** The object store of each thread. */
+    private static final ThreadLocal<ObjectStore> STORE =
+            new ThreadLocal<ObjectStore>() {
+                @Override
+                protected ObjectStore initialValue() {
+                    return new ObjectStore(WorkingDirectory.repo());
+                }
+            };
+
+    /** The largest file made, one byte short of being chunked. */
+    private static final int MAX_SIZE =
+            (int) ObjectStore.CHUNK_THRESHOLD - 1;
+
+    /** The length of a line of a file, its newline included. */
+    private static final int LINE = 64;
+
+    /** The number of files in each directory. */
+    private static final int FILES_PER_DIR = 100;
+
+    /** The writes waiting for each thread before the generator stops to
+     *  write one itself. */
+    private static final int QUEUE_PER_THREAD = 64;
+
+    /** The time of the commit adding the files. */
+    private static final LocalDateTime EPOCH =
+            LocalDateTime.of(2020, 1, 1, 0, 0);
+
+    /** The format of commit time stamps, as Commit.computeTime() has it. */
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("E MMM dd HH:mm:ss yyyy -0800");
+}
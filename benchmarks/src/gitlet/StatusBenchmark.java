@@ -0,0 +1,66 @@
+package gitlet;
+
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** The status command in a repository tracking FILES files, one in a
+ *  hundred of them modified and not staged. No watcher runs, so every
+ *  tracked file is hashed each time.
+ *  @author David Oh */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StatusBenchmark {
+
+    /** Build the repository and modify some of its files. */
+    @Setup
+    public void setUp() {
+        Fixture.create(files, 0, "linear", SEED);
+        Random random = new Random(SEED + 1);
+        for (int i = 0; i < files; i += MODIFIED_EVERY) {
+            Fixture.write(Fixture.name(i), random);
+        }
+        out = Fixture.quiet();
+    }
+
+    /** Restore standard output. */
+    @TearDown
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    /** Print the status. */
+    @Benchmark
+    public void status() {
+        WorkingDirectory.status();
+    }
+
+    /** The number of files tracked. */
+    @Param({"1000", "10000"})
+    public int files;
+
+    /** Standard output, while status prints nowhere. */
+    private PrintStream out;
+
+    /** One file in this many is modified. */
+    private static final int MODIFIED_EVERY = 100;
+
+    /** The seed of the repository. */
+    private static final long SEED = 61;
+}
@@ -1,10 +1,11 @@
 package gitlet;
 
-import java.io.File;
 import java.io.Serializable;
 
 /** Branches are pointers that point to commits. Branch stores the commit's
  *  Sha-1 Hash instead of storing an actual reference to the commit object.
+ *  Branches are kept on disk by Refs; a Branch is a copy of one, which
+ *  repositories made before Refs also stored serialized.
  *  @author David Oh */
 public class Branch implements Serializable {
 
@@ -24,22 +25,31 @@ public class Branch implements Serializable {
         this.commitID = commit.getSha1();
     }
 
+    /** Creates a new branch that points to the commit with the given id.
+     *  @param branchName : The name of the branch.
+     *  @param commitID : The Sha-1 Hash of the commit it points to. */
+    Branch(String branchName, String commitID) {
+        this.name = branchName;
+        this.commitID = commitID;
+    }
+
     /** Read branch with the given name.
-     *  @param fileName : The name of the branch file.
+     *  @param fileName : The name of the branch.
      *  @return : The branch read from disk. */
     static Branch readBranch(String fileName) {
-        File branchFile = Utils.join(WorkingDirectory.REFS, fileName);
-        if (!branchFile.exists()) {
+        String id = Refs.local().get(fileName);
+        if (id == null) {
             throw new GitletException("No such branch exists.");
         }
-        return Utils.readObject(branchFile, Branch.class);
+        return new Branch(fileName, id);
     }
 
     /** Set this branch pointer to point to this commit.
-     *  @param commit : The commit to set this branch to. */
-    void setBranch(Commit commit) {
+     *  @param commit : The commit to set this branch to.
+     *  @param message : Why, for the reflog. */
+    void setBranch(Commit commit, String message) {
         commitID = commit.getSha1();
-        WorkingDirectory.saveBranch(this);
+        WorkingDirectory.saveBranch(this, message);
     }
 
 
@@ -88,4 +98,7 @@ public class Branch implements Serializable {
 
     /** Head points to a branch. Branch pointer is effectively head. */
     private Branch branchPointer;
+
+    /** Version of the serialized form of branches. */
+    private static final long serialVersionUID = -4217564403577647444L;
 }
@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A bundle is one file holding the history of a branch, for carrying it
+ *  to a repository that cannot be reached as a remote. It starts with a
+ *  header naming the hash engine, the branch and its commit, followed by
+ *  the stream of pack entries a Transfer sends, with every reachable
+ *  object, and ends with the index of that stream, the number of
+ *  objects followed by the id and offset of each, and the offset the
+ *  index starts at. A file that does not hold all of these in order is
+ *  not a bundle.
+ *
+ *  Objects are written one at a time as they are stored, already encoded
+ *  with their codec, and read back one at a time, so neither command
+ *  holds more than one object in memory however long the history is;
+ *  only ids are kept for the whole history. Unbundling reads the index
+ *  first and skips the entries of objects the repository already has
+ *  without reading them.
+ *  @author David Oh */
+class Bundle {
+
+    /** Write the history of the branch BRANCH to the file NAME. Used for
+     *  the bundle create [file] [branch name] command.
+     *  @param name : The bundle file to write.
+     *  @param branch : The name of a branch. */
+    static void create(String name, String branch) {
+        String id = Refs.local().get(branch);
+        if (id == null) {
+            throw new GitletException("A branch with that name does not "
+                    + "exist.");
+        }
+        ObjectStore store = ObjectStore.local();
+        Transfer transfer = new Transfer(store, null);
+        transfer.want(id);
+        File file = bundleFile(name);
+        if (!file.getAbsoluteFile().getParentFile().isDirectory()) {
+            throw new GitletException("Bundle directory not found.");
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        Pack.Index index = new Pack.Index();
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(
+                            tmp.toPath()), Codec.BUFFER_SIZE))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(store.getHash().getName());
+                out.writeUTF(branch);
+                out.writeUTF(id);
+                long start = out.size();
+                long length = transfer.send(out, index);
+                writeIndex(out, index.offsets());
+                out.writeLong(start + length);
+            }
+            Trace.wrote(tmp);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store the objects of the bundle in the file NAME that this
+     *  repository lacks, and point the branch bundle/BRANCH at its commit,
+     *  BRANCH being the branch it was made from. Used for the bundle
+     *  unbundle [file] command.
+     *  @param name : A bundle file. */
+    static void unbundle(String name) {
+        File file = bundleFile(name);
+        if (!file.isFile()) {
+            throw new GitletException("Bundle file not found.");
+        }
+        ObjectStore store = ObjectStore.local();
+        String branch;
+        String id;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                throw new GitletException("Not a gitlet bundle.");
+            }
+            if (!in.readUTF().equals(store.getHash().getName())) {
+                throw new GitletException("The repositories use different "
+                        + "hash algorithms.");
+            }
+            branch = in.readUTF();
+            id = in.readUTF();
+            long start = in.getFilePointer();
+            long end = in.length() - Long.BYTES;
+            if (end < start) {
+                throw new GitletException("Not a gitlet bundle.");
+            }
+            in.seek(end);
+            long indexAt = in.readLong();
+            if (indexAt < start + Pack.HEADER_LENGTH || indexAt > end) {
+                throw new GitletException("Not a gitlet bundle.");
+            }
+            FileChannel channel = in.getChannel();
+            receive(store, channel, start,
+                    readIndex(channel, indexAt - start, indexAt, end));
+        } catch (IOException excp) {
+            throw new GitletException("Not a gitlet bundle.");
+        }
+        Refs.local().update(PREFIX + branch, id, "bundle: unbundle "
+                + file.getName());
+    }
+
+    /** Read the entries of CHANNEL, whose stream starts at START, that
+     *  STORE lacks, in the order they were written, and store them.
+     *  Entries that follow one another are read through one buffer; the
+     *  channel is only moved to skip over entries.
+     *  @param store : The receiving store.
+     *  @param channel : The bundle file.
+     *  @param start : The offset of the stream in the bundle.
+     *  @param offsets : The offset of each entry in the stream.
+     *  @throws IOException : In case of problems reading. */
+    private static void receive(ObjectStore store, FileChannel channel,
+                                long start, Map<String, Long> offsets)
+        throws IOException {
+        ArrayList<Map.Entry<String, Long>> entries =
+                new ArrayList<Map.Entry<String, Long>>(offsets.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(Map.Entry<String, Long> a,
+                               Map.Entry<String, Long> b) {
+                return Long.compare(a.getValue(), b.getValue());
+            }
+        });
+        channel.position(start);
+        DataInputStream in = open(channel);
+        Pack.readHeader(in);
+        long at = Pack.HEADER_LENGTH;
+        Transfer.Receiver receiver = new Transfer.Receiver(store);
+        try {
+            for (Map.Entry<String, Long> entry : entries) {
+                String entryID = entry.getKey();
+                if (store.containsCommit(entryID)
+                        || store.containsBlob(entryID)) {
+                    continue;
+                }
+                if (entry.getValue() != at) {
+                    at = entry.getValue();
+                    channel.position(start + at);
+                    in = open(channel);
+                }
+                Pack.Entry read = Pack.Entry.read(in);
+                if (read == null || !read.getID().equals(entryID)) {
+                    throw new GitletException("Not a gitlet bundle.");
+                }
+                at += read.length();
+                receiver.accept(read);
+            }
+        } catch (IOException | RuntimeException excp) {
+            receiver.abort();
+            throw excp;
+        }
+        receiver.finish();
+    }
+
+    /** Write OFFSETS, the index of a stream, to OUT: their number, then
+     *  the id and offset of each entry.
+     *  @param out : The bundle being written.
+     *  @param offsets : The offset of each entry in the stream.
+     *  @throws IOException : In case of problems writing. */
+    private static void writeIndex(DataOutputStream out,
+                                   Map<String, Long> offsets)
+        throws IOException {
+        out.writeInt(offsets.size());
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    /** Read the index of a bundle from INDEXAT to END in CHANNEL. Every
+     *  offset must lie in the stream, which is LENGTH bytes long.
+     *  @param channel : The bundle file.
+     *  @param length : The length of the stream.
+     *  @param indexAt : The offset of the index.
+     *  @param end : The offset just past the index.
+     *  @return : The offset of each entry in the stream.
+     *  @throws IOException : In case of problems reading. */
+    private static Map<String, Long> readIndex(FileChannel channel,
+                                               long length, long indexAt,
+                                               long end)
+        throws IOException {
+        channel.position(indexAt);
+        DataInputStream in = open(channel);
+        int count = in.readInt();
+        if (count < 0 || count > (end - indexAt) / MIN_INDEX_ENTRY) {
+            throw new GitletException("Not a gitlet bundle.");
+        }
+        HashMap<String, Long> offsets = new HashMap<String, Long>();
+        for (int i = 0; i < count; i += 1) {
+            String id = in.readUTF();
+            long offset = in.readLong();
+            if (offset < Pack.HEADER_LENGTH || offset >= length) {
+                throw new GitletException("Not a gitlet bundle.");
+            }
+            offsets.put(id, offset);
+        }
+        return offsets;
+    }
+
+    /** Return a buffered stream reading CHANNEL from its position. The
+     *  stream is not closed, since that would close the channel.
+     *  @param channel : The bundle file.
+     *  @return : The stream. */
+    private static DataInputStream open(FileChannel channel) {
+        return new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel), Codec.BUFFER_SIZE));
+    }
+
+    /** Return the file NAME, relative to the working directory unless it
+     *  is absolute.
+     *  @param name : The name of a bundle file.
+     *  @return : The file. */
+    private static File bundleFile(String name) {
+        File file = new File(name);
+        return file.isAbsolute() ? file
+                : Utils.join(WorkingDirectory.cwd(), name);
+    }
+
+    /** The bytes every bundle starts with. */
+    private static final byte[] MAGIC = {'G', 'B', 'D', 'L'};
+
+    /** The version of the bundle format. Version 1 kept its index as a
+     *  serialized Pack.Index. */
+    private static final int VERSION = 2;
+
+    /** The fewest bytes an entry of the index takes: an empty id and its
+     *  offset. */
+    private static final int MIN_INDEX_ENTRY = 2 + Long.BYTES;
+
+    /** The start of the name of the branch a bundle is unbundled into. */
+    static final String PREFIX = "bundle/";
+}
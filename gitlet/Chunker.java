@@ -0,0 +1,112 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/** Splits a stream into content-defined chunks using FastCDC. A cut point
+ *  is placed wherever a gear hash of the last few dozen bytes matches a
+ *  mask, so cut points depend only on nearby contents: changing a few
+ *  bytes of a large file changes only the chunks around them, and the
+ *  rest of the file splits exactly as before. Cut points are kept between
+ *  MIN_SIZE and MAX_SIZE bytes apart, and a stricter mask before AVG_SIZE
+ *  and a looser one after it keep most chunks close to AVG_SIZE.
+ *  @author David Oh */
+class Chunker {
+
+    /** A chunker reading from IN.
+     *  @param in : The stream to split. */
+    Chunker(InputStream in) {
+        this.in = in;
+        this.buffer = new byte[MAX_SIZE];
+    }
+
+    /** Return the next chunk of the stream.
+     *  @return : The chunk, or null at the end of the stream.
+     *  @throws IOException : In case of problems reading. */
+    byte[] next() throws IOException {
+        if (!eof && length < MAX_SIZE) {
+            int n = in.readNBytes(buffer, length, MAX_SIZE - length);
+            length += n;
+            eof = length < MAX_SIZE;
+        }
+        if (length == 0) {
+            return null;
+        }
+        int cut = cut(buffer, length);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, length - cut);
+        length -= cut;
+        return chunk;
+    }
+
+    /** Return the length of the first chunk of DATA[0..LENGTH).
+     *  @param data : The bytes to split.
+     *  @param length : The number of bytes available.
+     *  @return : The position of the first cut point. */
+    static int cut(byte[] data, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int end = Math.min(length, MAX_SIZE);
+        int normal = Math.min(end, AVG_SIZE);
+        long fp = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            fp = (fp << 1) + GEAR[data[i] & 0xff];
+            if ((fp & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i += 1) {
+            fp = (fp << 1) + GEAR[data[i] & 0xff];
+            if ((fp & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /** Smallest chunk, except at the end of a stream. */
+    static final int MIN_SIZE = 16 << 10;
+
+    /** Size most chunks are close to. */
+    static final int AVG_SIZE = 64 << 10;
+
+    /** Largest chunk. */
+    static final int MAX_SIZE = 256 << 10;
+
+    /** Mask used before AVG_SIZE, two bits stricter than log2(AVG_SIZE).
+     *  The top bits of the hash depend on the most bytes. */
+    private static final long MASK_S = -1L << (64 - 18);
+
+    /** Mask used after AVG_SIZE, two bits looser than log2(AVG_SIZE). */
+    private static final long MASK_L = -1L << (64 - 14);
+
+    /** A random value for each byte. The values are fixed, since the cut
+     *  points of a file must be the same every time it is stored. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long state = 0x6769746c65744344L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            state += 0x9e3779b97f4a7c15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+
+    /** The stream being split. */
+    private final InputStream in;
+
+    /** Bytes read from the stream but not yet returned. */
+    private final byte[] buffer;
+
+    /** Number of bytes in BUFFER. */
+    private int length;
+
+    /** True once the stream has been read to its end. */
+    private boolean eof;
+}
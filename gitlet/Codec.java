@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** A Codec encodes the bytes of stored objects on their way to disk and
+ *  decodes them on their way back. Every codec has a name, used in the
+ *  repository's config file, and a one byte id, written at the front of
+ *  each object so that objects stored with different codecs can live side
+ *  by side in one repository.
+ *  @author David Oh */
+abstract class Codec {
+
+    /** A codec with name NAME and id ID.
+     *  @param name : The name of the codec in the config file.
+     *  @param id : The id of the codec in stored objects. */
+    Codec(String name, byte id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    /** Return a stream that encodes everything written to it onto OUT.
+     *  Closing the returned stream closes OUT.
+     *  @param out : The stream to write encoded bytes to.
+     *  @return : The encoding stream.
+     *  @throws IOException : In case of problems writing. */
+    abstract OutputStream encode(OutputStream out) throws IOException;
+
+    /** Return a stream that decodes the bytes read from IN.
+     *  @param in : The stream of encoded bytes.
+     *  @return : The decoding stream. */
+    abstract InputStream decode(InputStream in);
+
+    /** Return true if this codec is worth using on contents beginning with
+     *  SAMPLE. Codecs that cannot shrink the sample, such as when it is
+     *  already compressed, return false so that it can be stored raw.
+     *  @param sample : The first bytes of the contents to be stored.
+     *  @return : A boolean. */
+    boolean worthwhile(byte[] sample) {
+        return true;
+    }
+
+    /** Get the name of this codec.
+     *  @return : The name used in the config file. */
+    String getName() {
+        return name;
+    }
+
+    /** Get the id of this codec.
+     *  @return : The id stored at the front of each object. */
+    byte getId() {
+        return id;
+    }
+
+    /** Return the codec with the given name.
+     *  @param name : The name of a codec.
+     *  @return : The codec. */
+    static Codec forName(String name) {
+        for (Codec codec : CODECS) {
+            if (codec.name.equals(name)) {
+                return codec;
+            }
+        }
+        throw new GitletException("No codec with that name exists.");
+    }
+
+    /** Return the codec with the given id.
+     *  @param id : The id of a codec.
+     *  @return : The codec. */
+    static Codec forId(int id) {
+        for (Codec codec : CODECS) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("unknown codec id " + id);
+    }
+
+    /** Return the first SAMPLE_SIZE bytes of CONTENTS, or all of it if it
+     *  is shorter.
+     *  @param contents : The contents of an object.
+     *  @return : The sample. */
+    static byte[] sample(byte[] contents) {
+        if (contents.length <= SAMPLE_SIZE) {
+            return contents;
+        }
+        return Arrays.copyOf(contents, SAMPLE_SIZE);
+    }
+
+    /** Stores bytes unchanged. */
+    static final Codec NONE = new Codec("none", (byte) 0) {
+        @Override
+        OutputStream encode(OutputStream out) {
+            return out;
+        }
+
+        @Override
+        InputStream decode(InputStream in) {
+            return in;
+        }
+    };
+
+    /** Compresses bytes with zlib deflate. */
+    static final Codec DEFLATE = new Codec("deflate", (byte) 1) {
+        @Override
+        OutputStream encode(OutputStream out) {
+            return new DeflaterOutputStream(out,
+                    new Deflater(Deflater.DEFAULT_COMPRESSION), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        def.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        InputStream decode(InputStream in) {
+            return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        inf.end();
+                    }
+                }
+            };
+        }
+
+        @Override
+        boolean worthwhile(byte[] sample) {
+            if (sample.length < MIN_SAMPLE) {
+                return true;
+            }
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(sample);
+                deflater.finish();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                long compressed = 0;
+                while (!deflater.finished()) {
+                    compressed += deflater.deflate(buffer);
+                }
+                return compressed * 100 < sample.length * MAX_RATIO;
+            } finally {
+                deflater.end();
+            }
+        }
+    };
+
+    /** All known codecs. */
+    private static final Codec[] CODECS = {NONE, DEFLATE};
+
+    /** Size of the buffers used while encoding and decoding. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Number of leading bytes of an object tried before choosing to
+     *  compress it. */
+    static final int SAMPLE_SIZE = 1 << 16;
+
+    /** Samples shorter than this are always compressed. */
+    private static final int MIN_SAMPLE = 512;
+
+    /** Contents whose sample does not shrink below this percentage of its
+     *  size are stored raw. */
+    private static final int MAX_RATIO = 90;
+
+    /** The name of this codec. */
+    private final String name;
+
+    /** The id of this codec. */
+    private final byte id;
+}
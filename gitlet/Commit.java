@@ -3,9 +3,13 @@ package gitlet;
 import java.io.File;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Set;
 import java.util.Iterator;
+import java.util.TreeSet;
 import java.time.format.DateTimeFormatter;
 
 /** A commit is a snapshot of files. Keeps track of the version of each file
@@ -30,17 +34,120 @@ public class Commit implements Serializable {
         setUp();
     }
 
+    /** Create a commit of SNAP made of the given parts, without reading or
+     *  changing the stage or any branch, and without saving it. Used to
+     *  build repositories directly, as RepoGenerator does.
+     *  @param msg : The commit message.
+     *  @param time : The time stamp.
+     *  @param parent : The Sha-1 Hash of the parent commit.
+     *  @param snap : The snapshot, kept rather than copied. */
+    Commit(String msg, String time, String parent,
+           HashMap<String, String> snap) {
+        message = msg;
+        timeStamp = time;
+        previousCommit = parent;
+        snapshot = snap;
+    }
+
+    /** Create new commit of STAGE, which has not been saved, on top of
+     *  PARENT, the commit HEAD points to.
+     *  @param msg : The commit message inputted by the user.
+     *  @param stage : The staging area.
+     *  @param head : The HEAD pointer.
+     *  @param parent : The commit HEAD points to. */
+    Commit(String msg, StagingArea stage, Branch head, Commit parent) {
+        message = msg;
+        timeStamp = computeTime();
+        setUp(stage, head, parent);
+    }
+
+    /** Create a new commit of every tracked file as it is in the working
+     *  directory, along with whatever else is staged: modified files are
+     *  committed and deleted ones removed, but untracked files are left
+     *  alone. The tracked files are hashed on one thread per core, unless
+     *  a watcher already knows their hashes, and only the modified ones
+     *  are read again to be stored, also in parallel. The stage, HEAD and
+     *  parent commit are read once and the changes are made to the stage
+     *  in memory, so the stage is written once, empty, at the end. Used
+     *  for the commit -a command.
+     *  @param msg : The commit message inputted by the user. */
+    static void commitAll(String msg) {
+        StagingArea stage = StagingArea.readStage();
+        Branch head = WorkingDirectory.readHead();
+        Commit parent = readCommit(head.getBranchPointer());
+        HashMap<String, String> snap = parent.getSnapshot();
+        HashMap<String, String> staged = stage.getFilesInStage();
+        TreeSet<String> tracked = new TreeSet<String>(
+                SparseCheckout.local().select(snap).keySet());
+        tracked.addAll(staged.keySet());
+        tracked.removeAll(stage.getRemovedFiles());
+        Trace.Span span = Trace.start("commit.hash");
+        StatusCache working = StatusCache.load();
+        working.hashAll(tracked);
+        ArrayList<String> modified = new ArrayList<String>();
+        for (String name : tracked) {
+            String blobSHA = working.hash(name);
+            if (blobSHA == null) {
+                staged.remove(name);
+                if (snap.containsKey(name)) {
+                    stage.getRemovedFiles().add(name);
+                }
+            } else if (blobSHA.equals(snap.get(name))) {
+                staged.remove(name);
+            } else if (!blobSHA.equals(staged.get(name))) {
+                modified.add(name);
+            }
+        }
+        span.close();
+        span = Trace.start("commit.store");
+        staged.putAll(storeAll(modified));
+        span.close();
+        new Commit(msg, stage, head, parent);
+        working.save();
+    }
+
+    /** Store the files NAMES of the working directory as blobs, on one
+     *  thread per core, each with its own ObjectStore.
+     *  @param names : Names of files.
+     *  @return : The Sha-1 Hash of each file's blob, by name. */
+    private static HashMap<String, String> storeAll(List<String> names) {
+        final ThreadLocal<ObjectStore> stores = new ThreadLocal<ObjectStore>();
+        return WorkingTree.map(names, new Utils.Function<String, String>() {
+            @Override
+            String apply(String name) {
+                if (stores.get() == null) {
+                    stores.set(new ObjectStore(WorkingDirectory.repo()));
+                }
+                return stores.get().writeFile(WorkingTree.file(name));
+            }
+        });
+    }
+
     /** Method copies snapshot from most recent commit if it exists and updates
      *  it with the contents of the staging area. */
     protected void setUp() {
+        Trace.Span span = Trace.start("commit.read");
+        Branch head = WorkingDirectory.readHead();
         StagingArea stage = StagingArea.readStage();
+        Commit parent = readCommit(head.getBranchPointer());
+        span.close();
+        setUp(stage, head, parent);
+    }
+
+    /** Method copies snapshot from PARENT and updates it with the contents
+     *  of STAGE, then saves this commit, moves the branch HEAD points to
+     *  onto it and saves STAGE cleared.
+     *  @param stage : The staging area.
+     *  @param head : The HEAD pointer.
+     *  @param parent : The commit HEAD points to. */
+    private void setUp(StagingArea stage, Branch head, Commit parent) {
         if (stage.getFilesInStage().isEmpty()
                 && stage.getRemovedFiles().isEmpty()) {
             throw new GitletException("No changes added to the commit.");
         }
-        Branch head = WorkingDirectory.readHead();
+        Trace.Span span = Trace.start("commit.snapshot");
         Branch branch = head.getBranchPointer();
-        Commit mostRecentCommit = readCommit(branch);
+        Commit mostRecentCommit = parent;
         this.setPreviousCommit(mostRecentCommit);
         if (mostRecentCommit.snapshot == null) {
             HashMap<String, String> copy =
@@ -70,22 +177,25 @@ public class Commit implements Serializable {
                 snapshot.remove(removedFile);
             }
         }
+        span.close();
+        span = Trace.start("commit.save");
         saveCommit();
         branch.setCommitID(this.sha1);
-        head.setBranchPointer(branch);
-        WorkingDirectory.saveHead(head);
-        WorkingDirectory.saveBranch(branch);
+        WorkingDirectory.saveBranch(branch, (this instanceof MergeCommit
+                ? "commit (merge): " : "commit: ") + message);
         stage.getFilesInStage().clear();
         stage.getRemovedFiles().clear();
         stage.saveStage();
+        span.close();
     }
 
     /** Starting at the head commit, display information about each
      *  commit backwards along the commit tree until the initial commit.
+     *  The history is walked in a loop, not by recursion, so a long one
+     *  cannot overflow the stack.
      *  @param commit : The head commit. */
     static void log(Commit commit) {
-        if (commit != null) {
-
+        while (commit != null) {
             System.out.println("===");
             System.out.println("commit " + commit.getSha1());
             if (commit instanceof MergeCommit) {
@@ -98,16 +208,18 @@ public class Commit implements Serializable {
             System.out.println("Date: " + commit.getTimeStamp());
             System.out.println(commit.getMessage());
 
-            if (commit.getPreviousCommit() != null) {
-                System.out.println();
-                log(readCommit(commit.getPreviousCommit()));
+            List<String> parents = ObjectStore.local().parents(commit);
+            if (parents.isEmpty()) {
+                return;
             }
+            System.out.println();
+            commit = readCommit(parents.get(0));
         }
     }
 
     /** Method will display the history of all commits ever created. */
     static void globalLog() {
-        File commitTreeFile = Utils.join(WorkingDirectory.REPO,
+        File commitTreeFile = Utils.join(WorkingDirectory.repo(),
                 "commitTree");
         CommitTree commitTree = Utils.readObject(commitTreeFile,
                 CommitTree.class);
@@ -138,7 +250,7 @@ public class Commit implements Serializable {
      *  commit message, one per line.
      *  @param commitMessage : The commitMessage inputted by the user. */
     static void find(String commitMessage) {
-        File commitTreeFile = Utils.join(WorkingDirectory.REPO,
+        File commitTreeFile = Utils.join(WorkingDirectory.repo(),
                 "commitTree");
         CommitTree commitTree = Utils.readObject(commitTreeFile,
                 CommitTree.class);
@@ -173,28 +285,20 @@ public class Commit implements Serializable {
     private void initialize() {
         setMessage("initial commit");
         setTimeStamp("Wed Dec 31 16:00:00 1969 -0800");
-        tree = new CommitTree();
     }
 
     /** Save this commit to a file. */
     void saveCommit() {
         sha1 = computeSha1();
         updateCommitSet(sha1);
-        Utils.writeObject(Utils.join(WorkingDirectory.COMMITS, sha1),
-                this);
+        ObjectStore.local().writeCommit(this);
     }
 
     /** Update the commit set with this commit.
      *  @param sha1 : The given commit's Sha-1 Hash. */
     static void updateCommitSet(String sha1) {
-        File commitTreeFile = Utils.join(WorkingDirectory.REPO,
-                "commitTree");
-        if (commitTreeFile.exists()) {
-            tree = Utils.readObject(commitTreeFile, CommitTree.class);
-        }
-        tree.getAllCommits().add(sha1);
-        Utils.writeObject(Utils.join(WorkingDirectory.REPO,
-                "commitTree"), tree);
+        CommitTree.update(WorkingDirectory.repo(),
+                Collections.singleton(sha1), Collections.<String>emptySet());
     }
 
     /** Read the commit pointed to by given branch from disk
@@ -202,17 +306,29 @@ public class Commit implements Serializable {
      *  @param branch : The given branch.
      *  @return : The commit read from the disk. */
     static Commit readCommit(Branch branch) {
-        File commitFile = Utils.join(WorkingDirectory.COMMITS,
-                branch.getCommitID());
-        return Utils.readObject(commitFile, Commit.class);
+        return readCommit(branch.getCommitID());
     }
 
     /** Read the commit with the given ID from disk and return it.
      *  @param sha1 : The Sha-1 Hash of the given commit.
      *  @return : The commit read from the disk. */
     static Commit readCommit(String sha1) {
-        File commitFile = Utils.join(WorkingDirectory.COMMITS, sha1);
-        return Utils.readObject(commitFile, Commit.class);
+        return ObjectStore.local().readCommit(sha1);
+    }
+
+    /** Find the commit whose Sha-1 Hash begins with the given id, which
+     *  may be abbreviated, and read it from disk. An id of the form
+     *  NAME@{N} is looked up in the reflog of NAME instead.
+     *  @param commitID : A full or abbreviated commit Sha-1 Hash.
+     *  @return : The commit read from the disk. */
+    static Commit findCommit(String commitID) {
+        String commitSha = commitID.contains("@{")
+                ? Refs.local().resolve(commitID)
+                : ObjectStore.local().findCommitID(commitID);
+        if (commitSha == null) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        return readCommit(commitSha);
     }
 
     /** Get the SHA-1 hash that represents this commit.
@@ -221,10 +337,11 @@ public class Commit implements Serializable {
         return sha1;
     }
 
-    /** Compute this commit's SHA-1 hash.
+    /** Compute this commit's hash with the repository's hash engine.
      *  @return : The computed Sha-1 of this commit. */
     String computeSha1() {
-        sha1 = Utils.sha1("commit", Utils.serialize(this));
+        sha1 = ObjectStore.local().getHash().hash("commit",
+                Utils.serialize(this));
         return sha1;
     }
 
@@ -302,7 +419,8 @@ public class Commit implements Serializable {
      *  (its parent). */
     protected String previousCommit;
 
-    /** The commit tree that I belong to. */
-    protected static CommitTree tree;
-
+    /** Version of the serialized form. Pinned to the value Java computed
+     *  for this class as first released, whose fields it still has, so
+     *  commits stored by any version of gitlet read back the same. */
+    private static final long serialVersionUID = -3033885301296485393L;
 }
@@ -1,6 +1,13 @@
 package gitlet;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
 import java.util.HashSet;
 
 /** The CommitTree class keeps track of all commits ever created using a
@@ -19,6 +26,51 @@ public class CommitTree implements Serializable {
         return allCommits;
     }
 
+    /** Add the commits ADDED to the commit tree of the repository in REPO
+     *  and remove the commits REMOVED from it. The tree is read and written
+     *  again under a lock, and the new file replaces the old one in one
+     *  rename, so commands committing at once in different worktrees do
+     *  not lose each other's commits and readers never see half a tree.
+     *  @param repo : A .gitlet directory.
+     *  @param added : The ids of new commits.
+     *  @param removed : The ids of deleted commits. */
+    static void update(File repo, Collection<String> added,
+                       Collection<String> removed) {
+        File file = Utils.join(repo, FILE_NAME);
+        File lockFile = Utils.join(repo, LOCK_NAME);
+        long start = System.nanoTime();
+        try (RandomAccessFile locked = new RandomAccessFile(lockFile, "rw")) {
+            FileLock lock = locked.getChannel().lock();
+            try {
+                Metrics.LOCK_WAIT.observe("commit-tree",
+                        System.nanoTime() - start);
+                CommitTree tree = file.exists()
+                        ? Utils.readObject(file, CommitTree.class)
+                        : new CommitTree();
+                tree.allCommits.addAll(added);
+                tree.allCommits.removeAll(removed);
+                File tmp = File.createTempFile("tmp-", null, repo);
+                Utils.writeObject(tmp, tree);
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Name of the commit tree file inside .gitlet. */
+    static final String FILE_NAME = "commitTree";
+
+    /** Name of the file locked while the commit tree changes. */
+    static final String LOCK_NAME = "commitTree.lock";
+
     /** A Hashset of all commits in the commit tree. */
     private HashSet<String> allCommits;
+
+    /** Version of the serialized form of the commit tree. */
+    private static final long serialVersionUID = -4686707946067312763L;
 }
@@ -0,0 +1,200 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.TreeMap;
+
+/** The repository's settings, stored in .gitlet/config. Only known keys
+ *  may be set, and every key has a default used when it is missing, so
+ *  repositories made before a setting existed keep working.
+ *  @author David Oh */
+public class Config implements Serializable {
+
+    /** Construct a config with every key at its default. */
+    Config() {
+        settings = new TreeMap<String, String>();
+    }
+
+    /** Read the config of the repository in REPO, or return a config with
+     *  every key at its default if there is none.
+     *  @param repo : A .gitlet directory.
+     *  @return : The config. */
+    static Config readConfig(File repo) {
+        File configFile = Utils.join(repo, FILE_NAME);
+        if (!configFile.exists()) {
+            return new Config();
+        }
+        return Utils.readObject(configFile, Config.class);
+    }
+
+    /** Save this config in the repository in REPO.
+     *  @param repo : A .gitlet directory. */
+    void saveConfig(File repo) {
+        Utils.writeObject(Utils.join(repo, FILE_NAME), this);
+    }
+
+    /** Display or change a setting of the current repository. Used for the
+     *  config [key] [value] command.
+     *  @param args : The arguments of the config command. */
+    static void config(String[] args) {
+        Config config = readConfig(WorkingDirectory.repo());
+        if (args.length == 1) {
+            for (String key : KEYS) {
+                System.out.println(key + " = " + config.get(key));
+            }
+        } else if (args.length == 2) {
+            System.out.println(config.get(args[1]));
+        } else {
+            config.set(args[1], args[2]);
+            config.saveConfig(WorkingDirectory.repo());
+        }
+    }
+
+    /** Get the value of KEY.
+     *  @param key : The name of a setting.
+     *  @return : Its value, or its default if it was never set. */
+    String get(String key) {
+        int index = indexOf(key);
+        String value = settings.get(key);
+        return value == null ? DEFAULTS[index] : value;
+    }
+
+    /** Set KEY to VALUE, checking that VALUE makes sense for KEY.
+     *  @param key : The name of a setting.
+     *  @param value : Its new value. */
+    void set(String key, String value) {
+        indexOf(key);
+        if (key.equals(LAYOUT) || key.equals(HASH) || key.equals(PROMISOR)) {
+            throw new GitletException("That key cannot be set.");
+        }
+        if (key.equals(CODEC)) {
+            Codec.forName(value);
+        }
+        if (key.equals(METRICS) && !value.equals("true")
+                && !value.equals("false")) {
+            throw new GitletException("Metrics must be true or false.");
+        }
+        if (key.equals(BIGFILE) && parseSize(value) <= 0) {
+            throw new GitletException("Bigfile must be a positive number "
+                    + "of bytes.");
+        }
+        settings.put(key, value);
+    }
+
+    /** Return the layout loose objects are stored in.
+     *  @return : FLAT_LAYOUT or FANOUT_LAYOUT. */
+    int getLayout() {
+        return Integer.parseInt(get(LAYOUT));
+    }
+
+    /** Record that loose objects are stored in LAYOUT. The layout is not
+     *  set through set, since it must match where the objects are.
+     *  @param layout : FLAT_LAYOUT or FANOUT_LAYOUT. */
+    void setLayout(int layout) {
+        settings.put(LAYOUT, Integer.toString(layout));
+    }
+
+    /** Return the codec new objects are stored with.
+     *  @return : The codec. */
+    Codec getCodec() {
+        return Codec.forName(get(CODEC));
+    }
+
+    /** Return the length from which files are stored in chunks.
+     *  @return : A number of bytes. */
+    long getBigFileThreshold() {
+        return parseSize(get(BIGFILE));
+    }
+
+    /** Return the hash engine the repository's objects are named by.
+     *  @return : The engine. */
+    HashEngine getHash() {
+        return HashEngine.forName(get(HASH));
+    }
+
+    /** Record that objects are named by HASH. Like the layout, this is
+     *  fixed when the repository is made, since every id depends on it.
+     *  @param hash : The engine. */
+    void setHash(HashEngine hash) {
+        settings.put(HASH, hash.getName());
+    }
+
+    /** Record that blobs missing from the repository are fetched from the
+     *  repository in the .gitlet directory PATH, as clone does when it is
+     *  told to leave blobs behind.
+     *  @param path : The absolute path of a .gitlet directory. */
+    void setPromisor(String path) {
+        settings.put(PROMISOR, path);
+    }
+
+    /** Return the position of KEY in KEYS.
+     *  @param key : The name of a setting.
+     *  @return : Its index. */
+    private static int indexOf(String key) {
+        for (int i = 0; i < KEYS.length; i += 1) {
+            if (KEYS[i].equals(key)) {
+                return i;
+            }
+        }
+        throw new GitletException("No config key with that name exists.");
+    }
+
+    /** Return VALUE read as a number of bytes.
+     *  @param value : The value of a setting.
+     *  @return : The number, or -1 if VALUE is not one. */
+    private static long parseSize(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException excp) {
+            return -1;
+        }
+    }
+
+    /** Name of the config file inside .gitlet. */
+    static final String FILE_NAME = "config";
+
+    /** The codec used to store new blobs and commits. */
+    static final String CODEC = "codec";
+
+    /** How loose objects are laid out, which is managed by gitlet. */
+    static final String LAYOUT = "layout";
+
+    /** The hash function objects are named by. */
+    static final String HASH = "hash";
+
+    /** Whether commands add what they did to the totals of stats, which
+     *  they do not unless it is set, so that commands that only read the
+     *  repository do not write to it. */
+    static final String METRICS = "metrics";
+
+    /** The repository missing blobs are fetched from, set by a partial
+     *  clone. */
+    static final String PROMISOR = "promisor";
+
+    /** The length in bytes from which files are stored in chunks. */
+    static final String BIGFILE = "bigfile";
+
+    /** Layout with every blob directly in .gitlet and every commit directly
+     *  in .gitlet/commits, used by repositories made before fan-out. */
+    static final int FLAT_LAYOUT = 1;
+
+    /** Layout with objects fanned out by the first two digits of their
+     *  ids. */
+    static final int FANOUT_LAYOUT = 2;
+
+    /** All known keys. */
+    static final String[] KEYS = {CODEC, LAYOUT, METRICS, HASH,
+        PROMISOR, BIGFILE};
+
+    /** The default value of each key in KEYS. */
+    private static final String[] DEFAULTS = {"deflate",
+        Integer.toString(FLAT_LAYOUT), "false", "sha1", "",
+        Long.toString(ObjectStore.CHUNK_THRESHOLD)};
+
+    /** The settings that have been set, <key, value>. */
+    private TreeMap<String, String> settings;
+
+    /** Version of the serialized form. Pinned, since new keys bring new
+     *  methods and the settings map is all that is stored. */
+    private static final long serialVersionUID = 736526036545679769L;
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+/** The directories one run of gitlet works in, and what it has read from
+ *  them. A repository has one main worktree, whose .gitlet directory
+ *  holds everything, and may have linked worktrees made by worktree add.
+ *  The .gitlet of a linked worktree is a file, "gitdir: PATH", naming
+ *  its own directory inside the main one's, .gitlet/worktrees/NAME, which
+ *  holds the state of that worktree alone: HEAD and its reflog, the
+ *  staging area, the caches of status, merge bases and the watcher, and
+ *  the sparse checkout. Objects, branches, their reflogs and the config
+ *  are shared, and every change to them is a rename or is made under a
+ *  lock, so commands may run in several worktrees at once.
+ *
+ *  Main finds the context of the working directory before running a
+ *  command; code that runs without Main gets it when it first asks.
+ *  @author David Oh */
+class Context {
+
+    /** The context of the worktree in WORKTREE, whose own state is kept
+     *  in GITDIR and whose shared state is kept in REPO.
+     *  @param workTree : The root of the worktree.
+     *  @param gitDir : The directory of its own state.
+     *  @param repo : The .gitlet directory of the main worktree. */
+    Context(File workTree, File gitDir, File repo) {
+        this.workTree = workTree;
+        this.gitDir = gitDir;
+        this.repo = repo;
+    }
+
+    /** Return the context of the worktree in WORKTREE, which need not be
+     *  initialized yet.
+     *  @param workTree : The root of a worktree.
+     *  @return : The context. */
+    static Context find(File workTree) {
+        File dotGitlet = Utils.join(workTree, DOT_GITLET);
+        if (!dotGitlet.isFile()) {
+            return new Context(workTree, dotGitlet, dotGitlet);
+        }
+        String text = new String(Utils.readContents(dotGitlet),
+                StandardCharsets.UTF_8).trim();
+        if (!text.startsWith(GITDIR)) {
+            throw new GitletException("Not in an initialized Gitlet "
+                    + "directory.");
+        }
+        File gitDir = new File(text.substring(GITDIR.length()));
+        return new Context(workTree, gitDir,
+                gitDir.getParentFile().getParentFile());
+    }
+
+    /** Return the context of the running command.
+     *  @return : The context entered, or that of the working directory. */
+    static synchronized Context current() {
+        if (current == null) {
+            current = find(new File("."));
+        }
+        return current;
+    }
+
+    /** Make CONTEXT the context of the running command.
+     *  @param context : A context. */
+    static synchronized void enter(Context context) {
+        current = context;
+    }
+
+    /** Return the root of the worktree.
+     *  @return : A directory. */
+    File getWorkTree() {
+        return workTree;
+    }
+
+    /** Return the directory of the state of this worktree alone.
+     *  @return : The .gitlet directory, or .gitlet/worktrees/NAME. */
+    File getGitDir() {
+        return gitDir;
+    }
+
+    /** Return the directory of the state shared by every worktree.
+     *  @return : The .gitlet directory of the main worktree. */
+    File getRepo() {
+        return repo;
+    }
+
+    /** Return true if this is a linked worktree.
+     *  @return : A boolean. */
+    boolean isLinked() {
+        return !gitDir.equals(repo);
+    }
+
+    /** Return the object store of the repository.
+     *  @return : The store, made and migrated when first needed. */
+    synchronized ObjectStore store() {
+        if (store == null) {
+            store = new ObjectStore(repo);
+            store.migrate();
+        }
+        return store;
+    }
+
+    /** Return the refs as this worktree sees them.
+     *  @return : The refs, with this worktree's HEAD. */
+    synchronized Refs refs() {
+        if (refs == null) {
+            refs = new Refs(repo, gitDir);
+        }
+        return refs;
+    }
+
+    /** Return the sparse checkout of this worktree.
+     *  @return : Its patterns, read when first needed. */
+    synchronized SparseCheckout sparse() {
+        if (sparse == null) {
+            sparse = SparseCheckout.read(gitDir);
+        }
+        return sparse;
+    }
+
+    /** Replace the sparse checkout of this worktree.
+     *  @param sparse : Its new patterns. */
+    synchronized void setSparse(SparseCheckout sparse) {
+        this.sparse = sparse;
+    }
+
+    /** Name of the directory or file marking a worktree. */
+    static final String DOT_GITLET = ".gitlet";
+
+    /** What the .gitlet file of a linked worktree holds before the path
+     *  of its directory. */
+    static final String GITDIR = "gitdir: ";
+
+    /** The context of the running command, found when first needed. */
+    private static Context current;
+
+    /** The root of the worktree. */
+    private final File workTree;
+
+    /** The directory of the state of this worktree alone. */
+    private final File gitDir;
+
+    /** The directory of the shared state. */
+    private final File repo;
+
+    /** The object store, made when first needed. */
+    private ObjectStore store;
+
+    /** The refs, made when first needed. */
+    private Refs refs;
+
+    /** The sparse checkout, read when first needed. */
+    private SparseCheckout sparse;
+}
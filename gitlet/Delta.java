@@ -0,0 +1,216 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/** Encodes one version of a file as a list of changes from another, in
+ *  the style of git's pack deltas. A delta is a sequence of instructions
+ *  that either copy a run of bytes out of the base version or insert new
+ *  bytes, so two nearly identical versions cost little more than their
+ *  differences. Matches are found by indexing every BLOCK bytes of the
+ *  base by hash and sliding a rolling hash along the target.
+ *  @author David Oh */
+class Delta {
+
+    /** Return a delta that turns BASE into TARGET.
+     *  @param base : The contents of the base version.
+     *  @param target : The contents of the version to encode.
+     *  @return : The encoded delta. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int blocks = base.length / BLOCK;
+        int mask = Integer.highestOneBit(Math.max(blocks, 1) * 2) - 1;
+        int[] heads = new int[mask + 1];
+        int[] next = new int[blocks];
+        Arrays.fill(heads, -1);
+        for (int k = blocks - 1; k >= 0; k -= 1) {
+            int slot = hash(base, k * BLOCK) & mask;
+            next[k] = heads[slot];
+            heads[slot] = k;
+        }
+        int pending = 0;
+        int t = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (t + BLOCK <= target.length) {
+            int bestStart = -1;
+            int bestLength = 0;
+            int checked = 0;
+            for (int k = blocks == 0 ? -1 : heads[h & mask];
+                 k >= 0 && checked < MAX_CHAIN; k = next[k]) {
+                checked += 1;
+                int b = k * BLOCK;
+                int length = 0;
+                while (b + length < base.length
+                        && t + length < target.length
+                        && base[b + length] == target[t + length]) {
+                    length += 1;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestStart = b;
+                }
+            }
+            if (bestLength >= BLOCK) {
+                int back = 0;
+                while (t - back > pending && bestStart - back > 0
+                        && base[bestStart - back - 1]
+                        == target[t - back - 1]) {
+                    back += 1;
+                }
+                writeInsert(out, target, pending, t - back);
+                writeCopy(out, bestStart - back, bestLength + back);
+                t += bestLength;
+                pending = t;
+                if (t + BLOCK <= target.length) {
+                    h = hash(target, t);
+                }
+            } else {
+                if (t + BLOCK < target.length) {
+                    h = roll(h, target[t], target[t + BLOCK]);
+                }
+                t += 1;
+            }
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Return the result of applying DELTA to BASE.
+     *  @param base : The contents of the base version.
+     *  @param delta : A delta created from BASE.
+     *  @return : The contents of the encoded version. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        long baseLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw new IllegalArgumentException("delta base size mismatch");
+        }
+        byte[] result = new byte[(int) readVarint(delta, pos)];
+        int r = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == INSERT) {
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, r, length);
+                pos[0] += length;
+                r += length;
+            } else if (op == COPY) {
+                int offset = (int) readVarint(delta, pos);
+                int length = (int) readVarint(delta, pos);
+                System.arraycopy(base, offset, result, r, length);
+                r += length;
+            } else {
+                throw new IllegalArgumentException("bad delta instruction");
+            }
+        }
+        if (r != result.length) {
+            throw new IllegalArgumentException("delta result size mismatch");
+        }
+        return result;
+    }
+
+    /** Write an instruction inserting TARGET[START..END), if not empty.
+     *  @param out : The delta being written.
+     *  @param target : The target contents.
+     *  @param start : The first byte to insert.
+     *  @param end : One past the last byte to insert. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target,
+                                    int start, int end) {
+        if (end > start) {
+            out.write(INSERT);
+            writeVarint(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    /** Write an instruction copying LENGTH bytes of the base from OFFSET.
+     *  @param out : The delta being written.
+     *  @param offset : The first byte of the base to copy.
+     *  @param length : The number of bytes to copy. */
+    private static void writeCopy(ByteArrayOutputStream out, int offset,
+                                  int length) {
+        out.write(COPY);
+        writeVarint(out, offset);
+        writeVarint(out, length);
+    }
+
+    /** Write VALUE to OUT seven bits at a time, low bits first.
+     *  @param out : The stream to write to.
+     *  @param value : A non-negative number. */
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    /** Read a number written by writeVarint from DATA at POS[0], moving
+     *  POS[0] past it.
+     *  @param data : The bytes to read from.
+     *  @param pos : A one element array holding the position.
+     *  @return : The number. */
+    static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            value |= (long) (b & 0x7f) << shift;
+            if (b < 0x80) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    /** Return the rolling hash of DATA[START..START + BLOCK).
+     *  @param data : The bytes to hash.
+     *  @param start : The start of the block.
+     *  @return : The hash. */
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            h = h * PRIME + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    /** Return the hash of a block after sliding it one byte forward.
+     *  @param h : The hash of the current block.
+     *  @param out : The byte leaving the block.
+     *  @param in : The byte entering the block.
+     *  @return : The hash of the next block. */
+    private static int roll(int h, byte out, byte in) {
+        return (h - (out & 0xff) * PRIME_POWER) * PRIME + (in & 0xff);
+    }
+
+    /** Size of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+
+    /** Most candidate blocks compared at each position of the target. */
+    private static final int MAX_CHAIN = 8;
+
+    /** Instruction byte that inserts new bytes. */
+    private static final int INSERT = 0;
+
+    /** Instruction byte that copies bytes from the base. */
+    private static final int COPY = 1;
+
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+
+    /** PRIME to the power BLOCK - 1. */
+    private static final int PRIME_POWER;
+
+    static {
+        int power = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            power *= PRIME;
+        }
+        PRIME_POWER = power;
+    }
+}
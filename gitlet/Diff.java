@@ -0,0 +1,548 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** The Diff class shows the line by line changes between two versions of
+ *  the files tracked by Gitlet, using Myers' O(ND) difference algorithm
+ *  in its linear space form. Files are compared one at a time and printed
+ *  as soon as they are done, so only one pair of files (or a small window
+ *  of them in parallel mode) is ever held in memory.
+ *  @author David Oh */
+public class Diff {
+
+    /** Set up a diff between the two given lists of lines.
+     *  @param oldLines : The lines of the old version.
+     *  @param newLines : The lines of the new version. */
+    Diff(String[] oldLines, String[] newLines) {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        a = toIds(oldLines, ids);
+        b = toIds(newLines, ids);
+        deleted = new boolean[a.length];
+        inserted = new boolean[b.length];
+        compareSeq(0, a.length, 0, b.length);
+    }
+
+    /** Display the changes between two commits, or between a commit and
+     *  the working directory. With no commit ids, the head commit is
+     *  compared to the working directory. Renamed files are shown as a
+     *  single change from their old name to their new name.
+     *  @param args : The arguments of the diff command. */
+    static void diff(String[] args) {
+        HashMap<String, String> oldSnap;
+        HashMap<String, String> newSnap;
+        boolean newIsWorking = args.length < 3;
+        if (args.length == 1) {
+            oldSnap = Commit.readCommit(WorkingDirectory.readHead()
+                    .getBranchPointer().getCommitID()).getSnapshot();
+        } else {
+            oldSnap = Commit.findCommit(args[1]).getSnapshot();
+        }
+        if (newIsWorking) {
+            newSnap = workingSnapshot();
+        } else {
+            newSnap = Commit.findCommit(args[2]).getSnapshot();
+        }
+        HashMap<String, String> deleted = new HashMap<String, String>();
+        HashMap<String, String> added = new HashMap<String, String>();
+        TreeSet<String> names = new TreeSet<String>(oldSnap.keySet());
+        names.addAll(newSnap.keySet());
+        for (String name : names) {
+            if (!newSnap.containsKey(name)) {
+                deleted.put(name, oldSnap.get(name));
+            } else if (!oldSnap.containsKey(name)) {
+                added.put(name, newSnap.get(name));
+            }
+        }
+        TreeMap<String, String> renames = RenameDetector.detect(deleted,
+                added, RenameDetector.repoContents(oldSnap),
+                newIsWorking ? RenameDetector.workingContents()
+                        : RenameDetector.repoContents(newSnap));
+        HashSet<String> renamedFrom = new HashSet<String>(renames.values());
+        ArrayList<String[]> changed = new ArrayList<String[]>();
+        for (String name : names) {
+            String oldSha = oldSnap.get(name);
+            String newSha = newSnap.get(name);
+            if (renamedFrom.contains(name)) {
+                continue;
+            } else if (renames.containsKey(name)) {
+                changed.add(new String[] {renames.get(name), name});
+            } else if (oldSha == null || !oldSha.equals(newSha)) {
+                changed.add(new String[] {name, name});
+            }
+        }
+        if (changed.size() >= PARALLEL_THRESHOLD) {
+            printParallel(changed, oldSnap, newSnap, newIsWorking);
+        } else {
+            for (String[] pair : changed) {
+                System.out.print(diffFile(pair[0], pair[1],
+                        oldSnap.get(pair[0]), newSnap.get(pair[1]),
+                        newIsWorking));
+            }
+        }
+    }
+
+    /** Build a snapshot of the tracked files as they currently are in the
+     *  working directory: files tracked by the head commit or staged for
+     *  addition, less files staged for removal or missing from the
+     *  directory. Which files are tracked does not depend on the commit
+     *  compared against, so a file added since that commit is shown.
+     *  @return : A HashMap from file name to the Sha-1 of its contents. */
+    static HashMap<String, String> workingSnapshot() {
+        StagingArea stage = StagingArea.readStage();
+        HashMap<String, String> head = Commit.readCommit(WorkingDirectory
+                .readHead().getBranchPointer().getCommitID()).getSnapshot();
+        TreeSet<String> tracked = new TreeSet<String>();
+        if (head != null) {
+            tracked.addAll(head.keySet());
+        }
+        tracked.addAll(stage.getFilesInStage().keySet());
+        tracked.removeAll(stage.getRemovedFiles());
+        HashMap<String, String> working = new HashMap<String, String>();
+        HashEngine hash = ObjectStore.local().getHash();
+        for (String name : tracked) {
+            File file = Utils.join(WorkingDirectory.cwd(), name);
+            if (file.isFile()) {
+                working.put(name, hash.hashFile(file));
+            }
+        }
+        return working;
+    }
+
+    /** Print the diffs of the files in CHANGED, computing up to a few of
+     *  them at once on a pool of threads. Results are printed in order and
+     *  only a bounded window of files is in flight at any time.
+     *  @param changed : The {old name, new name} pairs that differ, sorted
+     *  by new name.
+     *  @param oldSnap : The snapshot of the old version.
+     *  @param newSnap : The snapshot of the new version.
+     *  @param newIsWorking : True if the new version is the working
+     *  directory rather than a commit. */
+    static void printParallel(List<String[]> changed,
+                              final HashMap<String, String> oldSnap,
+                              final HashMap<String, String> newSnap,
+                              final boolean newIsWorking) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> window = new ArrayDeque<Future<String>>();
+        try {
+            for (final String[] pair : changed) {
+                window.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return diffFile(pair[0], pair[1],
+                                oldSnap.get(pair[0]), newSnap.get(pair[1]),
+                                newIsWorking);
+                    }
+                }));
+                if (window.size() >= 2 * threads) {
+                    System.out.print(window.poll().get());
+                }
+            }
+            while (!window.isEmpty()) {
+                System.out.print(window.poll().get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            if (excp.getCause() instanceof GitletException) {
+                throw (GitletException) excp.getCause();
+            }
+            throw new GitletException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the diff of a single file in unified format.
+     *  @param oldPath : The name of the file in the old version.
+     *  @param newPath : The name of the file in the new version, which
+     *  differs from OLDPATH if the file was renamed.
+     *  @param oldSha : The Sha-1 of the old version, or null if the file
+     *  was added.
+     *  @param newSha : The Sha-1 of the new version, or null if the file
+     *  was removed.
+     *  @param newIsWorking : True if the new version should be read from
+     *  the working directory.
+     *  @return : The text of the diff. */
+    static String diffFile(String oldPath, String newPath, String oldSha,
+                           String newSha, boolean newIsWorking) {
+        byte[] oldBytes = new byte[0];
+        byte[] newBytes = new byte[0];
+        if (oldSha != null) {
+            oldBytes = readSide(oldSha, null);
+        }
+        if (newSha != null) {
+            newBytes = readSide(newSha, newIsWorking
+                    ? Utils.join(WorkingDirectory.cwd(), newPath) : null);
+        }
+        StringBuilder out = new StringBuilder();
+        String oldName = oldSha == null ? "/dev/null" : "a/" + oldPath;
+        String newName = newSha == null ? "/dev/null" : "b/" + newPath;
+        out.append("diff --git a/").append(oldPath).append(" b/")
+                .append(newPath).append("\n");
+        if (oldSha == null) {
+            out.append("new file\n");
+        } else if (newSha == null) {
+            out.append("deleted file\n");
+        } else if (!oldPath.equals(newPath)) {
+            int similarity = oldSha.equals(newSha) ? 100
+                    : RenameDetector.similarity(oldBytes, newBytes);
+            out.append("similarity index ").append(similarity).append("%\n");
+            out.append("rename from ").append(oldPath).append("\n");
+            out.append("rename to ").append(newPath).append("\n");
+            if (oldSha.equals(newSha)) {
+                return out.toString();
+            }
+        }
+        if (isBinary(oldBytes) || isBinary(newBytes)) {
+            out.append("Binary files ").append(oldName).append(" and ")
+                    .append(newName).append(" differ\n");
+            return out.toString();
+        }
+        out.append("--- ").append(oldName).append("\n");
+        out.append("+++ ").append(newName).append("\n");
+        String[] oldLines = splitLines(oldBytes);
+        String[] newLines = splitLines(newBytes);
+        new Diff(oldLines, newLines).appendHunks(out, oldLines, newLines,
+                endsWithNewline(oldBytes), endsWithNewline(newBytes));
+        return out.toString();
+    }
+
+    /** Append the hunks of this diff to OUT in unified format, with
+     *  CONTEXT lines of unchanged text around each change.
+     *  @param out : The builder the hunks are written to.
+     *  @param oldLines : The lines of the old version.
+     *  @param newLines : The lines of the new version.
+     *  @param oldNewline : True if the old version ends with a newline.
+     *  @param newNewline : True if the new version ends with a newline. */
+    void appendHunks(StringBuilder out, String[] oldLines, String[] newLines,
+                     boolean oldNewline, boolean newNewline) {
+        List<int[]> changes = changes();
+        int c = 0;
+        while (c < changes.size()) {
+            int last = c;
+            while (last + 1 < changes.size()
+                    && changes.get(last + 1)[0] - changes.get(last)[1]
+                    <= 2 * CONTEXT) {
+                last += 1;
+            }
+            int aStart = Math.max(0, changes.get(c)[0] - CONTEXT);
+            int bStart = Math.max(0, changes.get(c)[2] - CONTEXT);
+            int aEnd = Math.min(a.length, changes.get(last)[1] + CONTEXT);
+            int bEnd = Math.min(b.length, changes.get(last)[3] + CONTEXT);
+            out.append("@@ -").append(range(aStart, aEnd - aStart))
+                    .append(" +").append(range(bStart, bEnd - bStart))
+                    .append(" @@\n");
+            int i = aStart;
+            int j = bStart;
+            while (i < aEnd || j < bEnd) {
+                if (i < aEnd && deleted[i]) {
+                    appendLine(out, '-', oldLines[i],
+                            i == a.length - 1 && !oldNewline);
+                    i += 1;
+                } else if (j < bEnd && inserted[j]) {
+                    appendLine(out, '+', newLines[j],
+                            j == b.length - 1 && !newNewline);
+                    j += 1;
+                } else {
+                    appendLine(out, ' ', oldLines[i],
+                            i == a.length - 1 && !oldNewline);
+                    i += 1;
+                    j += 1;
+                }
+            }
+            c = last + 1;
+        }
+    }
+
+    /** Return the runs of changed lines in this diff. Each run is an array
+     *  of {old start, old end, new start, new end}.
+     *  @return : The list of changed runs in order. */
+    List<int[]> changes() {
+        ArrayList<int[]> result = new ArrayList<int[]>();
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (i < a.length && j < b.length && !deleted[i] && !inserted[j]) {
+                i += 1;
+                j += 1;
+            } else {
+                int i0 = i;
+                int j0 = j;
+                while (i < a.length && deleted[i]) {
+                    i += 1;
+                }
+                while (j < b.length && inserted[j]) {
+                    j += 1;
+                }
+                result.add(new int[] {i0, i, j0, j});
+            }
+        }
+        return result;
+    }
+
+    /** Find the changed lines between A[XOFF..XLIM) and B[YOFF..YLIM),
+     *  marking them in DELETED and INSERTED. Common prefixes and suffixes
+     *  are stripped, then the middle snake of an optimal edit path splits
+     *  the problem in two.
+     *  @param xoff : Start of the old range.
+     *  @param xlim : End of the old range.
+     *  @param yoff : Start of the new range.
+     *  @param ylim : End of the new range. */
+    private void compareSeq(int xoff, int xlim, int yoff, int ylim) {
+        while (xoff < xlim && yoff < ylim && a[xoff] == b[yoff]) {
+            xoff += 1;
+            yoff += 1;
+        }
+        while (xlim > xoff && ylim > yoff && a[xlim - 1] == b[ylim - 1]) {
+            xlim -= 1;
+            ylim -= 1;
+        }
+        if (xoff == xlim) {
+            Arrays.fill(inserted, yoff, ylim, true);
+        } else if (yoff == ylim) {
+            Arrays.fill(deleted, xoff, xlim, true);
+        } else {
+            int[] split = middleSnake(xoff, xlim, yoff, ylim);
+            if (split == null) {
+                Arrays.fill(deleted, xoff, xlim, true);
+                Arrays.fill(inserted, yoff, ylim, true);
+            } else {
+                compareSeq(xoff, split[0], yoff, split[1]);
+                compareSeq(split[0], xlim, split[1], ylim);
+            }
+        }
+    }
+
+    /** Return a point {x, y} on an optimal edit path from (XOFF, YOFF) to
+     *  (XLIM, YLIM), found by running the greedy search forward from the
+     *  start and backward from the end until the two meet. Uses space
+     *  linear in the length of the inputs. Returns null if the ranges have
+     *  nothing in common.
+     *  @param xoff : Start of the old range.
+     *  @param xlim : End of the old range.
+     *  @param yoff : Start of the new range.
+     *  @param ylim : End of the new range.
+     *  @return : The split point, or null. */
+    private int[] middleSnake(int xoff, int xlim, int yoff, int ylim) {
+        int n = xlim - xoff;
+        int m = ylim - yoff;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] v1 = new int[length];
+        int[] v2 = new int[length];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = delta % 2 != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int k1off = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1off - 1] < v1[k1off + 1])) {
+                    x1 = v1[k1off + 1];
+                } else {
+                    x1 = v1[k1off - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m
+                        && a[xoff + x1] == b[yoff + y1]) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                v1[k1off] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int k2off = offset + delta - k1;
+                    if (k2off >= 0 && k2off < length && v2[k2off] != -1
+                            && x1 >= n - v2[k2off]) {
+                        return new int[] {xoff + x1, yoff + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int k2off = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2off - 1] < v2[k2off + 1])) {
+                    x2 = v2[k2off + 1];
+                } else {
+                    x2 = v2[k2off - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                        && a[xlim - x2 - 1] == b[ylim - y2 - 1]) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                v2[k2off] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int k1off = offset + delta - k2;
+                    if (k1off >= 0 && k1off < length && v1[k1off] != -1) {
+                        int x1 = v1[k1off];
+                        int y1 = offset + x1 - k1off;
+                        if (x1 >= n - x2) {
+                            return new int[] {xoff + x1, yoff + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Return the lines of CONTENTS as ids, giving equal lines equal ids.
+     *  @param lines : The lines to convert.
+     *  @param ids : The ids assigned so far.
+     *  @return : An array of line ids. */
+    private static int[] toIds(String[] lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i += 1) {
+            Integer id = ids.get(lines[i]);
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines[i], id);
+            }
+            result[i] = id;
+        }
+        return result;
+    }
+
+    /** Split CONTENTS into lines, without their line terminators.
+     *  @param contents : The contents of a file.
+     *  @return : The lines of the file. */
+    static String[] splitLines(byte[] contents) {
+        if (contents.length == 0) {
+            return new String[0];
+        }
+        String text = new String(contents, StandardCharsets.UTF_8);
+        if (text.endsWith("\n")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        return text.split("\n", -1);
+    }
+
+    /** Return true if CONTENTS is empty or ends in a newline.
+     *  @param contents : The contents of a file.
+     *  @return : A boolean. */
+    private static boolean endsWithNewline(byte[] contents) {
+        return contents.length == 0 || contents[contents.length - 1] == '\n';
+    }
+
+    /** Read one side of a diff: the blob with the given id, or FILE if it
+     *  is not null. Large files are first probed for binary data, and a
+     *  binary one is returned only up to the probe, which is all the diff
+     *  needs to report it.
+     *  @param sha : The Sha-1 of the contents.
+     *  @param file : The working file to read, or null to read the blob.
+     *  @return : The contents, or the probed prefix of binary contents. */
+    private static byte[] readSide(String sha, File file) {
+        ObjectStore store = ObjectStore.local();
+        if (file == null) {
+            if (store.isChunked(sha)) {
+                byte[] prefix = store.readBlobPrefix(sha, BINARY_PROBE);
+                if (isBinary(prefix)) {
+                    return prefix;
+                }
+            }
+            return store.readBlob(sha);
+        }
+        if (file.length() >= store.bigFileThreshold()) {
+            try (InputStream in = new FileInputStream(file)) {
+                byte[] prefix = in.readNBytes(BINARY_PROBE);
+                if (isBinary(prefix)) {
+                    return prefix;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return Utils.readContents(file);
+    }
+
+    /** Return true if CONTENTS looks like binary data, that is, has a NUL
+     *  byte near its beginning.
+     *  @param contents : The contents of a file.
+     *  @return : A boolean. */
+    static boolean isBinary(byte[] contents) {
+        int limit = Math.min(contents.length, BINARY_PROBE);
+        for (int i = 0; i < limit; i += 1) {
+            if (contents[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the range of a hunk header as "start,count".
+     *  @param start : The 0-based index of the first line.
+     *  @param count : The number of lines.
+     *  @return : The formatted range. */
+    private static String range(int start, int count) {
+        if (count == 0) {
+            return start + ",0";
+        }
+        return (start + 1) + "," + count;
+    }
+
+    /** Append LINE to OUT after the given PREFIX.
+     *  @param out : The builder to write to.
+     *  @param prefix : One of ' ', '-' or '+'.
+     *  @param line : The line.
+     *  @param noNewline : True if the line is the last one of a file that
+     *  does not end in a newline. */
+    private static void appendLine(StringBuilder out, char prefix,
+                                   String line, boolean noNewline) {
+        out.append(prefix).append(line).append("\n");
+        if (noNewline) {
+            out.append("\\ No newline at end of file\n");
+        }
+    }
+
+    /** Number of unchanged lines shown around each change. */
+    static final int CONTEXT = 3;
+
+    /** Number of changed files at which diffs are computed in parallel. */
+    static final int PARALLEL_THRESHOLD = 64;
+
+    /** Number of leading bytes searched for a NUL byte. */
+    static final int BINARY_PROBE = 8000;
+
+    /** The line ids of the old version. */
+    private final int[] a;
+
+    /** The line ids of the new version. */
+    private final int[] b;
+
+    /** Marks the lines of the old version that were removed. */
+    private final boolean[] deleted;
+
+    /** Marks the lines of the new version that were added. */
+    private final boolean[] inserted;
+}
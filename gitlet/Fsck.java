@@ -0,0 +1,566 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamConstants;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Checks the integrity of a repository. Every object is read back and
+ *  hashed on a pool of threads, one per core, with blobs hashed as a
+ *  stream so memory use does not grow with their size. The links found
+ *  along the way (parents, snapshot entries, chunks and delta bases) are
+ *  then followed from every branch, HEAD and the staging area to find
+ *  objects that are missing or that nothing refers to.
+ *  @author David Oh */
+class Fsck {
+
+    /** A check of the repository in STORE.
+     *  @param store : The object store. */
+    Fsck(ObjectStore store) {
+        this.store = store;
+    }
+
+    /** Check the current repository and print what is wrong with it. Used
+     *  for the fsck command.
+     *  @param args : The arguments of the fsck command. */
+    static void fsck(String[] args) {
+        Fsck check = new Fsck(ObjectStore.local());
+        long start = System.nanoTime();
+        check.verifyObjects();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        check.checkConnectivity();
+        for (String problem : check.problems) {
+            System.out.println(problem);
+        }
+        System.out.printf("Checked %d objects (%d bytes) in %.2f s: "
+                + "%.3f GB/s.%n", check.objects.size(),
+                check.bytes.get(), seconds,
+                check.bytes.get() / seconds / 1e9);
+        if (check.errors == 0) {
+            System.out.println("No problems found.");
+        } else {
+            System.out.println("Found " + check.errors
+                    + (check.errors == 1 ? " problem." : " problems."));
+        }
+    }
+
+    /** Hash every object in the repository, recording its links. Chunked
+     *  blobs are found first, so that each chunk is read once, while its
+     *  file is hashed, instead of once on its own and again for the file.
+     */
+    void verifyObjects() {
+        final TreeMap<String, Boolean> all = new TreeMap<String, Boolean>();
+        List<String> looseBlobs = store.looseBlobIds();
+        for (String id : looseBlobs) {
+            all.put(id, false);
+        }
+        for (String id : store.looseCommitIds()) {
+            all.put(id, true);
+        }
+        for (Pack pack : store.packs()) {
+            for (String id : pack.ids()) {
+                if (!all.containsKey(id)) {
+                    all.put(id, false);
+                }
+            }
+        }
+        objects.addAll(all.keySet());
+        ArrayList<Task> classify = new ArrayList<Task>();
+        for (final String id : looseBlobs) {
+            classify.add(new Task() {
+                @Override
+                void run(ObjectStore reader) {
+                    ObjectStore.Chunks chunks = reader.readChunks(id);
+                    if (chunks != null) {
+                        chunked.put(id, chunks);
+                    }
+                }
+            });
+        }
+        runAll(classify, false);
+        HashSet<String> inChunks = new HashSet<String>();
+        for (ObjectStore.Chunks chunks : chunked.values()) {
+            inChunks.addAll(chunks.getIds());
+        }
+        ArrayList<Task> verify = new ArrayList<Task>();
+        for (final Map.Entry<String, Boolean> object : all.entrySet()) {
+            final String id = object.getKey();
+            if (inChunks.contains(id) && !chunked.containsKey(id)) {
+                continue;
+            }
+            verify.add(new Task() {
+                @Override
+                void run(ObjectStore reader) {
+                    try {
+                        if (object.getValue()) {
+                            verifyCommit(reader, id);
+                        } else if (chunked.containsKey(id)) {
+                            verifyChunked(reader, id);
+                        } else {
+                            verifyBlob(reader, id);
+                        }
+                    } catch (RuntimeException excp) {
+                        error("corrupt " + (object.getValue() ? "commit "
+                                : "blob ") + id + ": " + excp.getMessage());
+                    }
+                }
+            });
+        }
+        runAll(verify, System.console() != null);
+    }
+
+    /** Run TASKS on a pool of threads, one per core, giving each thread an
+     *  object store of its own, and wait for all of them to finish.
+     *  @param tasks : The tasks to run.
+     *  @param progress : True if a progress meter should be shown. */
+    private void runAll(List<Task> tasks, boolean progress) {
+        final AtomicInteger done = new AtomicInteger();
+        final ThreadLocal<ObjectStore> stores = new ThreadLocal<ObjectStore>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (final Task task : tasks) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (stores.get() == null) {
+                        stores.set(new ObjectStore(store.getRepo()));
+                    }
+                    task.run(stores.get());
+                    done.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        try {
+            while (!pool.awaitTermination(PROGRESS_INTERVAL,
+                    TimeUnit.MILLISECONDS)) {
+                if (progress) {
+                    printProgress(done.get(), tasks.size());
+                }
+            }
+        } catch (InterruptedException excp) {
+            pool.shutdownNow();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (progress) {
+            printProgress(tasks.size(), tasks.size());
+            System.err.println();
+        }
+    }
+
+    /** Print a progress meter over the current line of standard error.
+     *  @param done : Number of objects checked.
+     *  @param total : Number of objects to check. */
+    private void printProgress(int done, int total) {
+        System.err.printf("\rChecking objects: %3d%% (%d/%d), %d bytes",
+                total == 0 ? 100 : done * 100L / total, done, total,
+                bytes.get());
+    }
+
+    /** Hash the blob with the given id as a stream and record the delta
+     *  base it depends on.
+     *  @param reader : The object store of the calling thread.
+     *  @param id : The Sha-1 Hash of the blob. */
+    private void verifyBlob(ObjectStore reader, String id) {
+        ArrayList<String> links = new ArrayList<String>();
+        Pack pack = reader.packFor(id);
+        if (pack != null && !reader.blobFile(id).isFile()) {
+            String baseID = pack.readEntry(id).getBaseID();
+            if (baseID != null) {
+                links.add(baseID);
+            }
+        }
+        try (InputStream in = reader.openBlob(id)) {
+            MessageDigest digest = reader.getHash().newDigest();
+            byte[] buffer = new byte[Codec.BUFFER_SIZE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                digest.update(buffer, 0, n);
+                bytes.addAndGet(n);
+            }
+            if (!HashEngine.hex(digest.digest()).equals(id)) {
+                error("hash mismatch in blob " + id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        this.links.put(id, links);
+    }
+
+    /** Hash the chunked blob with the given id, reading each chunk once
+     *  and hashing it both on its own and as part of the whole file. A
+     *  chunk shared by several files is only checked on its own once.
+     *  Missing chunks are left to the connectivity check.
+     *  @param reader : The object store of the calling thread.
+     *  @param id : The Sha-1 Hash of the blob. */
+    private void verifyChunked(ObjectStore reader, String id) {
+        List<String> chunkIDs = chunked.get(id).getIds();
+        try {
+            MessageDigest whole = reader.getHash().newDigest();
+            MessageDigest part = reader.getHash().newDigest();
+            boolean complete = true;
+            byte[] buffer = new byte[Codec.BUFFER_SIZE];
+            for (String chunkID : chunkIDs) {
+                if (!reader.containsBlob(chunkID)) {
+                    complete = false;
+                    continue;
+                }
+                boolean first = checkedChunks.add(chunkID);
+                try (InputStream in = reader.openBlob(chunkID)) {
+                    for (int n = in.read(buffer); n >= 0;
+                         n = in.read(buffer)) {
+                        whole.update(buffer, 0, n);
+                        if (first) {
+                            part.update(buffer, 0, n);
+                        }
+                        bytes.addAndGet(n);
+                    }
+                }
+                if (first) {
+                    links.put(chunkID, Collections.<String>emptyList());
+                    if (!HashEngine.hex(part.digest()).equals(chunkID)) {
+                        error("hash mismatch in blob " + chunkID);
+                    }
+                }
+            }
+            if (complete && !HashEngine.hex(whole.digest()).equals(id)) {
+                error("hash mismatch in blob " + id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        links.put(id, chunkIDs);
+    }
+
+    /** Check that the commit with the given id hashes to its id and record
+     *  its parents and blobs. The parents of a commit at the edge of a
+     *  shallow clone are not links, and neither are the blobs a partial
+     *  clone has yet to fetch.
+     *  @param reader : The object store of the calling thread.
+     *  @param id : The Sha-1 Hash of the commit. */
+    private void verifyCommit(ObjectStore reader, String id) {
+        byte[] stored;
+        try (InputStream in = reader.openObject(reader.commitFile(id))) {
+            stored = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        bytes.addAndGet(stored.length);
+        ArrayList<String> order = new ArrayList<String>();
+        Commit commit = deserialize(stored, order);
+        int result = commitHashMatches(reader.getHash(), commit, stored,
+                order, id);
+        if (result == MISMATCH) {
+            error("hash mismatch in commit " + id);
+        } else if (result == UNKNOWN) {
+            warn("cannot reproduce the hashed form of commit " + id);
+        }
+        ArrayList<String> links = new ArrayList<String>(
+                reader.parents(commit));
+        if (commit.snapshot != null) {
+            for (String blobID : commit.snapshot.values()) {
+                if (reader.getPromisor() == null
+                        || reader.containsBlob(blobID)) {
+                    links.add(blobID);
+                }
+            }
+        }
+        this.links.put(id, links);
+    }
+
+    /** Return whether COMMIT, read from the serialized bytes STORED, hashes
+     *  to ID. A commit's id is the hash of its serialized form with its id
+     *  still unset, so the stored bytes are reproduced first and then
+     *  serialized again without the id. The snapshot is a HashMap, whose
+     *  serialized form depends on the capacity it had when written, so it
+     *  is rebuilt with the capacity recorded in the stored bytes and the
+     *  entries in their stored order until it reproduces them exactly.
+     *  @param hash : The hash engine of the repository.
+     *  @param commit : The deserialized commit.
+     *  @param stored : The stored bytes.
+     *  @param order : The strings of the stored bytes, in order.
+     *  @param id : The id the commit is stored under.
+     *  @return : MATCH, MISMATCH or UNKNOWN if the stored bytes could not
+     *  be reproduced. */
+    private static int commitHashMatches(HashEngine hash, Commit commit,
+                                         byte[] stored, List<String> order,
+                                         String id) {
+        if (!id.equals(commit.getSha1())) {
+            return MISMATCH;
+        }
+        HashMap<String, String> snapshot = commit.snapshot;
+        int result = hashIfReproduced(hash, commit, snapshot, stored, id);
+        if (result != UNKNOWN || snapshot == null) {
+            return result;
+        }
+        LinkedHashSet<String> keys = new LinkedHashSet<String>();
+        for (int i = 0; i + 1 < order.size(); i += 1) {
+            String value = snapshot.get(order.get(i));
+            if (value != null && value.equals(order.get(i + 1))) {
+                keys.add(order.get(i));
+            }
+        }
+        keys.addAll(snapshot.keySet());
+        for (int capacity : capacities(stored, snapshot.size())) {
+            if (result != UNKNOWN) {
+                break;
+            }
+            HashMap<String, String> rebuilt =
+                    new HashMap<String, String>(capacity);
+            if (keys.isEmpty()) {
+                rebuilt.put("", "");
+                rebuilt.remove("");
+            }
+            for (String key : keys) {
+                rebuilt.put(key, snapshot.get(key));
+            }
+            result = hashIfReproduced(hash, commit, rebuilt, stored, id);
+        }
+        commit.snapshot = snapshot;
+        return result;
+    }
+
+    /** Return the capacities to rebuild a snapshot of SIZE entries with to
+     *  reproduce STORED. HashMap writes its bucket count and size as a
+     *  block of two ints, so each such block whose count is a power of
+     *  two and whose size is SIZE names one. If none is found, each
+     *  power of two from the smallest holding SIZE entries to
+     *  CAPACITY_DOUBLINGS doublings above it is tried.
+     *  @param stored : The stored bytes of a commit.
+     *  @param size : The number of entries in its snapshot.
+     *  @return : The capacities, in the order to try them. */
+    private static List<Integer> capacities(byte[] stored, int size) {
+        ArrayList<Integer> capacities = new ArrayList<Integer>();
+        ByteBuffer buffer = ByteBuffer.wrap(stored);
+        for (int i = 0; i + SIZE_BLOCK_LENGTH <= stored.length; i += 1) {
+            if (stored[i] != ObjectStreamConstants.TC_BLOCKDATA
+                    || stored[i + 1] != 2 * Integer.BYTES) {
+                continue;
+            }
+            int buckets = buffer.getInt(i + 2);
+            if (buckets > 0 && Integer.bitCount(buckets) == 1
+                    && buffer.getInt(i + 2 + Integer.BYTES) == size
+                    && !capacities.contains(buckets)) {
+                capacities.add(buckets);
+            }
+        }
+        if (capacities.isEmpty()) {
+            int capacity = 1;
+            while (capacity * 3 / 4 < size) {
+                capacity *= 2;
+            }
+            for (int i = 0; i <= CAPACITY_DOUBLINGS; i += 1) {
+                capacities.add(capacity << i);
+            }
+        }
+        return capacities;
+    }
+
+    /** Return whether COMMIT with its snapshot replaced by SNAPSHOT hashes
+     *  to ID, if it then serializes to STORED exactly.
+     *  @param hash : The hash engine of the repository.
+     *  @param commit : The deserialized commit.
+     *  @param snapshot : The snapshot to try.
+     *  @param stored : The stored bytes.
+     *  @param id : The id the commit is stored under.
+     *  @return : MATCH or MISMATCH, or UNKNOWN if the commit does not
+     *  serialize to STORED. */
+    private static int hashIfReproduced(HashEngine hash, Commit commit,
+                                        HashMap<String, String> snapshot,
+                                        byte[] stored, String id) {
+        HashMap<String, String> original = commit.snapshot;
+        commit.snapshot = snapshot;
+        try {
+            if (!Arrays.equals(Utils.serialize(commit), stored)) {
+                return UNKNOWN;
+            }
+            commit.sha1 = null;
+            boolean match = hash.hash("commit",
+                    Utils.serialize(commit)).equals(id);
+            return match ? MATCH : MISMATCH;
+        } finally {
+            commit.sha1 = id;
+            commit.snapshot = original;
+        }
+    }
+
+    /** Deserialize the commit in STORED, adding every string read to
+     *  ORDER in the order it was read.
+     *  @param stored : The serialized commit.
+     *  @param order : The list to add strings to.
+     *  @return : The commit. */
+    private static Commit deserialize(byte[] stored,
+                                      final List<String> order) {
+        try (ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(stored)) {
+                {
+                    enableResolveObject(true);
+                }
+
+                @Override
+                protected Object resolveObject(Object obj) {
+                    if (obj instanceof String) {
+                        order.add((String) obj);
+                    }
+                    return obj;
+                }
+            }) {
+            return (Commit) in.readObject();
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Follow the recorded links from every branch and from the HEAD, the
+     *  reflogs and the staging area of every worktree, reporting links to
+     *  objects that do not exist and objects that nothing reaches. */
+    void checkConnectivity() {
+        HashSet<String> present = new HashSet<String>(objects);
+        HashSet<String> reached = new HashSet<String>();
+        ArrayDeque<String> queue = new ArrayDeque<String>();
+        for (Map.Entry<String, String> branch
+                : Refs.local().branches().entrySet()) {
+            root(branch.getValue(), "branch " + branch.getKey(), present,
+                    queue);
+        }
+        for (Context context : Worktree.all()) {
+            String where = !context.isLinked() ? ""
+                    : Worktree.DIR + "/" + context.getGitDir().getName() + " ";
+            Refs refs = new Refs(context.getRepo(), context.getGitDir());
+            for (Map.Entry<String, Set<String>> logged
+                    : refs.reflogIds().entrySet()) {
+                for (String id : logged.getValue()) {
+                    root(id, where + "reflog " + logged.getKey(), present,
+                            queue);
+                }
+            }
+            root(refs.get(refs.headName()), where + "HEAD", present, queue);
+            StagingArea stage = StagingArea.readStage(context.getGitDir());
+            for (Map.Entry<String, String> file
+                    : stage.getFilesInStage().entrySet()) {
+                root(file.getValue(), where + "staged " + file.getKey(),
+                        present, queue);
+            }
+        }
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            if (!reached.add(id) || !links.containsKey(id)) {
+                continue;
+            }
+            for (String target : links.get(id)) {
+                if (!present.contains(target)) {
+                    error("missing object " + target + " (from " + id + ")");
+                } else {
+                    queue.add(target);
+                }
+            }
+        }
+        for (String id : objects) {
+            if (!reached.contains(id)) {
+                problems.add("dangling object " + id);
+            }
+        }
+    }
+
+    /** Start following links at ID, named NAME, reporting it if missing.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @param name : What refers to it.
+     *  @param present : The objects in the repository.
+     *  @param queue : The objects still to follow. */
+    private void root(String id, String name, Set<String> present,
+                      ArrayDeque<String> queue) {
+        if (!present.contains(id)) {
+            error("missing object " + id + " (from " + name + ")");
+        } else {
+            queue.add(id);
+        }
+    }
+
+    /** Record the error PROBLEM.
+     *  @param problem : A description of the problem. */
+    private synchronized void error(String problem) {
+        errors += 1;
+        problems.add(problem);
+    }
+
+    /** Record the warning PROBLEM, which is not counted as an error.
+     *  @param problem : A description of the problem. */
+    private synchronized void warn(String problem) {
+        problems.add(problem);
+    }
+
+    /** A unit of work run on the thread pool. */
+    private abstract static class Task {
+        /** Do the work.
+         *  @param reader : The object store of the calling thread. */
+        abstract void run(ObjectStore reader);
+    }
+
+    /** Result of a commit whose hash matches its id. */
+    private static final int MATCH = 0;
+
+    /** Result of a commit whose hash does not match its id. */
+    private static final int MISMATCH = 1;
+
+    /** Result of a commit whose hashed form could not be reproduced. */
+    private static final int UNKNOWN = 2;
+
+    /** Doublings past the smallest capacity tried when the stored bytes
+     *  of a commit name no capacity for its snapshot. */
+    private static final int CAPACITY_DOUBLINGS = 4;
+
+    /** Length of the block of two ints HashMap writes its bucket count
+     *  and size in, with its tag and length bytes. */
+    private static final int SIZE_BLOCK_LENGTH = 2 + 2 * Integer.BYTES;
+
+    /** Milliseconds between updates of the progress meter. */
+    private static final long PROGRESS_INTERVAL = 100;
+
+    /** The object store being checked. */
+    private final ObjectStore store;
+
+    /** Every object in the repository, sorted. */
+    private final ArrayList<String> objects = new ArrayList<String>();
+
+    /** The objects each object refers to, <id, ids>. */
+    private final ConcurrentHashMap<String, List<String>> links =
+            new ConcurrentHashMap<String, List<String>>();
+
+    /** The chunks of each chunked blob, <id, chunks>. */
+    private final ConcurrentHashMap<String, ObjectStore.Chunks> chunked =
+            new ConcurrentHashMap<String, ObjectStore.Chunks>();
+
+    /** Chunks that have been hashed on their own. */
+    private final Set<String> checkedChunks =
+            ConcurrentHashMap.newKeySet();
+
+    /** Problems found so far, sorted. */
+    private final TreeSet<String> problems = new TreeSet<String>();
+
+    /** Number of errors found. */
+    private int errors;
+
+    /** Number of bytes hashed. */
+    private final AtomicLong bytes = new AtomicLong();
+}
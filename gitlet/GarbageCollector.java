@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** Deletes objects that can no longer be reached. Every object in the
+ *  repository is listed once in sorted order, and reachability is kept in
+ *  a BitSet over that list, one bit per object. Objects reachable from a
+ *  branch, HEAD or the staging area are marked, and the rest are removed
+ *  once they are older than a grace period, which protects objects that a
+ *  command running at the same time has written but not yet referenced.
+ *  Every file is replaced by an atomic move, so read-only commands running
+ *  alongside never see a partly written file.
+ *  @author David Oh */
+class GarbageCollector {
+
+    /** A collector for STORE removing unreachable objects last modified
+     *  before CUTOFF.
+     *  @param store : The object store.
+     *  @param cutoff : A time in milliseconds since the epoch. */
+    GarbageCollector(ObjectStore store, long cutoff) {
+        this.store = store;
+        this.cutoff = cutoff;
+        TreeSet<String> all = new TreeSet<String>();
+        all.addAll(store.looseBlobIds());
+        all.addAll(store.looseCommitIds());
+        for (Pack pack : store.packs()) {
+            all.addAll(pack.ids());
+        }
+        ids = all.toArray(new String[all.size()]);
+        reachable = new BitSet(ids.length);
+    }
+
+    /** Remove unreachable objects. Used for the gc [--now] command; with
+     *  --now there is no grace period.
+     *  @param args : The arguments of the gc command. */
+    static void gc(String[] args) {
+        long grace = args.length == 2 ? 0 : GRACE_PERIOD;
+        File lock = Utils.join(WorkingDirectory.repo(), LOCK);
+        try {
+            if (!lock.createNewFile()) {
+                throw new GitletException("Another gc is running.");
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            GarbageCollector collector = new GarbageCollector(
+                    ObjectStore.local(), System.currentTimeMillis() - grace);
+            collector.mark();
+            collector.sweep();
+            System.out.println("Removed " + collector.removed
+                    + " unreachable objects (" + collector.removedBytes
+                    + " bytes), kept " + collector.reachable.cardinality()
+                    + ".");
+        } finally {
+            lock.delete();
+        }
+    }
+
+    /** Mark every object reachable from a branch, or from the HEAD, a
+     *  reflog or the staging area of any worktree. */
+    void mark() {
+        ArrayDeque<String> commits = new ArrayDeque<String>();
+        commits.addAll(Refs.local().branches().values());
+        for (Context context : Worktree.all()) {
+            Refs refs = new Refs(context.getRepo(), context.getGitDir());
+            for (Set<String> logged : refs.reflogIds().values()) {
+                commits.addAll(logged);
+            }
+            commits.add(refs.get(refs.headName()));
+            for (String blobID : StagingArea.readStage(context.getGitDir())
+                    .getFilesInStage().values()) {
+                markBlob(blobID);
+            }
+        }
+        while (!commits.isEmpty()) {
+            String commitID = commits.poll();
+            if (!mark(commitID) || !store.containsCommit(commitID)) {
+                continue;
+            }
+            Commit commit = store.readCommit(commitID);
+            if (commit.getPreviousCommit() != null) {
+                commits.add(commit.getPreviousCommit());
+            }
+            if (commit instanceof MergeCommit) {
+                commits.add(((MergeCommit) commit).getPreviousCommit2());
+            }
+            if (commit.getSnapshot() != null) {
+                for (String blobID : commit.getSnapshot().values()) {
+                    markBlob(blobID);
+                }
+            }
+        }
+    }
+
+    /** Mark the blob with the given id, the chunks it is stored in and
+     *  the delta bases it is packed against in every pack holding it,
+     *  whether or not it is also loose, since sweep keeps its packed
+     *  copies too.
+     *  @param blobID : The Sha-1 Hash of a blob. */
+    private void markBlob(String blobID) {
+        if (!mark(blobID)) {
+            return;
+        }
+        ObjectStore.Chunks chunks = store.readChunks(blobID);
+        if (chunks != null) {
+            for (String chunkID : chunks.getIds()) {
+                markBlob(chunkID);
+            }
+        }
+        for (Pack pack : store.packs()) {
+            if (pack.contains(blobID)) {
+                String baseID = pack.readEntry(blobID).getBaseID();
+                if (baseID != null) {
+                    markBlob(baseID);
+                }
+            }
+        }
+    }
+
+    /** Mark the object with the given id.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @return : True if the object exists and was not marked before. */
+    private boolean mark(String id) {
+        int index = Arrays.binarySearch(ids, id);
+        if (index < 0 || reachable.get(index)) {
+            return false;
+        }
+        reachable.set(index);
+        return true;
+    }
+
+    /** Return true if the object with the given id has been marked.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @return : A boolean. */
+    private boolean isReachable(String id) {
+        int index = Arrays.binarySearch(ids, id);
+        return index >= 0 && reachable.get(index);
+    }
+
+    /** Remove the unreachable loose objects older than the cutoff, rewrite
+     *  packs holding unreachable objects, drop removed commits from the
+     *  commit tree and clear out temporary files left by interrupted
+     *  writes. */
+    void sweep() {
+        File repo = store.getRepo();
+        sweepLoose(store.looseBlobIds(), false);
+        List<String> removedCommits = sweepLoose(store.looseCommitIds(),
+                true);
+        for (Pack pack : store.packs()) {
+            sweepPack(pack);
+        }
+        store.reloadPacks();
+        if (!removedCommits.isEmpty()) {
+            CommitTree.update(repo, Collections.<String>emptyList(),
+                    removedCommits);
+        }
+        long tmpCutoff = System.currentTimeMillis() - TMP_GRACE_PERIOD;
+        List<File> dirs = store.objectDirs();
+        dirs.add(Utils.join(repo, Pack.DIR));
+        for (File dir : dirs) {
+            List<String> names = Utils.plainFilenamesIn(dir);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File file = new File(dir, name);
+                if (name.startsWith("tmp-")
+                        && file.lastModified() < tmpCutoff) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /** Delete the unreachable objects among the loose objects IDS.
+     *  @param ids : The ids of loose blobs or commits.
+     *  @param commits : True if IDS are commits.
+     *  @return : The ids of the deleted objects. */
+    private List<String> sweepLoose(List<String> ids, boolean commits) {
+        ArrayList<String> deleted = new ArrayList<String>();
+        for (String id : ids) {
+            File file = commits ? store.commitFile(id) : store.blobFile(id);
+            if (!isReachable(id) && file.lastModified() < cutoff) {
+                long length = file.length();
+                if (file.delete()) {
+                    removed += 1;
+                    removedBytes += length;
+                    deleted.add(id);
+                }
+            }
+        }
+        return deleted;
+    }
+
+    /** Rewrite PACK without its unreachable objects, if it has any and it
+     *  is older than the cutoff. Entries are copied in the order they were
+     *  written, so every delta still follows its base.
+     *  @param pack : A pack of the repository. */
+    private void sweepPack(Pack pack) {
+        if (pack.getFile().lastModified() >= cutoff) {
+            return;
+        }
+        TreeMap<Long, String> byOffset = new TreeMap<Long, String>();
+        int unreachable = 0;
+        for (Map.Entry<String, Long> entry : pack.offsets().entrySet()) {
+            byOffset.put(entry.getValue(), entry.getKey());
+            if (!isReachable(entry.getKey())) {
+                unreachable += 1;
+            }
+        }
+        if (unreachable == 0) {
+            return;
+        }
+        long oldLength = pack.getFile().length();
+        if (unreachable < byOffset.size()) {
+            Pack.Writer writer = new Pack.Writer(pack.getFile()
+                    .getParentFile());
+            try {
+                for (String id : byOffset.values()) {
+                    if (isReachable(id)) {
+                        writer.writeEntry(pack.readEntry(id));
+                    }
+                }
+            } catch (RuntimeException excp) {
+                writer.abort();
+                throw excp;
+            }
+            oldLength -= writer.finish().length();
+        }
+        Pack.indexFile(pack.getFile()).delete();
+        pack.getFile().delete();
+        removed += unreachable;
+        removedBytes += oldLength;
+    }
+
+    /** Unreachable objects younger than this are kept, in milliseconds. */
+    static final long GRACE_PERIOD = 14L * 24 * 60 * 60 * 1000;
+
+    /** Temporary files younger than this are left alone even with --now,
+     *  since a running command may still be writing them. */
+    static final long TMP_GRACE_PERIOD = 60L * 60 * 1000;
+
+    /** Name of the file held while gc runs. */
+    static final String LOCK = "gc.lock";
+
+    /** The object store being collected. */
+    private final ObjectStore store;
+
+    /** Unreachable objects last modified before this time are removed. */
+    private final long cutoff;
+
+    /** Every object in the repository, sorted. */
+    private final String[] ids;
+
+    /** Bit i is set once IDS[i] is known to be reachable. */
+    private final BitSet reachable;
+
+    /** Number of objects removed. */
+    private int removed;
+
+    /** Number of bytes freed. */
+    private long removedBytes;
+}
@@ -0,0 +1,201 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** The hash function objects are named by. A repository picks one when it
+ *  is made, with init --hash=NAME, and keeps it in its config, since every
+ *  id it stores depends on it: SHA-1, the default and the only choice of
+ *  repositories made before there was one, or SHA-256, whose ids are 64
+ *  hex digits instead of 40.
+ *
+ *  MessageDigest.getInstance searches the security providers on every
+ *  call, so each thread keeps one digest per engine and resets it after
+ *  use. The JDK's SHA-1 and SHA-256 compile to the processor's SHA
+ *  instructions where there are any (the SHA extensions of x86 and the
+ *  cryptography extensions of ARMv8), so the digests are used as they are.
+ *  @author David Oh */
+class HashEngine {
+
+    /** An engine with name NAME using the digest ALGORITHM.
+     *  @param name : The name of the engine in the config file.
+     *  @param algorithm : The name of the MessageDigest algorithm. */
+    private HashEngine(String name, String algorithm) {
+        this.name = name;
+        this.algorithm = algorithm;
+        this.length = 2 * newDigest().getDigestLength();
+        this.digests = new ThreadLocal<MessageDigest>() {
+            @Override
+            protected MessageDigest initialValue() {
+                return newDigest();
+            }
+        };
+    }
+
+    /** Get the name of this engine.
+     *  @return : The name used in the config file. */
+    String getName() {
+        return name;
+    }
+
+    /** Get the length of the ids of this engine.
+     *  @return : The number of hex digits in an id. */
+    int getLength() {
+        return length;
+    }
+
+    /** Return a digest of this engine's algorithm of its own, for callers
+     *  that feed it a stream a piece at a time.
+     *  @return : A new MessageDigest. */
+    MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + algorithm);
+        }
+    }
+
+    /** Return the calling thread's digest of this engine, which is reset.
+     *  It is shared by hash and hashFile, so it must be finished with
+     *  digest() before either is called again.
+     *  @return : The digest. */
+    MessageDigest threadDigest() {
+        return digests.get();
+    }
+
+    /** Return the id of CONTENTS.
+     *  @param contents : The bytes of an object.
+     *  @return : The hash of CONTENTS in hex. */
+    String hash(byte[] contents) {
+        MessageDigest digest = digests.get();
+        Metrics.HASHED_BYTES.add(contents.length);
+        return hex(digest.digest(contents));
+    }
+
+    /** Return the id of CONTENTS stored as an object of kind KIND, the
+     *  hash of KIND followed by CONTENTS.
+     *  @param kind : The kind of object, such as "commit".
+     *  @param contents : The bytes of the object.
+     *  @return : The hash in hex. */
+    String hash(String kind, byte[] contents) {
+        MessageDigest digest = digests.get();
+        byte[] prefix = kind.getBytes(StandardCharsets.UTF_8);
+        digest.update(prefix);
+        Metrics.HASHED_BYTES.add(prefix.length + contents.length);
+        return hex(digest.digest(contents));
+    }
+
+    /** Return the id of the contents of FILE, which is the id the file
+     *  would be stored under. Files of at least MAP_THRESHOLD bytes are
+     *  mapped into memory and digested from there, so their pages are
+     *  never copied into a buffer first; smaller ones, for which mapping
+     *  costs more than it saves, are read.
+     *  @param file : A file.
+     *  @return : The hash of its contents in hex. */
+    String hashFile(File file) {
+        MessageDigest digest = digests.get();
+        long total = 0;
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long at = 0; at < size; at += MAP_SIZE) {
+                    long length = Math.min(MAP_SIZE, size - at);
+                    digest.update(channel.map(FileChannel.MapMode.READ_ONLY,
+                            at, length));
+                }
+                total = size;
+            } else {
+                ByteBuffer buffer = BUFFERS.get();
+                buffer.clear();
+                for (int n = channel.read(buffer); n >= 0;
+                     n = channel.read(buffer)) {
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                    total += n;
+                }
+            }
+        } catch (IOException excp) {
+            digest.reset();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (InternalError excp) {
+            digest.reset();
+            throw new IllegalArgumentException(file.getPath()
+                    + " was truncated while it was hashed");
+        }
+        Metrics.HASHED_BYTES.add(total);
+        Trace.read(total);
+        return hex(digest.digest());
+    }
+
+    /** Return the engine with the given name.
+     *  @param name : The name of an engine.
+     *  @return : The engine. */
+    static HashEngine forName(String name) {
+        for (HashEngine engine : ENGINES) {
+            if (engine.name.equals(name)) {
+                return engine;
+            }
+        }
+        throw new GitletException("No hash algorithm with that name exists.");
+    }
+
+    /** Return DIGEST as a string of lowercase hex digits.
+     *  @param digest : The bytes of a digest.
+     *  @return : The hexadecimal string. */
+    static String hex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Ids of 40 hex digits, used by every repository made before there
+     *  was a choice. */
+    static final HashEngine SHA1 = new HashEngine("sha1", "SHA-1");
+
+    /** Ids of 64 hex digits. */
+    static final HashEngine SHA256 = new HashEngine("sha256", "SHA-256");
+
+    /** All known engines. */
+    private static final HashEngine[] ENGINES = {SHA1, SHA256};
+
+    /** Files at least this long are mapped rather than read. */
+    static final long MAP_THRESHOLD = 1 << 20;
+
+    /** The most bytes of a file mapped at once. */
+    private static final long MAP_SIZE = 1 << 30;
+
+    /** The buffer each thread reads small files into. Direct, so that
+     *  reading fills it without a copy through the heap. */
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+            new ThreadLocal<ByteBuffer>() {
+                @Override
+                protected ByteBuffer initialValue() {
+                    return ByteBuffer.allocateDirect(Codec.BUFFER_SIZE);
+                }
+            };
+
+    /** The hex digits, by value. */
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    /** The name of this engine. */
+    private final String name;
+
+    /** The name of its MessageDigest algorithm. */
+    private final String algorithm;
+
+    /** The number of hex digits in its ids. */
+    private final int length;
+
+    /** The digest of each thread, reset after each use. */
+    private final ThreadLocal<MessageDigest> digests;
+}
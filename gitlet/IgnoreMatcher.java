@@ -0,0 +1,308 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+/** The patterns of a .gitletignore file, compiled for matching paths
+ *  during a walk of the working directory. Patterns follow .gitignore:
+ *  blank lines and lines starting with '#' are skipped; '*', '?' and
+ *  [...] match within one directory and '**' across any number; a
+ *  pattern ending in '/' matches only directories; a pattern with a
+ *  '/' before its end is matched against the whole path from the
+ *  working directory, and one without against the last name of the
+ *  path at any depth; a pattern starting with '!' includes again what
+ *  an earlier pattern ignored.
+ *
+ *  Most patterns are plain names (build, .DS_Store) or suffixes
+ *  (*.class), so those are kept in hash sets and cost one lookup per
+ *  name. The remaining patterns are combined into one regular expression
+ *  for names and one for paths, so a path is matched in a single pass
+ *  however many patterns there are. With '!' patterns the order of the
+ *  patterns matters, and each is instead tried from last to first.
+ *  @author David Oh */
+class IgnoreMatcher {
+
+    /** A matcher for the patterns in LINES, in order.
+     *  @param lines : The lines of an ignore file. */
+    IgnoreMatcher(String[] lines) {
+        StringBuilder anyName = new StringBuilder();
+        StringBuilder anyPath = new StringBuilder();
+        StringBuilder dirName = new StringBuilder();
+        StringBuilder dirPath = new StringBuilder();
+        for (String line : lines) {
+            Rule rule = Rule.parse(line);
+            if (rule == null) {
+                continue;
+            }
+            rules.add(rule);
+            negated |= rule.negated;
+            if (rule.literal != null) {
+                (rule.anchored ? paths(rule.dirOnly) : names(rule.dirOnly))
+                        .add(rule.literal);
+            } else if (rule.suffix != null && !rule.dirOnly) {
+                suffixes.add(rule.suffix);
+            } else if (rule.anchored) {
+                append(rule.dirOnly ? dirPath : anyPath, rule.regex);
+            } else {
+                append(rule.dirOnly ? dirName : anyName, rule.regex);
+            }
+        }
+        anyNamePattern = compile(anyName);
+        anyPathPattern = compile(anyPath);
+        dirNamePattern = compile(dirName);
+        dirPathPattern = compile(dirPath);
+    }
+
+    /** Return the matcher for the .gitletignore file in the working
+     *  directory ROOT, or a matcher ignoring nothing if there is none.
+     *  @param root : The working directory.
+     *  @return : The matcher. */
+    static IgnoreMatcher read(File root) {
+        File file = Utils.join(root, FILE);
+        if (!file.isFile()) {
+            return new IgnoreMatcher(new String[0]);
+        }
+        return new IgnoreMatcher(Utils.readContentsAsString(file)
+                .split("\r?\n"));
+    }
+
+    /** Return true if the file or directory at PATH is ignored.
+     *  @param path : Its slash-separated path from the working directory.
+     *  @param name : The last name of PATH.
+     *  @param dir : True if PATH is a directory.
+     *  @return : A boolean. */
+    boolean ignored(String path, String name, boolean dir) {
+        if (rules.isEmpty()) {
+            return false;
+        }
+        if (negated) {
+            for (int i = rules.size() - 1; i >= 0; i -= 1) {
+                Rule rule = rules.get(i);
+                if (rule.matches(path, name, dir)) {
+                    return !rule.negated;
+                }
+            }
+            return false;
+        }
+        if (anyNames.contains(name) || anyPaths.contains(path)
+                || dir && (dirNames.contains(name) || dirPaths.contains(path))
+                || matches(anyNamePattern, name)
+                || matches(anyPathPattern, path)
+                || dir && (matches(dirNamePattern, name)
+                           || matches(dirPathPattern, path))) {
+            return true;
+        }
+        for (int dot = name.indexOf('.'); dot >= 0;
+             dot = name.indexOf('.', dot + 1)) {
+            if (suffixes.contains(name.substring(dot))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return true if PATTERN is not null and matches all of TEXT.
+     *  @param pattern : A combined pattern, or null.
+     *  @param text : A name or path.
+     *  @return : A boolean. */
+    private static boolean matches(Pattern pattern, String text) {
+        return pattern != null && pattern.matcher(text).matches();
+    }
+
+    /** Return the set of plain names to match.
+     *  @param dirOnly : True for the set matching only directories.
+     *  @return : The set. */
+    private HashSet<String> names(boolean dirOnly) {
+        return dirOnly ? dirNames : anyNames;
+    }
+
+    /** Return the set of plain paths to match.
+     *  @param dirOnly : True for the set matching only directories.
+     *  @return : The set. */
+    private HashSet<String> paths(boolean dirOnly) {
+        return dirOnly ? dirPaths : anyPaths;
+    }
+
+    /** Add REGEX to COMBINED as one more alternative.
+     *  @param combined : The alternatives so far.
+     *  @param regex : The regular expression of one pattern. */
+    private static void append(StringBuilder combined, String regex) {
+        if (combined.length() > 0) {
+            combined.append('|');
+        }
+        combined.append("(?:").append(regex).append(')');
+    }
+
+    /** Return COMBINED compiled, or null if it has no alternatives.
+     *  @param combined : The alternatives.
+     *  @return : The pattern. */
+    private static Pattern compile(StringBuilder combined) {
+        return combined.length() == 0 ? null
+                : Pattern.compile(combined.toString());
+    }
+
+    /** Return the regular expression matching the same paths as GLOB.
+     *  @param glob : A pattern without its leading '/' or '!' and its
+     *  trailing '/'.
+     *  @return : The regular expression. */
+    static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (glob.startsWith("**/", i)) {
+                regex.append("(?:.*/)?");
+                i += 3;
+            } else if (glob.startsWith("**", i)) {
+                regex.append(".*");
+                i += 2;
+            } else if (c == '*') {
+                regex.append("[^/]*");
+                i += 1;
+            } else if (c == '?') {
+                regex.append("[^/]");
+                i += 1;
+            } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                int end = glob.indexOf(']', i + 2);
+                String set = glob.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                regex.append('[').append(set.replace("\\", "\\\\")
+                        .replace("[", "\\[").replace("&", "\\&"))
+                        .append(']');
+                i = end + 1;
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(glob.substring(i + 1, i + 2)));
+                i += 2;
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+                i += 1;
+            }
+        }
+        return regex.toString();
+    }
+
+    /** One line of an ignore file. */
+    private static class Rule {
+
+        /** Return the rule on LINE, or null if LINE has none.
+         *  @param line : A line of an ignore file.
+         *  @return : The rule. */
+        static Rule parse(String line) {
+            String glob = line.trim();
+            if (glob.isEmpty() || glob.startsWith("#")) {
+                return null;
+            }
+            Rule rule = new Rule();
+            if (glob.startsWith("!")) {
+                rule.negated = true;
+                glob = glob.substring(1);
+            }
+            if (glob.endsWith("/")) {
+                rule.dirOnly = true;
+                glob = glob.substring(0, glob.length() - 1);
+            }
+            rule.anchored = glob.indexOf('/') >= 0;
+            if (glob.startsWith("/")) {
+                glob = glob.substring(1);
+            }
+            if (glob.isEmpty()) {
+                return null;
+            }
+            if (!hasWildcard(glob)) {
+                rule.literal = glob;
+            } else if (glob.startsWith("*.") && !rule.anchored
+                    && !hasWildcard(glob.substring(1))) {
+                rule.suffix = glob.substring(1);
+            }
+            rule.regex = toRegex(glob);
+            rule.pattern = Pattern.compile(rule.regex);
+            return rule;
+        }
+
+        /** Return true if GLOB has a wildcard or escape.
+         *  @param glob : A pattern.
+         *  @return : A boolean. */
+        private static boolean hasWildcard(String glob) {
+            for (int i = 0; i < glob.length(); i += 1) {
+                if ("*?[\\".indexOf(glob.charAt(i)) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Return true if this rule matches the file or directory at PATH,
+         *  whose last name is NAME.
+         *  @param path : A slash-separated path.
+         *  @param name : The last name of PATH.
+         *  @param dir : True if PATH is a directory.
+         *  @return : A boolean. */
+        boolean matches(String path, String name, boolean dir) {
+            if (dirOnly && !dir) {
+                return false;
+            }
+            return pattern.matcher(anchored ? path : name).matches();
+        }
+
+        /** True for a pattern starting with '!'. */
+        private boolean negated;
+
+        /** True for a pattern ending in '/'. */
+        private boolean dirOnly;
+
+        /** True if the pattern is matched against the whole path. */
+        private boolean anchored;
+
+        /** The pattern itself if it has no wildcards, or null. */
+        private String literal;
+
+        /** The suffix matched by a pattern *.EXT, or null. */
+        private String suffix;
+
+        /** The pattern as a regular expression. */
+        private String regex;
+
+        /** REGEX, compiled. */
+        private Pattern pattern;
+    }
+
+    /** Name of the ignore file in the working directory. */
+    static final String FILE = ".gitletignore";
+
+    /** The rules, in the order of their lines. */
+    private final ArrayList<Rule> rules = new ArrayList<Rule>();
+
+    /** True if some rule starts with '!'. */
+    private boolean negated;
+
+    /** Names ignored wherever they are. */
+    private final HashSet<String> anyNames = new HashSet<String>();
+
+    /** Paths ignored. */
+    private final HashSet<String> anyPaths = new HashSet<String>();
+
+    /** Names of directories ignored wherever they are. */
+    private final HashSet<String> dirNames = new HashSet<String>();
+
+    /** Paths of directories ignored. */
+    private final HashSet<String> dirPaths = new HashSet<String>();
+
+    /** Suffixes, starting with '.', of names ignored. */
+    private final HashSet<String> suffixes = new HashSet<String>();
+
+    /** The other patterns matched against names. */
+    private final Pattern anyNamePattern;
+
+    /** The other patterns matched against paths. */
+    private final Pattern anyPathPattern;
+
+    /** The other patterns matched against directory names. */
+    private final Pattern dirNamePattern;
+
+    /** The other patterns matched against directory paths. */
+    private final Pattern dirPathPattern;
+}
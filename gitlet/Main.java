@@ -8,21 +8,36 @@ import java.io.File;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  <COMMAND> <OPERAND> .... The whole command is traced as one span
+     *  named after it, and its time is recorded in the metrics. */
     public static void main(String... args) {
+        long start = System.nanoTime();
+        String command = args.length == 0 ? "gitlet" : args[0];
+        Trace.Span span = Trace.start(command);
         try {
             checkArgsFormat(args);
+            Context.enter(Context.find(new File(".")));
             checkInitialized(args[0]);
             switch (args[0]) {
             case "init":
-                WorkingDirectory.init();
+                WorkingDirectory.init(args.length == 1 ? HashEngine.SHA1
+                        : HashEngine.forName(args[1].substring(
+                                HASH_OPTION.length())));
                 break;
             case "add":
                 StagingArea stage = StagingArea.readStage();
-                stage.add(args[1]);
+                if (args[1].equals("-A")) {
+                    stage.addAll();
+                } else {
+                    stage.add(args[1]);
+                }
                 break;
             case "commit":
-                new Commit(args[1]);
+                if (args.length == 3) {
+                    Commit.commitAll(args[2]);
+                } else {
+                    new Commit(args[1]);
+                }
                 break;
             case "rm":
                 WorkingDirectory.rm(args[1]);
@@ -61,12 +76,73 @@ public class Main {
             case "merge":
                 WorkingDirectory.merge(args[1]);
                 break;
+            case "diff":
+                Diff.diff(args);
+                break;
+            case "config":
+                Config.config(args);
+                break;
+            case "repack":
+                Pack.repack(args);
+                break;
+            case "gc":
+                GarbageCollector.gc(args);
+                break;
+            case "fsck":
+                Fsck.fsck(args);
+                break;
+            case "watch":
+                Watcher.watch(args);
+                break;
+            case "stats":
+                Metrics.stats(args);
+                break;
+            case "reflog":
+                Refs.reflog(args);
+                break;
+            case "add-remote":
+                Remote.addRemote(args[1], args[2]);
+                break;
+            case "rm-remote":
+                Remote.rmRemote(args[1]);
+                break;
+            case "fetch":
+                Remote.fetch(args[1], args[2]);
+                break;
+            case "push":
+                Remote.push(args[1], args[2]);
+                break;
+            case "pull":
+                Remote.pull(args[1], args[2]);
+                break;
+            case "sparse-checkout":
+                SparseCheckout.sparseCheckout(args);
+                break;
+            case "clone":
+                Remote.clone(args);
+                break;
+            case "worktree":
+                Worktree.worktree(args);
+                break;
+            case "bundle":
+                if (args[1].equals("create")) {
+                    Bundle.create(args[2], args[3]);
+                } else {
+                    Bundle.unbundle(args[2]);
+                }
+                break;
             default:
+                command = "unknown";
                 throw new GitletException("No command with that name exists.");
             }
         } catch (GitletException g) {
             System.out.println(g.getMessage());
+            span.close();
+            Metrics.record(command, start, true);
             System.exit(0);
+        } finally {
+            span.close();
+            Metrics.record(command, start, false);
         }
     }
 
@@ -78,22 +154,95 @@ public class Main {
             throw new GitletException("Please enter a command.");
         }
         String command = args[0];
-        if (command.equals("init") || command.equals("log")
-                || command.equals("global-log") || command.equals("status")) {
+        if (command.equals("init")) {
+            if (args.length > 2 || args.length == 2
+                    && !args[1].startsWith(HASH_OPTION)) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("log") || command.equals("global-log")
+                || command.equals("status") || command.equals("fsck")) {
             if (args.length > 1) {
                 throw new GitletException("Incorrect operands.");
             }
-        } else if (command.equals("add") || command.equals("commit")
-                || command.equals("branch") || command.equals("rm-branch")
-                || command.equals("rm") || command.equals("reset")
-                || command.equals("find") || command.equals("merge")) {
+        } else if (command.equals("commit")) {
+            if (args.length != 2 && (args.length != 3
+                    || !args[1].equals("-a"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+            if (args[args.length - 1].equals("")
+                    || args.length == 2 && args[1].equals("-a")) {
+                throw new GitletException("Please enter a commit message.");
+            }
+        } else if (command.equals("add") || command.equals("branch")
+                || command.equals("rm-branch") || command.equals("rm")
+                || command.equals("reset") || command.equals("find")
+                || command.equals("merge") || command.equals("rm-remote")) {
             if (args.length != 2) {
                 throw new GitletException("Incorrect operands.");
             }
-            if (args[0].equals("commit")) {
-                if (args[1].equals("")) {
-                    throw new GitletException("Please enter a commit message.");
-                }
+        } else if (command.equals("add-remote") || command.equals("fetch")
+                || command.equals("push") || command.equals("pull")) {
+            if (args.length != 3) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("bundle")) {
+            if ((args.length != 4 || !args[1].equals("create"))
+                    && (args.length != 3 || !args[1].equals("unbundle"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("worktree")) {
+            if ((args.length != 4 || !args[1].equals("add"))
+                    && (args.length != 2 || !args[1].equals("list"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("sparse-checkout")) {
+            if (args.length < 2 || !args[1].equals("set") && (args.length != 2
+                    || !args[1].equals("list")
+                    && !args[1].equals("disable"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("clone")) {
+            int path = 1;
+            if (args.length > path + 2
+                    && args[path].equals(Remote.DEPTH_OPTION)) {
+                path += 2;
+            }
+            if (args.length > path + 1
+                    && args[path].equals(Remote.FILTER_OPTION)) {
+                path += 1;
+            }
+            if (args.length != path + 1) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("gc")) {
+            if (args.length != 1 && (args.length != 2
+                    || !args[1].equals("--now"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("watch")) {
+            if (args.length != 1 && (args.length != 2
+                    || !args[1].equals("--stop"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("stats")) {
+            if (args.length != 1 && (args.length != 2
+                    || !args[1].equals("--prometheus")
+                    && !args[1].equals("--reset"))
+                    && (args.length != 3 || !args[1].equals("--serve"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("repack")) {
+            if (args.length != 1 && (args.length != 3
+                    || !args[1].equals("--depth"))) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("reflog")) {
+            if (args.length > 2) {
+                throw new GitletException("Incorrect operands.");
+            }
+        } else if (command.equals("diff") || command.equals("config")) {
+            if (args.length > 3) {
+                throw new GitletException("Incorrect operands.");
             }
         } else if (command.equals("checkout")) {
             if (args.length < 2 || args.length > 4) {
@@ -116,12 +265,15 @@ public class Main {
      *  this command.
      *  @param command : args[0], the first string the user inputs. */
     static void checkInitialized(String command) {
-        if (!command.equals("init")) {
-            File gitletDir = Utils.join(WorkingDirectory.CWD, ".gitlet");
+        if (!command.equals("init") && !command.equals("clone")) {
+            File gitletDir = Utils.join(WorkingDirectory.cwd(), ".gitlet");
             if (!gitletDir.exists()) {
                 throw new GitletException("Not in an initialized Gitlet "
                         + "directory.");
             }
         }
     }
+
+    /** The option of init choosing the hash engine, before its name. */
+    static final String HASH_OPTION = "--hash=";
 }
@@ -0,0 +1,93 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded record of split points that have already been computed.
+ *  Keys are the ordered pair of commits given to merge, values are the
+ *  Sha-1 Hash of their split point. Commits never change once written,
+ *  so an entry stays correct for as long as both commits exist and never
+ *  needs to be invalidated; only the least recently used entries are
+ *  dropped once the cache is full.
+ *  @author David Oh */
+public class MergeBaseCache implements Serializable {
+
+    /** Construct a new, empty merge base cache. */
+    MergeBaseCache() {
+        entries = new LinkedHashMap<String, String>(16, 0.75f, true);
+    }
+
+    /** Read the merge base cache from the .gitlet repository, or return an
+     *  empty cache if none has been saved yet.
+     *  @return : The merge base cache. */
+    static MergeBaseCache readCache() {
+        File cacheFile = Utils.join(WorkingDirectory.gitDir(), FILE_NAME);
+        if (!cacheFile.exists()) {
+            return new MergeBaseCache();
+        }
+        try {
+            return Utils.readObject(cacheFile, MergeBaseCache.class);
+        } catch (IllegalArgumentException excp) {
+            return new MergeBaseCache();
+        }
+    }
+
+    /** Save the merge base cache to the .gitlet repository. */
+    void saveCache() {
+        Utils.writeObject(Utils.join(WorkingDirectory.gitDir(), FILE_NAME),
+                this);
+    }
+
+    /** Get the split point recorded for the given pair of commits.
+     *  @param currentID : The Sha-1 Hash of the commit merged into.
+     *  @param givenID : The Sha-1 Hash of the commit merged in.
+     *  @return : The Sha-1 Hash of the split point, or null if this pair
+     *  has not been seen. */
+    String get(String currentID, String givenID) {
+        return entries.get(key(currentID, givenID));
+    }
+
+    /** Record the split point of the given pair of commits, evicting the
+     *  least recently used entry if the cache is full.
+     *  @param currentID : The Sha-1 Hash of the commit merged into.
+     *  @param givenID : The Sha-1 Hash of the commit merged in.
+     *  @param splitPointID : The Sha-1 Hash of their split point. */
+    void put(String currentID, String givenID, String splitPointID) {
+        entries.put(key(currentID, givenID), splitPointID);
+        while (entries.size() > MAX_ENTRIES) {
+            Map.Entry<String, String> eldest =
+                    entries.entrySet().iterator().next();
+            entries.remove(eldest.getKey());
+        }
+    }
+
+    /** Get the number of split points currently recorded.
+     *  @return : The number of entries in the cache. */
+    int size() {
+        return entries.size();
+    }
+
+    /** Return the key for the given pair. The split point search prefers
+     *  the ancestor closest to the current commit, so the pair is ordered.
+     *  @param currentID : The Sha-1 Hash of the commit merged into.
+     *  @param givenID : The Sha-1 Hash of the commit merged in.
+     *  @return : The key used in the cache. */
+    private static String key(String currentID, String givenID) {
+        return currentID + ":" + givenID;
+    }
+
+    /** Name of the file the cache is stored in inside .gitlet. */
+    static final String FILE_NAME = "mergeBaseCache";
+
+    /** The largest number of split points kept in the cache. */
+    static final int MAX_ENTRIES = 1024;
+
+    /** Split points in least recently used order.
+     *  <currentID:givenID, splitPointID>. */
+    private LinkedHashMap<String, String> entries;
+
+    /** Version of the serialized form of the cache. */
+    private static final long serialVersionUID = -1406216310507889263L;
+}
@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.util.HashMap;
+
 /** MergeCommit is a special type of commit formed from merging two branches.
  *  @author David Oh */
 public class MergeCommit extends Commit {
@@ -18,6 +20,19 @@ public class MergeCommit extends Commit {
         setUp();
     }
 
+    /** Create a merge commit of SNAP made of the given parts, without
+     *  reading or changing the stage or any branch, and without saving it.
+     *  @param message : The commit message.
+     *  @param time : The time stamp.
+     *  @param cInto : The first parent.
+     *  @param cIn : The second parent.
+     *  @param snap : The snapshot, kept rather than copied. */
+    MergeCommit(String message, String time, String cInto, String cIn,
+                HashMap<String, String> snap) {
+        super(message, time, cInto, snap);
+        previousCommit2 = cIn;
+    }
+
     /** Get the second parent of this merge commit.
      *  @return : The Sha-1 Hash of the second parent commit. */
     String getPreviousCommit2() {
@@ -29,4 +44,6 @@ public class MergeCommit extends Commit {
      *  branch I am NOT currently in. */
     private String previousCommit2;
 
+    /** Version of the serialized form of merge commits. */
+    private static final long serialVersionUID = 1133454698356227818L;
 }
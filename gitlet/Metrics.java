@@ -0,0 +1,604 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileLock;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Counters and histograms of what gitlet commands do: how long each
+ *  command takes, how often the caches answer, how many objects are read
+ *  and written, how many bytes are hashed and how long gitlet waits on
+ *  locks. Recording adds to LongAdders, which threads update without
+ *  locking each other out, so the pools that hash and store files can
+ *  record as they go.
+ *
+ *  Each command is a process of its own, so when a command ends what it
+ *  recorded is added to the totals kept in .gitlet/metrics, under a lock
+ *  on .gitlet/metrics.lock, if the config key metrics is true. The
+ *  stats command shows the totals, or prints them in the Prometheus text
+ *  format, or serves them over HTTP on a local port or Unix socket for
+ *  Prometheus to scrape.
+ *  @author David Oh */
+class Metrics {
+
+    /** Record that the command LABEL ran from START until now and save
+     *  what this process recorded.
+     *  @param label : The name of the command.
+     *  @param start : System.nanoTime() when the command started.
+     *  @param failed : True if the command ended with an error message. */
+    static void record(String label, long start, boolean failed) {
+        COMMAND_DURATION.observe(label, System.nanoTime() - start);
+        if (failed) {
+            COMMAND_ERRORS.add(label, 1);
+        }
+        if (WorkingDirectory.repo().isDirectory()
+                && Config.readConfig(WorkingDirectory.repo())
+                .get(Config.METRICS).equals("true")) {
+            save();
+        }
+    }
+
+    /** Show the totals, print them for Prometheus, serve them, or clear
+     *  them. Used for the stats [--prometheus | --serve ADDRESS | --reset]
+     *  command.
+     *  @param args : The arguments of the stats command. */
+    static void stats(String[] args) {
+        if (args.length == 1) {
+            show(load());
+        } else if (args[1].equals("--prometheus")) {
+            System.out.print(render(load()));
+        } else if (args[1].equals("--reset")) {
+            reset();
+        } else {
+            serve(args[2]);
+        }
+    }
+
+    /** Add what this process recorded to the totals in .gitlet/metrics.
+     *  Metrics are not worth failing a command over, so a total that
+     *  cannot be written is left as it was. */
+    static void save() {
+        File lockFile = Utils.join(WorkingDirectory.repo(), LOCK_NAME);
+        long start = System.nanoTime();
+        try (RandomAccessFile locked = new RandomAccessFile(lockFile, "rw")) {
+            FileLock lock = locked.getChannel().lock();
+            try {
+                LOCK_WAIT.observe("metrics", System.nanoTime() - start);
+                TreeMap<String, long[]> totals = load();
+                for (Map.Entry<String, long[]> entry
+                        : snapshot().entrySet()) {
+                    long[] total = totals.get(entry.getKey());
+                    long[] values = entry.getValue();
+                    if (total == null || total.length != values.length) {
+                        totals.put(entry.getKey(), values);
+                    } else {
+                        for (int i = 0; i < values.length; i += 1) {
+                            total[i] += values[i];
+                        }
+                    }
+                }
+                write(totals);
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Clear the totals. */
+    private static void reset() {
+        File lockFile = Utils.join(WorkingDirectory.repo(), LOCK_NAME);
+        try (RandomAccessFile locked = new RandomAccessFile(lockFile, "rw")) {
+            FileLock lock = locked.getChannel().lock();
+            try {
+                Utils.join(WorkingDirectory.repo(), FILE_NAME).delete();
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return what this process has recorded.
+     *  @return : The values of each series, by its key. */
+    static TreeMap<String, long[]> snapshot() {
+        TreeMap<String, long[]> values = new TreeMap<String, long[]>();
+        for (Family family : FAMILIES) {
+            for (Map.Entry<String, LongAdder[]> entry
+                    : family.series.entrySet()) {
+                long[] sums = new long[entry.getValue().length];
+                boolean any = false;
+                for (int i = 0; i < sums.length; i += 1) {
+                    sums[i] = entry.getValue()[i].sum();
+                    any |= sums[i] != 0;
+                }
+                if (any) {
+                    values.put(family.name + "\t" + entry.getKey(), sums);
+                }
+            }
+        }
+        return values;
+    }
+
+    /** Return the totals saved in .gitlet/metrics. A line that cannot be
+     *  read is skipped.
+     *  @return : The values of each series, by its key: the name of its
+     *  family and its label value, separated by a tab. */
+    static TreeMap<String, long[]> load() {
+        TreeMap<String, long[]> totals = new TreeMap<String, long[]>();
+        File file = Utils.join(WorkingDirectory.repo(), FILE_NAME);
+        if (!file.isFile()) {
+            return totals;
+        }
+        for (String line : Utils.readContentsAsString(file).split("\n")) {
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                continue;
+            }
+            String[] numbers = fields[2].split(" ");
+            long[] values = new long[numbers.length];
+            try {
+                for (int i = 0; i < numbers.length; i += 1) {
+                    values[i] = Long.parseLong(numbers[i]);
+                }
+            } catch (NumberFormatException excp) {
+                continue;
+            }
+            totals.put(fields[0] + "\t" + fields[1], values);
+        }
+        return totals;
+    }
+
+    /** Replace the totals in .gitlet/metrics with TOTALS, by renaming a
+     *  new file over the old, so that readers that take no lock still see
+     *  one or the other.
+     *  @param totals : The values of each series, by its key.
+     *  @throws IOException : In case of problems writing. */
+    private static void write(TreeMap<String, long[]> totals)
+            throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            text.append(entry.getKey()).append('\t');
+            long[] values = entry.getValue();
+            for (int i = 0; i < values.length; i += 1) {
+                text.append(i == 0 ? "" : " ").append(values[i]);
+            }
+            text.append('\n');
+        }
+        File tmp = File.createTempFile("tmp-", null, WorkingDirectory.repo());
+        try {
+            Files.write(tmp.toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(),
+                    Utils.join(WorkingDirectory.repo(), FILE_NAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /** Print TOTALS for people.
+     *  @param totals : The values of each series, by its key. */
+    private static void show(TreeMap<String, long[]> totals) {
+        System.out.println("=== Commands ===");
+        for (Map.Entry<String, long[]> entry
+                : series(totals, COMMAND_DURATION).entrySet()) {
+            long[] errors = totals.get(COMMAND_ERRORS.name + "\t"
+                    + entry.getKey());
+            System.out.println(entry.getKey() + ": "
+                    + describe(entry.getValue(), "runs") + ", "
+                    + (errors == null ? 0 : errors[0]) + " errors");
+        }
+        System.out.println();
+        System.out.println("=== Caches ===");
+        TreeMap<String, long[]> hits = series(totals, CACHE_HITS);
+        TreeMap<String, long[]> misses = series(totals, CACHE_MISSES);
+        TreeMap<String, long[]> caches = new TreeMap<String, long[]>(hits);
+        caches.putAll(misses);
+        for (String cache : caches.keySet()) {
+            long hit = hits.containsKey(cache) ? hits.get(cache)[0] : 0;
+            long miss = misses.containsKey(cache) ? misses.get(cache)[0] : 0;
+            System.out.println(String.format("%s: %d hits, %d misses, %.1f%%"
+                    + " hit", cache, hit, miss, 100.0 * hit / (hit + miss)));
+        }
+        System.out.println();
+        System.out.println("=== Objects ===");
+        String[] names = {"read", "written", "bytes hashed"};
+        Family[] families = {OBJECTS_READ, OBJECTS_WRITTEN, HASHED_BYTES};
+        for (int i = 0; i < names.length; i += 1) {
+            long[] values = totals.get(families[i].name + "\t");
+            System.out.println(names[i] + ": "
+                    + (values == null ? 0 : values[0]));
+        }
+        System.out.println();
+        System.out.println("=== Waits ===");
+        for (Family family : new Family[] {LOCK_WAIT, WATCHER_SYNC}) {
+            for (Map.Entry<String, long[]> entry
+                    : series(totals, family).entrySet()) {
+                String name = entry.getKey().isEmpty() ? "watcher sync"
+                        : entry.getKey() + " lock";
+                System.out.println(name + ": "
+                        + describe(entry.getValue(), "waits"));
+            }
+        }
+        System.out.println();
+    }
+
+    /** Return the series of FAMILY in TOTALS.
+     *  @param totals : The values of each series, by its key.
+     *  @param family : A family.
+     *  @return : The values of each of its series, by label value. */
+    private static TreeMap<String, long[]> series(
+            TreeMap<String, long[]> totals, Family family) {
+        TreeMap<String, long[]> series = new TreeMap<String, long[]>();
+        String prefix = family.name + "\t";
+        for (Map.Entry<String, long[]> entry
+                : totals.subMap(prefix, family.name + "\n").entrySet()) {
+            series.put(entry.getKey().substring(prefix.length()),
+                    entry.getValue());
+        }
+        return series;
+    }
+
+    /** Describe the histogram VALUES: how many it counts, their mean and
+     *  the buckets its median and 99th percentile fall in.
+     *  @param values : The buckets of a histogram, then its sum.
+     *  @param noun : What it counts, such as "runs".
+     *  @return : The description. */
+    private static String describe(long[] values, String noun) {
+        long count = 0;
+        for (int i = 0; i < BOUNDS.length + 1; i += 1) {
+            count += values[i];
+        }
+        return String.format("%d %s, mean %.1f ms, p50 %s, p99 %s",
+                count, noun,
+                values[BOUNDS.length + 1] / 1e6 / Math.max(count, 1),
+                bucket(values, count, 50), bucket(values, count, 99));
+    }
+
+    /** Return the upper bound of the bucket of VALUES the PCTth
+     *  percentile of its COUNT observations falls in.
+     *  @param values : The buckets of a histogram, then its sum.
+     *  @param count : The number of observations.
+     *  @param pct : A percentage.
+     *  @return : The bound, as "<= 25 ms". */
+    private static String bucket(long[] values, long count, int pct) {
+        long rank = Math.max(1, (count * pct + 99) / 100);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i += 1) {
+            seen += values[i];
+            if (seen >= rank) {
+                return "<= " + BOUNDS[i] / 1000000.0 + " ms";
+            }
+        }
+        return "> " + BOUNDS[BOUNDS.length - 1] / 1000000.0 + " ms";
+    }
+
+    /** Return TOTALS in the Prometheus text exposition format.
+     *  @param totals : The values of each series, by its key.
+     *  @return : The text. */
+    static String render(TreeMap<String, long[]> totals) {
+        StringBuilder text = new StringBuilder();
+        for (Family family : FAMILIES) {
+            text.append("# HELP ").append(family.name).append(' ')
+                    .append(family.help).append('\n');
+            text.append("# TYPE ").append(family.name).append(' ')
+                    .append(family.histogram ? "histogram" : "counter")
+                    .append('\n');
+            TreeMap<String, long[]> series = series(totals, family);
+            if (series.isEmpty() && family.label == null) {
+                series.put("", new long[family.histogram
+                        ? BOUNDS.length + 2 : 1]);
+            }
+            for (Map.Entry<String, long[]> entry : series.entrySet()) {
+                String label = family.label == null ? ""
+                        : family.label + "=\"" + escape(entry.getKey())
+                        + "\"";
+                long[] values = entry.getValue();
+                if (!family.histogram) {
+                    text.append(family.name)
+                            .append(label.isEmpty() ? "" : "{" + label + "}")
+                            .append(' ').append(values[0]).append('\n');
+                    continue;
+                }
+                String comma = label.isEmpty() ? "" : label + ",";
+                long count = 0;
+                for (int i = 0; i <= BOUNDS.length; i += 1) {
+                    count += values[i];
+                    String le = i == BOUNDS.length ? "+Inf"
+                            : Double.toString(BOUNDS[i] / 1e9);
+                    text.append(family.name).append("_bucket{").append(comma)
+                            .append("le=\"").append(le).append("\"} ")
+                            .append(count).append('\n');
+                }
+                String braces = label.isEmpty() ? "" : "{" + label + "}";
+                text.append(family.name).append("_sum").append(braces)
+                        .append(' ').append(values[BOUNDS.length + 1] / 1e9)
+                        .append('\n');
+                text.append(family.name).append("_count").append(braces)
+                        .append(' ').append(count).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return VALUE escaped for a Prometheus label value.
+     *  @param value : A label value.
+     *  @return : VALUE with backslashes, quotes and newlines escaped. */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+    /** Answer HTTP requests for the totals at ADDRESS until killed: a port
+     *  on the loopback interface, or unix:PATH for a Unix socket, which is
+     *  removed when the server exits. Each scrape reads the totals again.
+     *  @param address : The port or socket to listen on. */
+    private static void serve(String address) {
+        SocketAddress local;
+        ServerSocketChannel server;
+        try {
+            if (address.startsWith("unix:")) {
+                local = UnixDomainSocketAddress.of(address.substring(5));
+                server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                local = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                        Integer.parseInt(address));
+                server = ServerSocketChannel.open();
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            throw new GitletException("Cannot serve metrics at " + address
+                    + ".");
+        }
+        File socket = null;
+        if (local instanceof UnixDomainSocketAddress) {
+            socket = ((UnixDomainSocketAddress) local).getPath().toFile();
+            if (socket.exists() && !listening(local)) {
+                socket.delete();
+            }
+        }
+        try (ServerSocketChannel listening = server) {
+            listening.bind(local);
+            if (socket != null) {
+                final File bound = socket;
+                Runtime.getRuntime().addShutdownHook(new Thread() {
+                    @Override
+                    public void run() {
+                        bound.delete();
+                    }
+                });
+            }
+            System.out.println("Serving metrics at " + address + ".");
+            while (true) {
+                try (SocketChannel client = listening.accept()) {
+                    answer(client);
+                } catch (IOException excp) {
+                    continue;
+                }
+            }
+        } catch (IOException excp) {
+            throw new GitletException("Cannot serve metrics at " + address
+                    + ".");
+        }
+    }
+
+    /** Return true if a server is listening at the Unix socket ADDRESS,
+     *  rather than the socket being left behind by one that was killed.
+     *  @param address : The address of a Unix socket.
+     *  @return : A boolean. */
+    private static boolean listening(SocketAddress address) {
+        try (SocketChannel client = SocketChannel.open(address)) {
+            return client.isConnected();
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Read one HTTP request from CLIENT and answer it: the totals for a
+     *  GET of / or /metrics, and 404 Not Found for anything else.
+     *  @param client : A connection.
+     *  @throws IOException : In case of problems reading or writing. */
+    private static void answer(SocketChannel client) throws IOException {
+        InputStream in = Channels.newInputStream(client);
+        StringBuilder request = new StringBuilder();
+        for (int c = in.read(); c >= 0 && request.length() < MAX_REQUEST;
+             c = in.read()) {
+            request.append((char) c);
+            if (request.indexOf("\r\n\r\n") >= 0
+                    || request.indexOf("\n\n") >= 0) {
+                break;
+            }
+        }
+        String[] line = request.toString().split("\\s+", 3);
+        String status = "200 OK";
+        String body;
+        if (line.length >= 2 && line[0].equals("GET")
+                && (line[1].equals("/") || line[1].equals("/metrics"))) {
+            body = render(load());
+        } else {
+            status = "404 Not Found";
+            body = "Not found\n";
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        OutputStream out = Channels.newOutputStream(client);
+        out.write(("HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: close\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    /** A counter or histogram, with at most one label, and a series for
+     *  each value of the label. A counter's series is one LongAdder; a
+     *  histogram's is one for each bucket of BOUNDS, one for larger
+     *  values and one for the sum, in nanoseconds. */
+    static class Family {
+
+        /** A family named NAME described by HELP, whose series are told
+         *  apart by the label LABEL, or that has one series if LABEL is
+         *  null.
+         *  @param name : The Prometheus name.
+         *  @param help : A sentence describing it.
+         *  @param label : The name of the label, or null.
+         *  @param histogram : True for a histogram, false for a counter. */
+        Family(String name, String help, String label, boolean histogram) {
+            this.name = name;
+            this.help = help;
+            this.label = label;
+            this.histogram = histogram;
+            this.unlabeled = label == null ? series("") : null;
+            FAMILIES.add(this);
+        }
+
+        /** Add N to this counter, which has no label.
+         *  @param n : A number. */
+        void add(long n) {
+            unlabeled[0].add(n);
+        }
+
+        /** Add N to this counter's series for VALUE.
+         *  @param value : The label value.
+         *  @param n : A number. */
+        void add(String value, long n) {
+            series(value)[0].add(n);
+        }
+
+        /** Count an observation of NANOS nanoseconds in this histogram's
+         *  series for VALUE.
+         *  @param value : The label value, or "" if there is no label.
+         *  @param nanos : A duration. */
+        void observe(String value, long nanos) {
+            LongAdder[] cells = value.isEmpty() && unlabeled != null
+                    ? unlabeled : series(value);
+            int i = 0;
+            while (i < BOUNDS.length && nanos > BOUNDS[i]) {
+                i += 1;
+            }
+            cells[i].increment();
+            cells[BOUNDS.length + 1].add(nanos);
+        }
+
+        /** Return the series for VALUE, made the first time it is asked
+         *  for.
+         *  @param value : The label value.
+         *  @return : Its cells. */
+        private LongAdder[] series(String value) {
+            LongAdder[] cells = series.get(value);
+            if (cells == null) {
+                cells = new LongAdder[histogram ? BOUNDS.length + 2 : 1];
+                for (int i = 0; i < cells.length; i += 1) {
+                    cells[i] = new LongAdder();
+                }
+                LongAdder[] raced = series.putIfAbsent(value, cells);
+                if (raced != null) {
+                    cells = raced;
+                }
+            }
+            return cells;
+        }
+
+        /** The Prometheus name. */
+        private final String name;
+
+        /** A sentence describing the family. */
+        private final String help;
+
+        /** The name of the label, or null. */
+        private final String label;
+
+        /** True for a histogram. */
+        private final boolean histogram;
+
+        /** The series of each label value. */
+        private final ConcurrentHashMap<String, LongAdder[]> series =
+                new ConcurrentHashMap<String, LongAdder[]>();
+
+        /** The only series of a family without a label, or null. */
+        private final LongAdder[] unlabeled;
+    }
+
+    /** Upper bounds of the histogram buckets, in nanoseconds. */
+    static final long[] BOUNDS = {
+        1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L,
+        100000000L, 250000000L, 500000000L, 1000000000L, 2500000000L,
+        5000000000L, 10000000000L, 30000000000L, 60000000000L,
+    };
+
+    /** Every family, in the order they are printed. */
+    private static final ArrayList<Family> FAMILIES = new ArrayList<Family>();
+
+    /** Wall time of each command. */
+    static final Family COMMAND_DURATION = new Family(
+            "gitlet_command_duration_seconds",
+            "Wall time of gitlet commands.", "command", true);
+
+    /** Commands that ended with an error message. */
+    static final Family COMMAND_ERRORS = new Family(
+            "gitlet_command_errors_total",
+            "Commands that ended with an error message.", "command", false);
+
+    /** Answers found in a cache. */
+    static final Family CACHE_HITS = new Family("gitlet_cache_hits_total",
+            "Lookups answered by a cache.", "cache", false);
+
+    /** Answers not found in a cache. */
+    static final Family CACHE_MISSES = new Family(
+            "gitlet_cache_misses_total",
+            "Lookups a cache could not answer.", "cache", false);
+
+    /** Objects read. */
+    static final Family OBJECTS_READ = new Family(
+            "gitlet_objects_read_total",
+            "Objects read from loose files and packs.", null, false);
+
+    /** Objects written. */
+    static final Family OBJECTS_WRITTEN = new Family(
+            "gitlet_objects_written_total",
+            "Objects written as loose files.", null, false);
+
+    /** Bytes hashed. */
+    static final Family HASHED_BYTES = new Family(
+            "gitlet_hashed_bytes_total",
+            "Bytes hashed by the hash engine.", null, false);
+
+    /** Time spent waiting for locks. */
+    static final Family LOCK_WAIT = new Family("gitlet_lock_wait_seconds",
+            "Time spent waiting for locks.", "lock", true);
+
+    /** Time spent waiting for the watcher to catch up. */
+    static final Family WATCHER_SYNC = new Family(
+            "gitlet_watcher_sync_seconds",
+            "Time spent waiting for the watcher to catch up.", null, true);
+
+    /** Name of the totals file inside .gitlet. */
+    static final String FILE_NAME = "metrics";
+
+    /** Name of the file locked while the totals change. */
+    static final String LOCK_NAME = "metrics.lock";
+
+    /** The longest HTTP request read. */
+    private static final int MAX_REQUEST = 8192;
+}
@@ -0,0 +1,956 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/** The ObjectStore keeps the blobs and commits of one .gitlet repository.
+ *  Every object written through it starts with a short header naming the
+ *  codec its contents were encoded with, so the codec can be changed in
+ *  the config at any time without rewriting older objects. Objects written
+ *  before the header existed are read back unchanged.
+ *
+ *  Loose objects are fanned out over subdirectories named by the first two
+ *  hex digits of their ids, .gitlet/objects/ab/cdef... for blobs and
+ *  .gitlet/commits/ab/cdef... for commits, so no directory grows past a
+ *  small fraction of the repository. Repositories that kept every object
+ *  in one directory are migrated the first time they are opened, and
+ *  objects still in the old places are found there until they are moved.
+ *  @author David Oh */
+class ObjectStore {
+
+    /** The object store of the repository in REPO.
+     *  @param repo : A .gitlet directory. */
+    ObjectStore(File repo) {
+        this.repo = repo;
+        this.commits = Utils.join(repo, "commits");
+        this.objects = Utils.join(repo, OBJECTS);
+    }
+
+    /** Return the object store of the current repository.
+     *  @return : The object store shared by its worktrees. */
+    static ObjectStore local() {
+        return Context.current().store();
+    }
+
+    /** Move loose objects kept in the flat layout, where blobs sat in
+     *  .gitlet itself and commits directly in .gitlet/commits, into their
+     *  fan-out directories, and record the new layout in the config. Each
+     *  object is moved by an atomic rename, so a migration that is cut
+     *  short leaves every object readable and is finished next time. */
+    void migrate() {
+        Config config = Config.readConfig(repo);
+        if (config.getLayout() >= Config.FANOUT_LAYOUT) {
+            return;
+        }
+        for (String id : flatIds(repo)) {
+            moveObject(new File(repo, id), fanOut(objects, id));
+        }
+        for (String id : flatIds(commits)) {
+            moveObject(new File(commits, id), fanOut(commits, id));
+        }
+        config.setLayout(Config.FANOUT_LAYOUT);
+        config.saveConfig(repo);
+    }
+
+    /** Rename the object file FROM to TO, unless another process has
+     *  already done so.
+     *  @param from : The object's file in the flat layout.
+     *  @param to : Its file in the fan-out layout. */
+    private static void moveObject(File from, File to) {
+        to.getParentFile().mkdirs();
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (!to.isFile()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Get the .gitlet directory of this store.
+     *  @return : The repository directory. */
+    File getRepo() {
+        return repo;
+    }
+
+    /** Return the file the blob with the given id is stored in.
+     *  @param blobID : The Sha-1 Hash of a blob.
+     *  @return : The blob's file. */
+    File blobFile(String blobID) {
+        return find(objects, repo, blobID);
+    }
+
+    /** Return the file the commit with the given id is stored in.
+     *  @param commitID : The Sha-1 Hash of a commit.
+     *  @return : The commit's file. */
+    File commitFile(String commitID) {
+        return find(commits, commits, commitID);
+    }
+
+    /** Return the file of the object ID in the fan-out directory DIR, or
+     *  its file in the flat directory FLATDIR if it is only there.
+     *  @param dir : The top of a fan-out directory.
+     *  @param flatDir : The directory of the flat layout.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @return : The object's file. */
+    private static File find(File dir, File flatDir, String id) {
+        File file = fanOut(dir, id);
+        if (!file.isFile()) {
+            File flat = new File(flatDir, id);
+            if (flat.isFile()) {
+                return flat;
+            }
+        }
+        return file;
+    }
+
+    /** Return the file of the object ID in the fan-out directory DIR.
+     *  @param dir : The top of a fan-out directory.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @return : DIR/ab/cdef... for an id starting with ab. */
+    static File fanOut(File dir, String id) {
+        return Utils.join(dir, id.substring(0, FANOUT_DIGITS),
+                id.substring(FANOUT_DIGITS));
+    }
+
+    /** Return the id of the only commit whose id starts with PREFIX.
+     *  Only the fan-out directory named by the first two digits of PREFIX
+     *  is listed.
+     *  @param prefix : The start of a commit id.
+     *  @return : The full id, or null if there is no such commit. */
+    String findCommitID(String prefix) {
+        if (prefix.length() >= FANOUT_DIGITS) {
+            String head = prefix.substring(0, FANOUT_DIGITS);
+            List<String> names = Utils.plainFilenamesIn(
+                    new File(commits, head));
+            if (names != null) {
+                for (String name : names) {
+                    if ((head + name).startsWith(prefix)
+                            && name.length() + FANOUT_DIGITS
+                            == getHash().getLength()) {
+                        return head + name;
+                    }
+                }
+            }
+        }
+        for (String id : looseCommitIds()) {
+            if (id.startsWith(prefix)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /** Return the ids of the blobs stored loose in this store.
+     *  @return : The ids, in both layouts. */
+    List<String> looseBlobIds() {
+        return looseIds(objects, repo);
+    }
+
+    /** Return the ids of the commits stored in this store.
+     *  @return : The ids, in both layouts. */
+    List<String> looseCommitIds() {
+        return looseIds(commits, commits);
+    }
+
+    /** Return every directory loose objects may be stored in.
+     *  @return : The flat and fan-out directories. */
+    List<File> objectDirs() {
+        ArrayList<File> dirs = new ArrayList<File>();
+        dirs.add(repo);
+        dirs.add(commits);
+        dirs.addAll(subdirs(objects));
+        dirs.addAll(subdirs(commits));
+        return dirs;
+    }
+
+    /** Return the directories inside DIR.
+     *  @param dir : A directory.
+     *  @return : Its subdirectories, or an empty list. */
+    private static List<File> subdirs(File dir) {
+        ArrayList<File> result = new ArrayList<File>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    result.add(file);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the ids of the objects in the fan-out directory DIR and in
+     *  the flat directory FLATDIR.
+     *  @param dir : The top of a fan-out directory.
+     *  @param flatDir : The directory of the flat layout.
+     *  @return : The ids. */
+    private static List<String> looseIds(File dir, File flatDir) {
+        ArrayList<String> ids = new ArrayList<String>(flatIds(flatDir));
+        for (File subdir : subdirs(dir)) {
+            String head = subdir.getName();
+            for (String name : Utils.plainFilenamesIn(subdir)) {
+                String id = head + name;
+                if (OBJECT_NAME.matcher(id).matches()) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** Return the names in DIR that are object ids.
+     *  @param dir : A directory of the flat layout.
+     *  @return : The ids, or an empty list. */
+    static List<String> flatIds(File dir) {
+        List<String> names = Utils.plainFilenamesIn(dir);
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        ArrayList<String> result = new ArrayList<String>();
+        for (String name : names) {
+            if (OBJECT_NAME.matcher(name).matches()) {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    /** Return true if this store holds the blob with the given id.
+     *  @param blobID : The Sha-1 Hash of a blob.
+     *  @return : A boolean. */
+    boolean containsBlob(String blobID) {
+        return blobFile(blobID).isFile() || packFor(blobID) != null;
+    }
+
+    /** Return true if this store holds the commit with the given id.
+     *  @param commitID : The Sha-1 Hash of a commit.
+     *  @return : A boolean. */
+    boolean containsCommit(String commitID) {
+        return commitFile(commitID).isFile();
+    }
+
+    /** Write a blob to this store unless it is already there. Blobs are
+     *  named by the hash of their contents, so an existing file never
+     *  needs to be rewritten.
+     *  @param blobID : The Sha-1 Hash of the blob.
+     *  @param contents : The contents of the blob. */
+    void writeBlob(String blobID, byte[] contents) {
+        if (!containsBlob(blobID)) {
+            writeObject(blobFile(blobID), contents);
+        }
+    }
+
+    /** Store the contents of FILE as a blob and return its id. Files of
+     *  at least bigFileThreshold() bytes are read a chunk at a time and stored
+     *  as a list of chunks, each of which is a blob of its own, so that
+     *  versions of a large file share every chunk they have in common and
+     *  the file is never held in memory at once.
+     *  @param file : A file in the working directory.
+     *  @return : The Sha-1 Hash of its contents. */
+    String writeFile(File file) {
+        if (file.length() < bigFileThreshold()) {
+            byte[] contents = Utils.readContents(file);
+            String blobID = getHash().hash(contents);
+            writeBlob(blobID, contents);
+            return blobID;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            MessageDigest digest = getHash().newDigest();
+            Chunker chunker = new Chunker(in);
+            Chunks chunks = new Chunks();
+            for (byte[] chunk = chunker.next(); chunk != null;
+                 chunk = chunker.next()) {
+                digest.update(chunk);
+                Metrics.HASHED_BYTES.add(chunk.length);
+                String chunkID = getHash().hash(chunk);
+                writeBlob(chunkID, chunk);
+                chunks.add(chunkID, chunk.length);
+            }
+            Trace.read(file);
+            String blobID = HashEngine.hex(digest.digest());
+            if (!containsBlob(blobID)) {
+                writeObject(blobFile(blobID), KIND_CHUNKED,
+                        chunks.toBytes());
+            }
+            return blobID;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Read the blob with the given id. If its pack has been replaced
+     *  since the packs were listed, as gc and repack do, the packs are
+     *  listed again.
+     *  @param blobID : The Sha-1 Hash of the blob.
+     *  @return : The contents of the blob. */
+    byte[] readBlob(String blobID) {
+        File blobFile = blobFile(blobID);
+        if (!blobFile.isFile()) {
+            Pack pack = packFor(blobID);
+            if (pack == null || !pack.getFile().isFile()) {
+                reloadPacks();
+                pack = packFor(blobID);
+            }
+            if (pack == null) {
+                if (fetchMissing(blobID)) {
+                    return readBlob(blobID);
+                }
+                throw new GitletException("File does not exist.");
+            }
+            return readPackedBlob(pack, blobID);
+        }
+        try (InputStream in = openObject(blobFile)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream of the contents of the blob with the given id.
+     *  Loose blobs, including chunked ones, are read a buffer at a time.
+     *  @param blobID : The Sha-1 Hash of the blob.
+     *  @return : The stream.
+     *  @throws IOException : In case of problems reading. */
+    InputStream openBlob(String blobID) throws IOException {
+        File blobFile = blobFile(blobID);
+        if (blobFile.isFile()) {
+            return openObject(blobFile);
+        }
+        return new ByteArrayInputStream(readBlob(blobID));
+    }
+
+    /** Read at most LENGTH bytes from the start of the blob with the given
+     *  id, without reading the rest of a loose blob.
+     *  @param blobID : The Sha-1 Hash of the blob.
+     *  @param length : The most bytes to read.
+     *  @return : The first bytes of the blob. */
+    byte[] readBlobPrefix(String blobID, int length) {
+        File blobFile = blobFile(blobID);
+        if (!blobFile.isFile()) {
+            byte[] contents = readBlob(blobID);
+            return Arrays.copyOf(contents, Math.min(length, contents.length));
+        }
+        try (InputStream in = openObject(blobFile)) {
+            return in.readNBytes(length);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write the contents of the blob with the given id to DEST, decoding
+     *  it a buffer at a time so that memory use does not grow with the
+     *  size of the blob.
+     *  @param blobID : The Sha-1 Hash of the blob.
+     *  @param dest : The file to write. */
+    void copyBlob(String blobID, File dest) {
+        File blobFile = blobFile(blobID);
+        if (!blobFile.isFile() && !fetchMissing(blobID)) {
+            Utils.writeContents(dest, readBlob(blobID));
+            return;
+        }
+        Chunks chunks = readChunks(blobID);
+        if (chunks != null) {
+            copyChunks(chunks, dest);
+            return;
+        }
+        try (InputStream in = openObject(blobFile);
+             OutputStream out = Files.newOutputStream(dest.toPath())) {
+            byte[] buffer = new byte[Codec.BUFFER_SIZE];
+            for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Trace.wrote(dest);
+    }
+
+    /** Write the file made of CHUNKS to DEST. When DEST is already a
+     *  large file, it is split into chunks first and only the chunks that
+     *  differ at each offset are written, so a small change to a huge file
+     *  costs a read of the old file rather than a rewrite of all of it.
+     *  @param chunks : The chunks of the blob.
+     *  @param dest : The file to write. */
+    private void copyChunks(Chunks chunks, File dest) {
+        HashMap<Long, String> existing = new HashMap<Long, String>();
+        if (dest.isFile() && dest.length() >= bigFileThreshold()) {
+            try (InputStream in = new FileInputStream(dest)) {
+                Chunker chunker = new Chunker(in);
+                long offset = 0;
+                for (byte[] chunk = chunker.next(); chunk != null;
+                     chunk = chunker.next()) {
+                    existing.put(offset, getHash().hash(chunk));
+                    offset += chunk.length;
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        try (RandomAccessFile out = new RandomAccessFile(dest, "rw")) {
+            long offset = 0;
+            for (int i = 0; i < chunks.ids.size(); i += 1) {
+                String chunkID = chunks.ids.get(i);
+                if (!chunkID.equals(existing.get(offset))) {
+                    out.seek(offset);
+                    out.write(readBlob(chunkID));
+                }
+                offset += chunks.lengths.get(i);
+            }
+            out.setLength(offset);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the chunks of the blob with the given id.
+     *  @param blobID : The Sha-1 Hash of a blob.
+     *  @return : Its chunks, or null if it is not stored in chunks. */
+    Chunks readChunks(String blobID) {
+        File blobFile = blobFile(blobID);
+        if (!blobFile.isFile()) {
+            return null;
+        }
+        try (BufferedInputStream in = new BufferedInputStream(
+                new FileInputStream(blobFile))) {
+            byte[] header = readHeader(in);
+            if (header == null || header[MAGIC.length] != KIND_CHUNKED) {
+                return null;
+            }
+            return Chunks.read(Codec.forId(header[MAGIC.length + 1])
+                    .decode(in));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if the blob with the given id is stored in chunks.
+     *  @param blobID : The Sha-1 Hash of a blob.
+     *  @return : A boolean. */
+    boolean isChunked(String blobID) {
+        return readChunks(blobID) != null;
+    }
+
+    /** Read the blob with the given id out of PACK, applying its chain of
+     *  deltas. Bases are kept in a bounded cache, since neighbouring
+     *  versions of a file usually share most of their chain.
+     *  @param pack : A pack holding the blob.
+     *  @param blobID : The Sha-1 Hash of the blob.
+     *  @return : The contents of the blob. */
+    byte[] readPackedBlob(Pack pack, String blobID) {
+        Pack.Entry entry = pack.readEntry(blobID);
+        if (entry.getBaseID() == null) {
+            return entry.decode();
+        }
+        String baseID = entry.getBaseID();
+        byte[] base = baseCache.get(baseID);
+        if (base != null) {
+            Metrics.CACHE_HITS.add("delta-base", 1);
+        } else {
+            Metrics.CACHE_MISSES.add("delta-base", 1);
+            base = readPackedBlob(pack, baseID);
+            baseCache.put(baseID, base);
+            baseCacheBytes += base.length;
+            Iterator<byte[]> eldest = baseCache.values().iterator();
+            while (baseCacheBytes > BASE_CACHE_BYTES && eldest.hasNext()) {
+                baseCacheBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return Delta.apply(base, entry.decode());
+    }
+
+    /** Copy the blob with the given id, missing from this store, from
+     *  the repository named by the config key promisor, which a partial
+     *  clone leaves set to the repository it was cloned from. The blob is
+     *  written loose, as the promisor stores it, along with its chunks.
+     *  @param blobID : The Sha-1 Hash of a blob.
+     *  @return : True if the blob was copied, false if there is no
+     *  promisor, the blob is packed here or the promisor lacks it. */
+    private boolean fetchMissing(String blobID) {
+        ObjectStore source = getPromisor();
+        if (source == null || packFor(blobID) != null
+                || !source.containsBlob(blobID)) {
+            return false;
+        }
+        File file = source.blobFile(blobID);
+        if (!file.isFile()) {
+            writeObject(blobFile(blobID), source.readBlob(blobID));
+            return true;
+        }
+        Pack.Entry entry = source.looseEntry(blobID, file, Pack.FULL);
+        if (entry.getKind() == Pack.CHUNKS) {
+            for (String chunkID : source.readChunks(blobID).getIds()) {
+                if (!containsBlob(chunkID)) {
+                    fetchMissing(chunkID);
+                }
+            }
+        }
+        writeEntry(blobFile(blobID), entry);
+        return true;
+    }
+
+    /** Return the store blobs missing here are fetched from.
+     *  @return : The store of the promisor repository, or null. */
+    ObjectStore getPromisor() {
+        if (!promisorRead) {
+            String path = Config.readConfig(repo).get(Config.PROMISOR);
+            promisor = path.isEmpty() ? null : new ObjectStore(
+                    new File(path));
+            promisorRead = true;
+        }
+        return promisor;
+    }
+
+    /** Return the parents of COMMIT that are part of this store's history:
+     *  none for the initial commit and for the commits at the edge of a
+     *  shallow clone, whose parents were never copied, and otherwise the
+     *  first parent followed by the second parent of a merge.
+     *  @param commit : A commit of this store.
+     *  @return : The ids of its parents. */
+    List<String> parents(Commit commit) {
+        ArrayList<String> parents = new ArrayList<String>(2);
+        if (commit.getPreviousCommit() == null
+                || isShallow(commit.getSha1())) {
+            return parents;
+        }
+        parents.add(commit.getPreviousCommit());
+        if (commit instanceof MergeCommit) {
+            parents.add(((MergeCommit) commit).getPreviousCommit2());
+        }
+        return parents;
+    }
+
+    /** Return true if the commit ID is at the edge of a shallow clone.
+     *  @param id : The id of a commit.
+     *  @return : A boolean. */
+    boolean isShallow(String id) {
+        if (shallow == null) {
+            shallow = new HashSet<String>();
+            File file = Utils.join(repo, SHALLOW);
+            if (file.isFile()) {
+                String text = new String(Utils.readContents(file),
+                        StandardCharsets.UTF_8);
+                for (String line : text.split("\n")) {
+                    if (!line.isEmpty()) {
+                        shallow.add(line);
+                    }
+                }
+            }
+        }
+        return shallow.contains(id);
+    }
+
+    /** Record that the commits IDS are at the edge of a shallow clone:
+     *  their parents are not in this store and history ends at them.
+     *  @param ids : The ids of commits. */
+    void addShallow(Collection<String> ids) {
+        isShallow("");
+        if (!shallow.addAll(ids)) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (String id : new TreeSet<String>(shallow)) {
+            text.append(id).append('\n');
+        }
+        Utils.writeContents(Utils.join(repo, SHALLOW), text.toString());
+    }
+
+    /** Return the pack holding the object with the given id.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @return : The pack, or null if no pack holds it. */
+    Pack packFor(String id) {
+        for (Pack pack : packs()) {
+            if (pack.contains(id)) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    /** Return the packs of this store, listing them on first use.
+     *  @return : The packs. */
+    List<Pack> packs() {
+        if (packs == null) {
+            packs = Pack.packsIn(repo);
+        }
+        return packs;
+    }
+
+    /** Forget the list of packs, so that it is listed again on next use. */
+    void reloadPacks() {
+        packs = null;
+    }
+
+    /** Write COMMIT to this store under its Sha-1 Hash.
+     *  @param commit : The commit to save. */
+    void writeCommit(Commit commit) {
+        writeObject(commitFile(commit.getSha1()), Utils.serialize(commit));
+    }
+
+    /** Read the commit with the given id.
+     *  @param commitID : The Sha-1 Hash of the commit.
+     *  @return : The commit. */
+    Commit readCommit(String commitID) {
+        File commitFile = commitFile(commitID);
+        try (ObjectInputStream in = new ObjectInputStream(
+                openObject(commitFile))) {
+            Trace.deserialized();
+            return (Commit) in.readObject();
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return a stream of the decoded contents of the object in FILE. The
+     *  file is closed again if its header or codec cannot be read, so a
+     *  corrupt object does not hold a descriptor open. The chunks of a
+     *  chunked blob are opened one at a time, from wherever they are
+     *  stored: loose, in a pack or in the promisor.
+     *  @param file : The file of a blob or commit.
+     *  @return : The decoded stream.
+     *  @throws IOException : In case of problems reading. */
+    InputStream openObject(File file) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(
+                new FileInputStream(file));
+        Trace.read(file);
+        Metrics.OBJECTS_READ.add(1);
+        InputStream decoded = null;
+        final Chunks chunks;
+        try {
+            byte[] header = readHeader(in);
+            if (header == null) {
+                return in;
+            }
+            decoded = Codec.forId(header[MAGIC.length + 1]).decode(in);
+            if (header[MAGIC.length] != KIND_CHUNKED) {
+                return decoded;
+            }
+            chunks = Chunks.read(decoded);
+        } catch (IOException | RuntimeException excp) {
+            if (decoded != null) {
+                decoded.close();
+            }
+            in.close();
+            throw excp;
+        }
+        decoded.close();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return next < chunks.ids.size();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                next += 1;
+                try {
+                    return openBlob(chunks.ids.get(next - 1));
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+
+            /** The index of the next chunk to open. */
+            private int next;
+        });
+    }
+
+    /** Read the object header at the start of IN, leaving IN just past it.
+     *  @param in : A stream at the start of an object file.
+     *  @return : The header, or null if the object has none, in which case
+     *  IN is left at the start.
+     *  @throws IOException : In case of problems reading. */
+    private static byte[] readHeader(BufferedInputStream in)
+        throws IOException {
+        in.mark(HEADER_LENGTH);
+        byte[] header = new byte[HEADER_LENGTH];
+        int n = in.readNBytes(header, 0, HEADER_LENGTH);
+        if (n < HEADER_LENGTH || !Arrays.equals(
+                Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            in.reset();
+            return null;
+        }
+        return header;
+    }
+
+    /** Write CONTENTS to FILE behind an object header, encoding it with
+     *  the repository's codec unless the codec would not make it smaller.
+     *  The object is written to a temporary file and then moved into
+     *  place, so readers never see a partly written object.
+     *  @param file : The file of a blob or commit.
+     *  @param contents : The contents of the object. */
+    void writeObject(File file, byte[] contents) {
+        writeObject(file, KIND_PLAIN, contents);
+    }
+
+    /** Write CONTENTS to FILE behind an object header of the given KIND.
+     *  @param file : The file of a blob or commit.
+     *  @param kind : KIND_PLAIN or KIND_CHUNKED.
+     *  @param contents : The contents of the object. */
+    void writeObject(File file, byte kind, byte[] contents) {
+        Codec codec = getCodec();
+        if (!codec.worthwhile(Codec.sample(contents))) {
+            codec = Codec.NONE;
+        }
+        File dir = file.getParentFile();
+        dir.mkdirs();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp-", null, dir);
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(tmp.toPath()), Codec.BUFFER_SIZE)) {
+                out.write(MAGIC);
+                out.write(kind);
+                out.write(codec.getId());
+                try (OutputStream encoded = codec.encode(out)) {
+                    encoded.write(contents);
+                }
+            }
+            Trace.wrote(tmp);
+            Metrics.OBJECTS_WRITTEN.add(1);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the loose object with the given ID in FILE as an entry of
+     *  the bytes it is stored as, so that it can be copied to another
+     *  store without being decoded and encoded again.
+     *  @param id : The Sha-1 Hash of the object.
+     *  @param file : Its file in this store.
+     *  @param kind : The kind of entry of a plain object, FULL for a blob
+     *  or COMMIT for a commit; chunk lists are always CHUNKS.
+     *  @return : The entry. */
+    Pack.Entry looseEntry(String id, File file, byte kind) {
+        byte[] bytes = Utils.readContents(file);
+        Metrics.OBJECTS_READ.add(1);
+        if (bytes.length < HEADER_LENGTH || !Arrays.equals(
+                Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+            return new Pack.Entry(id, kind, null, Codec.NONE, bytes);
+        }
+        if (bytes[MAGIC.length] == KIND_CHUNKED) {
+            kind = Pack.CHUNKS;
+        }
+        return new Pack.Entry(id, kind, null,
+                Codec.forId(bytes[MAGIC.length + 1]),
+                Arrays.copyOfRange(bytes, HEADER_LENGTH, bytes.length));
+    }
+
+    /** Write the object of ENTRY, a FULL, COMMIT or CHUNKS entry, to FILE
+     *  as it was encoded, the reverse of looseEntry.
+     *  @param file : The file of the object in this store.
+     *  @param entry : The entry. */
+    void writeEntry(File file, Pack.Entry entry) {
+        File dir = file.getParentFile();
+        dir.mkdirs();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp-", null, dir);
+            try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+                out.write(MAGIC);
+                out.write(entry.getKind() == Pack.CHUNKS ? KIND_CHUNKED
+                        : KIND_PLAIN);
+                out.write(entry.getCodec().getId());
+                out.write(entry.getPayload());
+            }
+            Trace.wrote(tmp);
+            Metrics.OBJECTS_WRITTEN.add(1);
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the codec new objects are written with.
+     *  @return : The codec named in the repository's config. */
+    Codec getCodec() {
+        if (codec == null) {
+            codec = Config.readConfig(repo).getCodec();
+        }
+        return codec;
+    }
+
+    /** Return the length from which files are stored in chunks.
+     *  @return : The threshold named in the repository's config. */
+    long bigFileThreshold() {
+        if (bigFile == 0) {
+            bigFile = Config.readConfig(repo).getBigFileThreshold();
+        }
+        return bigFile;
+    }
+
+    /** Return the hash engine objects are named by.
+     *  @return : The engine named in the repository's config. */
+    HashEngine getHash() {
+        if (hash == null) {
+            hash = Config.readConfig(repo).getHash();
+        }
+        return hash;
+    }
+
+    /** The bytes every object written by this class starts with. */
+    static final byte[] MAGIC = {(byte) 0xc7, 'g', 'l', 'o'};
+
+    /** Kind byte of an object whose encoded contents follow directly. */
+    static final byte KIND_PLAIN = 0;
+
+    /** Kind byte of a blob whose encoded contents are a list of chunks,
+     *  each stored as a blob of its own. */
+    static final byte KIND_CHUNKED = 1;
+
+    /** Files at least this long are stored in chunks, unless the config
+     *  key bigfile says otherwise. */
+    static final long CHUNK_THRESHOLD = 8 << 20;
+
+    /** Length of an object header: MAGIC, a kind byte and a codec id. */
+    static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    /** Directory blobs are fanned out in, inside .gitlet. */
+    static final String OBJECTS = "objects";
+
+    /** Name of the file listing the commits at the edge of a shallow
+     *  clone, inside .gitlet. */
+    static final String SHALLOW = "shallow";
+
+    /** Number of hex digits naming each fan-out directory. */
+    static final int FANOUT_DIGITS = 2;
+
+    /** Names of object files in the flat layout. */
+    private static final Pattern OBJECT_NAME = Pattern.compile(
+            "[0-9a-f]{" + HashEngine.SHA1.getLength() + "}|[0-9a-f]{"
+            + HashEngine.SHA256.getLength() + "}");
+
+    /** Most bytes of delta bases kept in the base cache. */
+    static final long BASE_CACHE_BYTES = 64L << 20;
+
+    /** The ids and lengths of the chunks of a blob, in order. */
+    static class Chunks {
+        /** Append a chunk.
+         *  @param id : The Sha-1 Hash of the chunk.
+         *  @param length : Its length. */
+        void add(String id, int length) {
+            ids.add(id);
+            lengths.add(length);
+        }
+
+        /** Get the ids of the chunks.
+         *  @return : The ids, in order. */
+        List<String> getIds() {
+            return ids;
+        }
+
+        /** Return the chunk list in the form it is stored in.
+         *  @return : The stored bytes.
+         *  @throws IOException : In case of problems writing. */
+        byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(ids.size());
+            for (int i = 0; i < ids.size(); i += 1) {
+                out.writeUTF(ids.get(i));
+                out.writeInt(lengths.get(i));
+            }
+            out.close();
+            return bytes.toByteArray();
+        }
+
+        /** Read a chunk list written by toBytes.
+         *  @param in : The decoded stream.
+         *  @return : The chunk list.
+         *  @throws IOException : In case of problems reading. */
+        static Chunks read(InputStream in) throws IOException {
+            DataInputStream data = new DataInputStream(in);
+            Chunks chunks = new Chunks();
+            int count = data.readInt();
+            for (int i = 0; i < count; i += 1) {
+                chunks.add(data.readUTF(), data.readInt());
+            }
+            return chunks;
+        }
+
+        /** The ids of the chunks. */
+        private final ArrayList<String> ids = new ArrayList<String>();
+
+        /** The lengths of the chunks. */
+        private final ArrayList<Integer> lengths = new ArrayList<Integer>();
+    }
+
+    /** The .gitlet directory of this store. */
+    private final File repo;
+
+    /** The directory commits are stored in. */
+    private final File commits;
+
+    /** The directory blobs are stored in. */
+    private final File objects;
+
+    /** The codec new objects are written with, read lazily. */
+    private Codec codec;
+
+    /** The length from which files are chunked, read lazily. */
+    private long bigFile;
+
+    /** The hash engine objects are named by, read lazily. */
+    private HashEngine hash;
+
+    /** The store blobs missing here are fetched from, read lazily. */
+    private ObjectStore promisor;
+
+    /** Whether the promisor has been read from the config. */
+    private boolean promisorRead;
+
+    /** The commits at the edge of a shallow clone, read lazily. */
+    private HashSet<String> shallow;
+
+    /** The packs of this store, listed lazily. */
+    private List<Pack> packs;
+
+    /** Recently used delta bases, in least recently used order. */
+    private final LinkedHashMap<String, byte[]> baseCache =
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    /** Total size of the blobs in the base cache. */
+    private long baseCacheBytes;
+}
@@ -0,0 +1,666 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** A pack holds many blobs in a single file, with each blob stored either
+ *  in full or as a delta against another blob in the same pack. Successive
+ *  versions of a file are usually nearly identical, so chains of deltas
+ *  take far less room than the versions themselves. Each pack file
+ *  .gitlet/packs/pack-ID.pack has an index pack-ID.idx mapping object ids
+ *  to their offsets; the index is written last, so a pack is only seen by
+ *  readers once it is complete.
+ *  @author David Oh */
+class Pack {
+
+    /** The pack stored in PACKFILE, whose index is read lazily.
+     *  @param packFile : A .pack file. */
+    Pack(File packFile) {
+        this.packFile = packFile;
+    }
+
+    /** Return the packs in the repository in REPO, oldest name first.
+     *  @param repo : A .gitlet directory.
+     *  @return : The list of packs with a complete index. */
+    static List<Pack> packsIn(File repo) {
+        ArrayList<Pack> packs = new ArrayList<Pack>();
+        List<String> files = Utils.plainFilenamesIn(Utils.join(repo, DIR));
+        if (files != null) {
+            for (String name : files) {
+                if (name.startsWith("pack-") && name.endsWith(".idx")) {
+                    String base = name.substring(0, name.length() - 4);
+                    packs.add(new Pack(Utils.join(repo, DIR,
+                            base + ".pack")));
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** Return true if this pack holds the object with the given id.
+     *  @param id : The Sha-1 Hash of an object.
+     *  @return : A boolean. */
+    boolean contains(String id) {
+        return index().offsets.containsKey(id);
+    }
+
+    /** Get the ids of all objects in this pack.
+     *  @return : The set of ids. */
+    Set<String> ids() {
+        return index().offsets.keySet();
+    }
+
+    /** Get the offset of every object in this pack.
+     *  @return : The offsets, <id, offset>. */
+    Map<String, Long> offsets() {
+        return index().offsets;
+    }
+
+    /** Get the file this pack is stored in.
+     *  @return : The .pack file. */
+    File getFile() {
+        return packFile;
+    }
+
+    /** Read the entry of the object with the given id.
+     *  @param id : The Sha-1 Hash of an object in this pack.
+     *  @return : The entry. */
+    Entry readEntry(String id) {
+        Long offset = index().offsets.get(id);
+        if (offset == null) {
+            throw new IllegalArgumentException("object not in pack");
+        }
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(offset);
+            return Entry.read(in);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return the index of this pack, reading it if needed.
+     *  @return : The index. */
+    private Index index() {
+        if (index == null) {
+            index = Utils.readObject(indexFile(packFile), Index.class);
+        }
+        return index;
+    }
+
+    /** Return the index file that goes with PACKFILE.
+     *  @param packFile : A .pack file.
+     *  @return : Its .idx file. */
+    static File indexFile(File packFile) {
+        String name = packFile.getName();
+        return new File(packFile.getParentFile(),
+                name.substring(0, name.length() - ".pack".length()) + ".idx");
+    }
+
+    /** Build the index of a pack by reading its entries in order. Used
+     *  for packs that arrive without one.
+     *  @param packFile : A .pack file.
+     *  @return : The index. */
+    static Index scan(File packFile) {
+        Index index = new Index();
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            readHeader(in);
+            while (in.getFilePointer() < in.length()) {
+                long offset = in.getFilePointer();
+                Entry entry = Entry.read(in);
+                index.offsets.put(entry.id, offset);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return index;
+    }
+
+    /** Check that IN starts with a pack header.
+     *  @param in : A pack file or stream positioned at its start.
+     *  @throws IOException : In case of problems reading. */
+    static void readHeader(DataInput in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)
+                || in.readInt() != VERSION) {
+            throw new IllegalArgumentException("not a gitlet pack");
+        }
+    }
+
+    /** Write the pack header to OUT.
+     *  @param out : A new pack file or stream.
+     *  @throws IOException : In case of problems writing. */
+    static void writeHeader(DataOutput out) throws IOException {
+        out.write(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /** Pack the blobs of every commit into a single new pack, storing each
+     *  version of a file as a delta against the next newer version of the
+     *  same file when that saves space. Chains are at most DEPTH deltas
+     *  long, so reading any blob applies at most that many deltas. Every
+     *  object is read back and checked before loose blobs and older packs
+     *  are deleted. Used for the repack [--depth N] command.
+     *  @param args : The arguments of the repack command. */
+    static void repack(String[] args) {
+        int depth = DEFAULT_DEPTH;
+        if (args.length == 3) {
+            try {
+                depth = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
+        ObjectStore store = ObjectStore.local();
+        TreeMap<String, List<String>> versions = versionsByPath(store);
+        List<Pack> oldPacks = Pack.packsIn(store.getRepo());
+        Writer writer = new Writer(Utils.join(store.getRepo(), DIR));
+        HashMap<String, Integer> depths = new HashMap<String, Integer>();
+        long rawBytes = 0;
+        int deltas = 0;
+        try {
+            for (List<String> ids : versions.values()) {
+                String prevID = null;
+                byte[] prev = null;
+                for (String id : ids) {
+                    byte[] contents = null;
+                    if (!depths.containsKey(id)) {
+                        contents = store.readBlob(id);
+                        rawBytes += contents.length;
+                        byte[] delta = null;
+                        if (prev != null && depths.get(prevID) < depth) {
+                            delta = Delta.create(prev, contents);
+                            if (delta.length * 2 > contents.length) {
+                                delta = null;
+                            }
+                        }
+                        if (delta == null) {
+                            writer.writeFull(id, contents, store.getCodec());
+                            depths.put(id, 0);
+                        } else {
+                            writer.writeDelta(id, prevID, delta,
+                                    store.getCodec());
+                            depths.put(id, depths.get(prevID) + 1);
+                            deltas += 1;
+                        }
+                    }
+                    prevID = id;
+                    prev = contents != null ? contents : store.readBlob(id);
+                }
+            }
+        } catch (RuntimeException excp) {
+            writer.abort();
+            throw excp;
+        }
+        if (depths.isEmpty()) {
+            writer.abort();
+            System.out.println("Nothing to pack.");
+            return;
+        }
+        File packFile = writer.finish();
+        Pack pack = new Pack(packFile);
+        long slowest = verify(store, pack);
+        if (slowest < 0) {
+            throw new GitletException("Pack verification failed; "
+                    + "nothing was deleted.");
+        }
+        for (Pack old : oldPacks) {
+            if (!old.getFile().equals(packFile)) {
+                indexFile(old.getFile()).delete();
+                old.getFile().delete();
+            }
+        }
+        for (String id : depths.keySet()) {
+            store.blobFile(id).delete();
+        }
+        store.reloadPacks();
+        System.out.println("Packed " + depths.size() + " blobs ("
+                + deltas + " as deltas, depth at most " + depth + "): "
+                + rawBytes + " bytes into " + packFile.length() + " bytes.");
+        System.out.printf("Slowest blob read: %.2f ms.%n", slowest / 1e6);
+    }
+
+    /** Read back every object of PACK through a fresh store and check that
+     *  its contents still hash to its id. A pack that fails is deleted.
+     *  @param store : The store the pack was written to.
+     *  @param pack : The new pack.
+     *  @return : The longest time taken to read one object, in
+     *  nanoseconds, or -1 if an object did not match its id. */
+    static long verify(ObjectStore store, Pack pack) {
+        ObjectStore fresh = new ObjectStore(store.getRepo());
+        long slowest = 0;
+        for (String id : pack.ids()) {
+            long start = System.nanoTime();
+            byte[] contents = fresh.readPackedBlob(pack, id);
+            slowest = Math.max(slowest, System.nanoTime() - start);
+            if (!fresh.getHash().hash(contents).equals(id)) {
+                indexFile(pack.getFile()).delete();
+                pack.getFile().delete();
+                return -1;
+            }
+        }
+        return slowest;
+    }
+
+    /** Return the distinct blobs of each file name across all commits,
+     *  newest first. Commits reachable from branches are visited from
+     *  their tips backwards, followed by any other commits. Blobs stored
+     *  in chunks are left out, since their chunks already share storage.
+     *  @param store : The object store.
+     *  @return : The blob ids of each file name, <name, ids>. */
+    private static TreeMap<String, List<String>> versionsByPath(
+            ObjectStore store) {
+        ArrayList<String> order = new ArrayList<String>();
+        HashSet<String> seen = new HashSet<String>();
+        ArrayDeque<String> queue = new ArrayDeque<String>();
+        queue.addAll(Refs.local().branches().values());
+        while (!queue.isEmpty()) {
+            String id = queue.poll();
+            if (!seen.add(id)) {
+                continue;
+            }
+            order.add(id);
+            queue.addAll(store.parents(store.readCommit(id)));
+        }
+        CommitTree tree = Utils.readObject(Utils.join(store.getRepo(),
+                "commitTree"), CommitTree.class);
+        for (String id : new TreeSet<String>(
+                tree.getAllCommits())) {
+            if (seen.add(id)) {
+                order.add(id);
+            }
+        }
+        TreeMap<String, List<String>> versions =
+                new TreeMap<String, List<String>>();
+        HashMap<String, HashSet<String>> listed =
+                new HashMap<String, HashSet<String>>();
+        for (String id : order) {
+            for (Map.Entry<String, String> file
+                    : store.readCommit(id).getSnapshot().entrySet()) {
+                if (!versions.containsKey(file.getKey())) {
+                    versions.put(file.getKey(), new ArrayList<String>());
+                    listed.put(file.getKey(), new HashSet<String>());
+                }
+                if (listed.get(file.getKey()).add(file.getValue())
+                        && store.containsBlob(file.getValue())
+                        && !store.isChunked(file.getValue())) {
+                    versions.get(file.getKey()).add(file.getValue());
+                }
+            }
+        }
+        return versions;
+    }
+
+    /** One object in a pack. */
+    static class Entry {
+        /** An entry for ID of the given KIND, with BASEID if it is a delta,
+         *  whose PAYLOAD is encoded with CODEC.
+         *  @param id : The Sha-1 Hash of the object.
+         *  @param kind : FULL, DELTA, COMMIT or CHUNKS.
+         *  @param baseID : The object the delta applies to, or null.
+         *  @param codec : The codec of the payload.
+         *  @param payload : The encoded contents or delta. */
+        Entry(String id, byte kind, String baseID, Codec codec,
+              byte[] payload) {
+            this.id = id;
+            this.kind = kind;
+            this.baseID = baseID;
+            this.codec = codec;
+            this.payload = payload;
+        }
+
+        /** Return an entry for ID holding DATA encoded with CODEC, or
+         *  stored as it is if the codec would not make it smaller.
+         *  @param id : The Sha-1 Hash of the object.
+         *  @param kind : The kind of entry.
+         *  @param baseID : The base of a delta, or null.
+         *  @param data : The contents or delta.
+         *  @param codec : The codec to encode DATA with if worthwhile.
+         *  @return : The entry. */
+        static Entry encode(String id, byte kind, String baseID,
+                            byte[] data, Codec codec) {
+            if (!codec.worthwhile(Codec.sample(data))) {
+                codec = Codec.NONE;
+            }
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream enc = codec.encode(encoded)) {
+                enc.write(data);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return new Entry(id, kind, baseID, codec, encoded.toByteArray());
+        }
+
+        /** Read an entry from IN at its current position. A stream of
+         *  entries ends with an empty id, END.
+         *  @param in : A pack file or stream.
+         *  @return : The entry, or null at the end of a stream.
+         *  @throws IOException : In case of problems reading. */
+        static Entry read(DataInput in) throws IOException {
+            String id = in.readUTF();
+            if (id.equals(END)) {
+                return null;
+            }
+            byte kind = in.readByte();
+            String baseID = kind == DELTA ? in.readUTF() : null;
+            Codec codec = Codec.forId(in.readByte());
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            Trace.read(payload.length);
+            Metrics.OBJECTS_READ.add(1);
+            return new Entry(id, kind, baseID, codec, payload);
+        }
+
+        /** Write this entry to OUT in the form read reads.
+         *  @param out : A pack file or stream.
+         *  @throws IOException : In case of problems writing. */
+        void write(DataOutput out) throws IOException {
+            out.writeUTF(id);
+            out.writeByte(kind);
+            if (kind == DELTA) {
+                out.writeUTF(baseID);
+            }
+            out.writeByte(codec.getId());
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+
+        /** Return the decoded payload of this entry.
+         *  @return : The contents of a full entry or the delta of a delta
+         *  entry. */
+        byte[] decode() {
+            try (InputStream in = codec.decode(
+                    new ByteArrayInputStream(payload))) {
+                return in.readAllBytes();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Get the id of the object.
+         *  @return : The Sha-1 Hash of the object. */
+        String getID() {
+            return id;
+        }
+
+        /** Get the id of the delta's base.
+         *  @return : The Sha-1 Hash of the base, or null if this entry is
+         *  stored in full. */
+        String getBaseID() {
+            return baseID;
+        }
+
+        /** Return the number of bytes write writes.
+         *  @return : The length of this entry in a pack. */
+        long length() {
+            long length = 2 + id.length() + 1 + 1 + 4 + payload.length;
+            if (kind == DELTA) {
+                length += 2 + baseID.length();
+            }
+            return length;
+        }
+
+        /** Get the kind of this entry.
+         *  @return : FULL, DELTA, COMMIT or CHUNKS. */
+        byte getKind() {
+            return kind;
+        }
+
+        /** Get the codec of the payload.
+         *  @return : The codec. */
+        Codec getCodec() {
+            return codec;
+        }
+
+        /** Get the payload, still encoded.
+         *  @return : The encoded contents or delta. */
+        byte[] getPayload() {
+            return payload;
+        }
+
+        /** The Sha-1 Hash of the object. */
+        private final String id;
+        /** FULL, DELTA, COMMIT or CHUNKS. */
+        private final byte kind;
+        /** The object a delta applies to. */
+        private final String baseID;
+        /** The codec of the payload. */
+        private final Codec codec;
+        /** The encoded contents or delta. */
+        private final byte[] payload;
+    }
+
+    /** Writes the entries of a new pack in a single pass. */
+    static class Writer {
+        /** A writer for a new pack in the directory DIR.
+         *  @param dir : The packs directory. */
+        Writer(File dir) {
+            this.dir = dir;
+            dir.mkdirs();
+            try {
+                tmp = File.createTempFile("tmp-pack-", null, dir);
+                out = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(tmp.toPath()),
+                        Codec.BUFFER_SIZE));
+                writeHeader(out);
+                position = HEADER_LENGTH;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Write the object ID with the given CONTENTS in full.
+         *  @param id : The Sha-1 Hash of the object.
+         *  @param contents : Its contents.
+         *  @param codec : The codec to encode it with if worthwhile. */
+        void writeFull(String id, byte[] contents, Codec codec) {
+            write(id, FULL, null, contents, codec);
+        }
+
+        /** Write the object ID as DELTA against the object BASEID, which
+         *  must already be in this pack.
+         *  @param id : The Sha-1 Hash of the object.
+         *  @param baseID : The Sha-1 Hash of the base object.
+         *  @param delta : The delta from the base to the object.
+         *  @param codec : The codec to encode the delta with. */
+        void writeDelta(String id, String baseID, byte[] delta,
+                        Codec codec) {
+            if (!index.offsets.containsKey(baseID)) {
+                throw new IllegalArgumentException("delta base not in pack");
+            }
+            write(id, DELTA, baseID, delta, codec);
+        }
+
+        /** Copy ENTRY, read from another pack or a stream, into this one
+         *  unchanged. The base of a delta entry must already be in this
+         *  pack, and only blobs are kept in packs.
+         *  @param entry : A FULL or DELTA entry. */
+        void writeEntry(Entry entry) {
+            if (entry.kind != FULL && entry.kind != DELTA) {
+                throw new IllegalArgumentException("not a blob entry");
+            }
+            if (entry.baseID != null
+                    && !index.offsets.containsKey(entry.baseID)) {
+                throw new IllegalArgumentException("delta base not in pack");
+            }
+            writeRaw(entry);
+        }
+
+        /** Return true if this pack already holds the object ID.
+         *  @param id : The Sha-1 Hash of an object.
+         *  @return : A boolean. */
+        boolean contains(String id) {
+            return index.offsets.containsKey(id);
+        }
+
+        /** Return the number of objects written so far.
+         *  @return : The count. */
+        int size() {
+            return names.size();
+        }
+
+        /** Encode and write one entry.
+         *  @param id : The Sha-1 Hash of the object.
+         *  @param kind : FULL or DELTA.
+         *  @param baseID : The base of a delta, or null.
+         *  @param data : The contents or delta.
+         *  @param codec : The codec to encode DATA with if worthwhile. */
+        private void write(String id, byte kind, String baseID, byte[] data,
+                           Codec codec) {
+            writeRaw(Entry.encode(id, kind, baseID, data, codec));
+        }
+
+        /** Write ENTRY at the end of the pack.
+         *  @param entry : The entry. */
+        private void writeRaw(Entry entry) {
+            if (index.offsets.containsKey(entry.id)) {
+                return;
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                        entry.payload.length + 2 * entry.id.length() + 16);
+                DataOutputStream data = new DataOutputStream(bytes);
+                entry.write(data);
+                data.close();
+                out.write(bytes.toByteArray());
+                index.offsets.put(entry.id, position);
+                position += bytes.size();
+                names.add(entry.id);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Finish the pack: close it, name it after its contents and write
+         *  its index, which makes it visible to readers.
+         *  @return : The new .pack file. */
+        File finish() {
+            try {
+                out.close();
+                Collections.sort(names);
+                String name = "pack-" + Utils.sha1(new ArrayList<Object>(
+                        names));
+                File packFile = new File(dir, name + ".pack");
+                Files.move(tmp.toPath(), packFile.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                File idxTmp = File.createTempFile("tmp-idx-", null, dir);
+                Utils.writeObject(idxTmp, index);
+                Files.move(idxTmp.toPath(), indexFile(packFile).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                return packFile;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Give up on this pack and delete what was written. */
+        void abort() {
+            try {
+                out.close();
+            } catch (IOException excp) {
+                /* The file is deleted anyway. */
+            }
+            tmp.delete();
+        }
+
+        /** The packs directory. */
+        private final File dir;
+        /** The file being written. */
+        private File tmp;
+        /** The stream the entries are written to. */
+        private DataOutputStream out;
+        /** Offset in the file at which the next entry is written. */
+        private long position;
+        /** The index being built. */
+        private final Index index = new Index();
+        /** The ids written so far. */
+        private final ArrayList<String> names = new ArrayList<String>();
+    }
+
+    /** The offsets of the objects in a pack. */
+    static class Index implements Serializable {
+        /** Record that the object ID is at OFFSET.
+         *  @param id : The Sha-1 Hash of an object.
+         *  @param offset : Its offset from the start of the pack. */
+        void put(String id, long offset) {
+            offsets.put(id, offset);
+        }
+
+        /** Get the offset of every object.
+         *  @return : The offsets, <id, offset>. */
+        Map<String, Long> offsets() {
+            return offsets;
+        }
+
+        /** The offset of each object, <id, offset>. */
+        private final HashMap<String, Long> offsets =
+                new HashMap<String, Long>();
+
+        /** Version of the serialized form of the index, as computed before
+         *  it had methods, so older .idx files still read. */
+        private static final long serialVersionUID = 6578355722496527414L;
+    }
+
+    /** Name of the directory packs are kept in inside .gitlet. */
+    static final String DIR = "packs";
+
+    /** Kind of an entry stored in full. */
+    static final byte FULL = 0;
+
+    /** Kind of an entry stored as a delta. */
+    static final byte DELTA = 1;
+
+    /** Kind of an entry holding a commit, only found in the streams that
+     *  carry history between repositories; packs keep only blobs. */
+    static final byte COMMIT = 2;
+
+    /** Kind of an entry holding the chunk list of a blob stored in chunks,
+     *  also only found in streams. */
+    static final byte CHUNKS = 3;
+
+    /** The id that ends a stream of entries. */
+    static final String END = "";
+
+    /** Default longest chain of deltas. */
+    static final int DEFAULT_DEPTH = 10;
+
+    /** The bytes every pack starts with. */
+    private static final byte[] MAGIC = {'G', 'P', 'A', 'K'};
+
+    /** The version of the pack format. */
+    private static final int VERSION = 1;
+
+    /** The length of the header of a pack, before its first entry. */
+    static final int HEADER_LENGTH = MAGIC.length + 4;
+
+    /** The file this pack is stored in. */
+    private final File packFile;
+
+    /** The index of this pack, once read. */
+    private Index index;
+}
@@ -0,0 +1,459 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** The branches of a repository, HEAD and the history of each. Every
+ *  branch is a line "ID NAME" of the text file .gitlet/packed-refs, sorted
+ *  by name, so listing the branches or looking one up is a single read,
+ *  done once a process. Files in .gitlet/refs, where earlier versions kept
+ *  each branch as a serialized Branch, override the line of the same name;
+ *  they are folded into packed-refs and deleted the first time a branch is
+ *  written. HEAD is the text "ref: NAME" in .gitlet/HEAD, or a serialized
+ *  Branch in repositories that have not written a branch since.
+ *
+ *  Every change to a branch is appended to its reflog, .gitlet/logs/refs/
+ *  NAME, as a line "OLD NEW TIME\tMESSAGE", and changes to the current
+ *  branch and to HEAD to .gitlet/logs/HEAD; a linked worktree has a HEAD
+ *  and a HEAD reflog of its own. NAME@{N} names the commit the
+ *  branch pointed at N changes ago, so a mistaken reset can be undone with
+ *  reset master@{1}, and gc keeps every commit a reflog names.
+ *  @author David Oh */
+class Refs {
+
+    /** The refs of the repository in REPO, as its main worktree sees
+     *  them.
+     *  @param repo : A .gitlet directory. */
+    Refs(File repo) {
+        this(repo, repo);
+    }
+
+    /** The refs of the repository in REPO, as the worktree whose own
+     *  state is in GITDIR sees them: the branches are those of REPO, but
+     *  HEAD and its reflog are the worktree's.
+     *  @param repo : A .gitlet directory.
+     *  @param gitDir : REPO, or the directory of a linked worktree. */
+    Refs(File repo, File gitDir) {
+        this.repo = repo;
+        this.packed = Utils.join(repo, PACKED_NAME);
+        this.loose = Utils.join(repo, LOOSE_DIR);
+        this.headFile = Utils.join(gitDir, HEAD);
+        this.logs = Utils.join(repo, LOGS_DIR);
+        this.headLog = Utils.join(gitDir, LOGS_DIR, HEAD);
+    }
+
+    /** Return the refs of the current repository.
+     *  @return : The refs of the current worktree. */
+    static Refs local() {
+        return Context.current().refs();
+    }
+
+    /** Display the reflog of a branch or of HEAD, newest first. Used for
+     *  the reflog [branch name] command.
+     *  @param args : The arguments of the reflog command. */
+    static void reflog(String[] args) {
+        Refs refs = local();
+        String name = args.length == 1 ? HEAD : args[1];
+        if (!name.equals(HEAD) && refs.get(name) == null) {
+            throw new GitletException("No such branch exists.");
+        }
+        List<String[]> entries = refs.readLog(name);
+        for (int i = entries.size() - 1, n = 0; i >= 0; i -= 1, n += 1) {
+            String[] entry = entries.get(i);
+            System.out.println(entry[NEW] + " " + name + "@{" + n + "}: "
+                    + entry[MESSAGE]);
+        }
+    }
+
+    /** Get the name of the branch HEAD points to.
+     *  @return : The name. */
+    String headName() {
+        if (head == null) {
+            byte[] contents = Utils.readContents(headFile);
+            String text = new String(contents, StandardCharsets.UTF_8);
+            legacy = !text.startsWith(SYMBOLIC);
+            if (!legacy) {
+                head = text.substring(SYMBOLIC.length()).trim();
+            } else {
+                head = Utils.readObject(headFile, Branch.class)
+                        .getBranchPointer().getName();
+            }
+        }
+        return head;
+    }
+
+    /** Get the commit the branch NAME points to.
+     *  @param name : The name of a branch.
+     *  @return : The id of its commit, or null if there is no such
+     *  branch. */
+    String get(String name) {
+        return branches().get(name);
+    }
+
+    /** Return every branch.
+     *  @return : The id of the commit of each branch, by name, sorted. */
+    Map<String, String> branches() {
+        if (branches == null) {
+            branches = read();
+        }
+        return Collections.unmodifiableMap(branches);
+    }
+
+    /** Point the branch NAME at the commit ID, making the branch if it does
+     *  not exist, and log the change with MESSAGE unless the branch was at
+     *  ID already.
+     *  @param name : The name of a branch.
+     *  @param id : The id of a commit.
+     *  @param message : What made the change, such as "commit: MSG". */
+    void update(String name, String id, String message) {
+        write(name, id, message);
+    }
+
+    /** Delete the branch NAME and its reflog.
+     *  @param name : The name of a branch. */
+    void delete(String name) {
+        write(name, null, null);
+        Utils.join(logs, LOOSE_DIR, name).delete();
+    }
+
+    /** Point HEAD at the branch NAME, logging the move to HEAD's reflog
+     *  if it was elsewhere.
+     *  @param name : The name of a branch. */
+    void setHead(String name) {
+        String old = headFile.isFile() ? headName() : null;
+        if (name.equals(old) && !legacyHead()) {
+            return;
+        }
+        replace(headFile, SYMBOLIC + name + "\n");
+        head = name;
+        legacy = false;
+        if (old != null && !name.equals(old)) {
+            append(HEAD, get(old), get(name), "checkout: moving from " + old
+                    + " to " + name);
+        }
+    }
+
+    /** Return the commit named by SPEC, NAME@{N}, the commit the branch
+     *  NAME, or HEAD if NAME is empty, pointed at N changes ago. The
+     *  oldest entry also records where the ref was before it, which
+     *  names a commit from before the reflog was kept.
+     *  @param spec : A reflog reference.
+     *  @return : The id of the commit, or null if SPEC names none. */
+    String resolve(String spec) {
+        int at = spec.indexOf("@{");
+        if (at < 0 || !spec.endsWith("}")) {
+            return null;
+        }
+        String name = at == 0 ? HEAD : spec.substring(0, at);
+        int n;
+        try {
+            n = Integer.parseInt(spec.substring(at + 2, spec.length() - 1));
+        } catch (NumberFormatException excp) {
+            return null;
+        }
+        List<String[]> entries = readLog(name);
+        if (n == entries.size() && n > 0 && !isZero(entries.get(0)[OLD])) {
+            return entries.get(0)[OLD];
+        } else if (n < 0 || n >= entries.size()) {
+            return null;
+        }
+        return entries.get(entries.size() - 1 - n)[NEW];
+    }
+
+    /** Return every commit named in a reflog, which gc keeps.
+     *  @return : The ids, by the reflog naming them: HEAD or a branch. */
+    TreeMap<String, Set<String>> reflogIds() {
+        TreeMap<String, Set<String>> ids = new TreeMap<String, Set<String>>();
+        ArrayList<String> names = new ArrayList<String>();
+        names.add(HEAD);
+        loggedNames(Utils.join(logs, LOOSE_DIR), "", names);
+        for (String name : names) {
+            HashSet<String> named = new HashSet<String>();
+            for (String[] entry : readLog(name)) {
+                named.add(entry[NEW]);
+                if (!isZero(entry[OLD])) {
+                    named.add(entry[OLD]);
+                }
+            }
+            if (!named.isEmpty()) {
+                ids.put(name, named);
+            }
+        }
+        return ids;
+    }
+
+    /** Add to NAMES the branches with reflogs in DIR, whose names start
+     *  with PREFIX. Fetched branches, REMOTE/BRANCH, are logged in a
+     *  directory of each remote.
+     *  @param dir : A directory of reflogs.
+     *  @param prefix : The start of the names of the branches in DIR.
+     *  @param names : The names found so far. */
+    private static void loggedNames(File dir, String prefix,
+                                    List<String> names) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                loggedNames(file, prefix + file.getName() + "/", names);
+            } else {
+                names.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /** Set the branch NAME to ID, or delete it if ID is null, under the
+     *  lock of packed-refs: the branches are read again, changed, written
+     *  to a new file that replaces packed-refs, and the loose refs, now
+     *  part of it, are deleted. Then the change is logged with MESSAGE.
+     *  @param name : The name of a branch.
+     *  @param id : Its new commit, or null.
+     *  @param message : The reflog message. */
+    private void write(String name, String id, String message) {
+        File lockFile = Utils.join(repo, LOCK_NAME);
+        long start = System.nanoTime();
+        String old;
+        try (RandomAccessFile locked = new RandomAccessFile(lockFile, "rw")) {
+            FileLock lock = locked.getChannel().lock();
+            try {
+                Metrics.LOCK_WAIT.observe("refs", System.nanoTime() - start);
+                branches = read();
+                old = branches.get(name);
+                if (id == null) {
+                    branches.remove(name);
+                } else {
+                    branches.put(name, id);
+                }
+                StringBuilder text = new StringBuilder();
+                for (Map.Entry<String, String> branch : branches.entrySet()) {
+                    text.append(branch.getValue()).append(' ')
+                            .append(branch.getKey()).append('\n');
+                }
+                replace(packed, text.toString());
+                if (legacyHead()) {
+                    replace(headFile, SYMBOLIC + headName() + "\n");
+                    legacy = false;
+                }
+                File[] files = loose.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        file.delete();
+                    }
+                    loose.delete();
+                }
+            } finally {
+                lock.release();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (id == null || id.equals(old)) {
+            return;
+        }
+        append(Utils.join(LOOSE_DIR, name).getPath(), old, id, message);
+        if (headFile.isFile() && name.equals(headName())) {
+            append(HEAD, old, id, message);
+        }
+    }
+
+    /** Read the branches from packed-refs and the loose refs overriding
+     *  it.
+     *  @return : The id of each branch, by name. */
+    private TreeMap<String, String> read() {
+        TreeMap<String, String> result = new TreeMap<String, String>();
+        if (packed.isFile()) {
+            String text = new String(Utils.readContents(packed),
+                    StandardCharsets.UTF_8);
+            for (String line : text.split("\n")) {
+                int space = line.indexOf(' ');
+                if (space > 0) {
+                    result.put(line.substring(space + 1),
+                            line.substring(0, space));
+                }
+            }
+        }
+        List<String> names = Utils.plainFilenamesIn(loose);
+        if (names != null) {
+            for (String name : names) {
+                File file = Utils.join(loose, name);
+                byte[] contents = Utils.readContents(file);
+                if (isSerialized(contents)) {
+                    result.put(name, Utils.readObject(file, Branch.class)
+                            .getCommitID());
+                } else {
+                    result.put(name, new String(contents,
+                            StandardCharsets.UTF_8).trim());
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the entries of the reflog of NAME, oldest first.
+     *  @param name : HEAD or the name of a branch.
+     *  @return : Each entry as its OLD, NEW, TIME and MESSAGE fields. */
+    private List<String[]> readLog(String name) {
+        ArrayList<String[]> entries = new ArrayList<String[]>();
+        File file = name.equals(HEAD) ? headLog
+                : Utils.join(logs, LOOSE_DIR, name);
+        if (!file.isFile()) {
+            return entries;
+        }
+        String text = new String(Utils.readContents(file),
+                StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            int tab = line.indexOf('\t');
+            String[] fields = line.substring(0, Math.max(tab, 0)).split(" ");
+            if (tab < 0 || fields.length != MESSAGE) {
+                continue;
+            }
+            String[] entry = new String[MESSAGE + 1];
+            System.arraycopy(fields, 0, entry, 0, MESSAGE);
+            entry[MESSAGE] = line.substring(tab + 1);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /** Append to the reflog at PATH, inside .gitlet/logs, that a ref moved
+     *  from OLD to NEW because of MESSAGE. Each entry is one write to a
+     *  file opened for appending, so entries of processes logging at once
+     *  are not interleaved.
+     *  @param path : HEAD or refs/NAME.
+     *  @param old : The id the ref pointed at, or null if it is new.
+     *  @param now : The id it points at.
+     *  @param message : What moved it. */
+    private void append(String path, String old, String now,
+                        String message) {
+        if (old == null) {
+            old = ZERO.substring(0, now.length());
+        }
+        File file = path.equals(HEAD) ? headLog : Utils.join(logs, path);
+        file.getParentFile().mkdirs();
+        String line = old + " " + now + " " + System.currentTimeMillis()
+                + "\t" + message.replace('\n', ' ') + "\n";
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if HEAD is still a serialized Branch.
+     *  @return : A boolean. */
+    private boolean legacyHead() {
+        if (!headFile.isFile()) {
+            return false;
+        }
+        headName();
+        return legacy;
+    }
+
+    /** Replace FILE with one holding TEXT by renaming a new file over it.
+     *  @param file : The file to replace.
+     *  @param text : Its new contents. */
+    private static void replace(File file, String text) {
+        File tmp = new File(file.getPath() + ".tmp");
+        Utils.writeContents(tmp, text);
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            tmp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Return true if CONTENTS begin as a Java serialization stream.
+     *  @param contents : The contents of a ref file.
+     *  @return : A boolean. */
+    private static boolean isSerialized(byte[] contents) {
+        return contents.length >= 2 && contents[0] == (byte) 0xac
+                && contents[1] == (byte) 0xed;
+    }
+
+    /** Return true if ID is the all-zero id of a ref that did not exist.
+     *  @param id : An id from a reflog.
+     *  @return : A boolean. */
+    private static boolean isZero(String id) {
+        return ZERO.startsWith(id);
+    }
+
+    /** Name of HEAD, its file and its reflog. */
+    static final String HEAD = "HEAD";
+
+    /** Name of the file of packed branches inside .gitlet. */
+    static final String PACKED_NAME = "packed-refs";
+
+    /** Name of the lock taken to change packed-refs. */
+    static final String LOCK_NAME = "packed-refs.lock";
+
+    /** Directory of loose branches inside .gitlet, and of their reflogs
+     *  inside LOGS_DIR. */
+    static final String LOOSE_DIR = "refs";
+
+    /** Directory of the reflogs inside .gitlet. */
+    static final String LOGS_DIR = "logs";
+
+    /** What HEAD's file holds before the name of its branch. */
+    private static final String SYMBOLIC = "ref: ";
+
+    /** The old id logged for a branch that was just made, cut to the
+     *  length of the new id. */
+    private static final String ZERO =
+            "0000000000000000000000000000000000000000000000000000000000000000";
+
+    /** Index of the old id in a reflog entry. */
+    private static final int OLD = 0;
+
+    /** Index of the new id in a reflog entry. */
+    private static final int NEW = 1;
+
+    /** Index of the message in a reflog entry, after the time. */
+    private static final int MESSAGE = 3;
+
+    /** The .gitlet directory. */
+    private final File repo;
+
+    /** The packed-refs file. */
+    private final File packed;
+
+    /** The directory of loose refs. */
+    private final File loose;
+
+    /** The HEAD file. */
+    private final File headFile;
+
+    /** The directory of reflogs. */
+    private final File logs;
+
+    /** The reflog of HEAD. */
+    private final File headLog;
+
+    /** The branches, read when first needed and after each write. */
+    private TreeMap<String, String> branches;
+
+    /** The branch HEAD points to, read when first needed. */
+    private String head;
+
+    /** Whether HEAD was read as a serialized Branch. */
+    private boolean legacy;
+}
@@ -0,0 +1,279 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Other repositories on the same machine that history is fetched from
+ *  and pushed to. Each remote is a line "NAME PATH" of the text file
+ *  .gitlet/remotes, PATH being the remote's .gitlet directory as given to
+ *  add-remote, with / separating its parts. Fetching branch B of remote R
+ *  copies what is missing into this repository and points the branch
+ *  "R/B" at it; pushing does the same the other way, for the current
+ *  branch. Either way the objects go across as one stream, a Transfer.
+ *  @author David Oh */
+class Remote {
+
+    /** Remember the repository in PATH as the remote NAME. Used for the
+     *  add-remote [remote name] [path] command.
+     *  @param name : The name of the remote.
+     *  @param path : Its .gitlet directory. */
+    static void addRemote(String name, String path) {
+        TreeMap<String, String> remotes = readRemotes();
+        if (remotes.containsKey(name)) {
+            throw new GitletException("A remote with that name already "
+                    + "exists.");
+        }
+        remotes.put(name, path);
+        saveRemotes(remotes);
+    }
+
+    /** Forget the remote NAME. Used for the rm-remote [remote name]
+     *  command.
+     *  @param name : The name of the remote. */
+    static void rmRemote(String name) {
+        TreeMap<String, String> remotes = readRemotes();
+        if (remotes.remove(name) == null) {
+            throw new GitletException("A remote with that name does not "
+                    + "exist.");
+        }
+        saveRemotes(remotes);
+    }
+
+    /** Copy the branch BRANCH of the remote NAME, and everything it
+     *  reaches that is missing here, into the branch NAME/BRANCH. Used for
+     *  the fetch [remote name] [remote branch name] command.
+     *  @param name : The name of the remote.
+     *  @param branch : A branch of the remote.
+     *  @return : The name of the local branch. */
+    static String fetch(String name, String branch) {
+        File repo = open(name);
+        String id = new Refs(repo).get(branch);
+        if (id == null) {
+            throw new GitletException("That remote does not have that "
+                    + "branch.");
+        }
+        ObjectStore remote = new ObjectStore(repo);
+        Transfer transfer = new Transfer(remote, ObjectStore.local());
+        transfer.want(id);
+        transfer.copy();
+        String local = name + "/" + branch;
+        Refs.local().update(local, id, "fetch: " + name + " " + branch);
+        return local;
+    }
+
+    /** Copy the current branch, and everything it reaches that is missing
+     *  there, to the branch BRANCH of the remote NAME, which must not have
+     *  commits the current branch lacks. Used for the push [remote name]
+     *  [remote branch name] command.
+     *  @param name : The name of the remote.
+     *  @param branch : A branch of the remote, made if it does not exist. */
+    static void push(String name, String branch) {
+        File repo = open(name);
+        Refs remoteRefs = new Refs(repo);
+        Refs refs = Refs.local();
+        String id = refs.get(refs.headName());
+        String remoteID = remoteRefs.get(branch);
+        if (id.equals(remoteID)) {
+            return;
+        }
+        if (remoteID != null
+                && !isAncestor(ObjectStore.local(), remoteID, id)) {
+            throw new GitletException("Please pull down remote changes "
+                    + "before pushing.");
+        }
+        ObjectStore remote = new ObjectStore(repo);
+        remote.migrate();
+        Transfer transfer = new Transfer(ObjectStore.local(), remote);
+        transfer.want(id);
+        transfer.copy();
+        remoteRefs.update(branch, id, "push: from " + refs.headName());
+    }
+
+    /** Fetch the branch BRANCH of the remote NAME and merge it into the
+     *  current branch. Used for the pull [remote name] [remote branch
+     *  name] command.
+     *  @param name : The name of the remote.
+     *  @param branch : A branch of the remote. */
+    static void pull(String name, String branch) {
+        WorkingDirectory.merge(fetch(name, branch));
+    }
+
+    /** Make a repository in the working directory, which must not have
+     *  one, with the history of every branch of the repository in PATH,
+     *  the remote origin, and check out its current branch. With --depth
+     *  N only the N most recent commits of each branch are copied, and
+     *  history ends there; with --filter=blob:none no blobs are copied,
+     *  and each is fetched from PATH the first time it is read. Used for
+     *  the clone [--depth N] [--filter=blob:none] [path] command.
+     *  @param args : The arguments of the clone command. */
+    static void clone(String[] args) {
+        int depth = 0;
+        if (args[1].equals(DEPTH_OPTION)) {
+            try {
+                depth = Integer.parseInt(args[2]);
+            } catch (NumberFormatException excp) {
+                depth = 0;
+            }
+            if (depth <= 0) {
+                throw new GitletException("Incorrect operands.");
+            }
+        }
+        boolean filter = args[args.length - 2].equals(FILTER_OPTION);
+        String path = args[args.length - 1];
+        File repo = resolve(path);
+        if (WorkingDirectory.repo().exists()) {
+            throw new GitletException("A Gitlet version-control system "
+                    + "already exists in the current directory.");
+        }
+        Refs source = new Refs(repo);
+        ObjectStore remote = new ObjectStore(repo);
+        String head = source.headName();
+        String headID = source.get(head);
+        HashMap<String, String> snapshot =
+                remote.readCommit(headID).getSnapshot();
+        for (String name : snapshot.keySet()) {
+            if (WorkingTree.file(name).exists()) {
+                throw new GitletException("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+            }
+        }
+        WorkingDirectory.init(remote.getHash());
+        addRemote(ORIGIN, path);
+        if (filter) {
+            Config config = Config.readConfig(WorkingDirectory.repo());
+            config.setPromisor(repo.toPath().toAbsolutePath().normalize()
+                    .toString());
+            config.saveConfig(WorkingDirectory.repo());
+        }
+        Transfer transfer = new Transfer(remote, ObjectStore.local());
+        if (filter) {
+            transfer.omitBlobs();
+        }
+        for (String id : source.branches().values()) {
+            if (depth > 0) {
+                transfer.want(id, depth);
+            } else {
+                transfer.want(id);
+            }
+        }
+        transfer.copy();
+        Refs refs = Refs.local();
+        String message = "clone: from " + path;
+        for (Map.Entry<String, String> branch
+                 : source.branches().entrySet()) {
+            refs.update(ORIGIN + "/" + branch.getKey(), branch.getValue(),
+                    message);
+        }
+        refs.update(head, headID, message);
+        refs.setHead(head);
+        if (!head.equals("master")) {
+            refs.delete("master");
+        }
+        for (Map.Entry<String, String> file : snapshot.entrySet()) {
+            WorkingTree.write(file.getKey(), file.getValue());
+        }
+    }
+
+    /** Return the .gitlet directory of the remote NAME.
+     *  @param name : The name of a remote.
+     *  @return : Its directory, which exists. */
+    private static File open(String name) {
+        String path = readRemotes().get(name);
+        if (path == null) {
+            throw new GitletException("A remote with that name does not "
+                    + "exist.");
+        }
+        return resolve(path);
+    }
+
+    /** Return the .gitlet directory PATH names, relative to the working
+     *  directory unless it is absolute.
+     *  @param path : A path with / separating its parts.
+     *  @return : The directory, which exists. */
+    private static File resolve(String path) {
+        File repo = new File(path.replace("/", File.separator));
+        if (!repo.isAbsolute()) {
+            repo = Utils.join(WorkingDirectory.cwd(), repo.getPath());
+        }
+        if (!Utils.join(repo, Refs.HEAD).isFile()) {
+            throw new GitletException("Remote directory not found.");
+        }
+        return repo;
+    }
+
+    /** Return true if the commit ANCESTOR is ID or one of its ancestors in
+     *  STORE.
+     *  @param store : An object store holding ID.
+     *  @param ancestor : The id of a commit.
+     *  @param id : The id of a commit.
+     *  @return : A boolean. */
+    private static boolean isAncestor(ObjectStore store, String ancestor,
+                                      String id) {
+        if (!store.containsCommit(ancestor)) {
+            return false;
+        }
+        HashSet<String> seen = new HashSet<String>();
+        ArrayDeque<String> queue = new ArrayDeque<String>();
+        queue.add(id);
+        while (!queue.isEmpty()) {
+            String next = queue.poll();
+            if (next.equals(ancestor)) {
+                return true;
+            }
+            if (!seen.add(next)) {
+                continue;
+            }
+            queue.addAll(store.parents(store.readCommit(next)));
+        }
+        return false;
+    }
+
+    /** Read the remotes of the current repository.
+     *  @return : The path of each remote, by name. */
+    private static TreeMap<String, String> readRemotes() {
+        TreeMap<String, String> remotes = new TreeMap<String, String>();
+        File file = Utils.join(WorkingDirectory.repo(), FILE_NAME);
+        if (!file.isFile()) {
+            return remotes;
+        }
+        String text = new String(Utils.readContents(file),
+                StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                remotes.put(line.substring(0, space),
+                        line.substring(space + 1));
+            }
+        }
+        return remotes;
+    }
+
+    /** Save REMOTES as the remotes of the current repository.
+     *  @param remotes : The path of each remote, by name. */
+    private static void saveRemotes(TreeMap<String, String> remotes) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> remote : remotes.entrySet()) {
+            text.append(remote.getKey()).append(' ')
+                    .append(remote.getValue()).append('\n');
+        }
+        Utils.writeContents(Utils.join(WorkingDirectory.repo(), FILE_NAME),
+                text.toString());
+    }
+
+    /** The name clone gives the repository it copies. */
+    static final String ORIGIN = "origin";
+
+    /** The option of clone limiting how many commits are copied. */
+    static final String DEPTH_OPTION = "--depth";
+
+    /** The option of clone leaving blobs behind. */
+    static final String FILTER_OPTION = "--filter=blob:none";
+
+    /** Name of the file of remotes inside .gitlet. */
+    static final String FILE_NAME = "remotes";
+}
@@ -0,0 +1,319 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Pairs up files that disappeared under one name with files that
+ *  appeared under another, so that a rename can be reported as such
+ *  rather than as a delete and an add. Files with identical blobs are
+ *  paired by their Sha-1 alone. The rest are compared with MinHash
+ *  signatures over their lines, and only pairs that share a band of
+ *  their signatures are ever scored, so the work grows with the number
+ *  of files rather than with the number of deleted and added pairs.
+ *  @author David Oh */
+public class RenameDetector {
+
+    /** Find renames from the files in DELETED to the files in ADDED.
+     *  @param deleted : Files only in the old version, <name, SHA-1>.
+     *  @param added : Files only in the new version, <name, SHA-1>.
+     *  @param oldContents : Reads the contents of a deleted file by name.
+     *  @param newContents : Reads the contents of an added file by name.
+     *  @return : The renames found, <new name, old name>, sorted by new
+     *  name. */
+    static TreeMap<String, String> detect(Map<String, String> deleted,
+            Map<String, String> added,
+            Utils.Function<String, byte[]> oldContents,
+            Utils.Function<String, byte[]> newContents) {
+        TreeMap<String, String> renames = new TreeMap<String, String>();
+        if (deleted.isEmpty() || added.isEmpty()) {
+            return renames;
+        }
+        HashMap<String, ArrayDeque<String>> bySha =
+                new HashMap<String, ArrayDeque<String>>();
+        for (String name : new TreeMap<String, String>(deleted).keySet()) {
+            String sha = deleted.get(name);
+            if (!bySha.containsKey(sha)) {
+                bySha.put(sha, new ArrayDeque<String>());
+            }
+            bySha.get(sha).add(name);
+        }
+        ArrayList<String> unmatchedAdded = new ArrayList<String>();
+        for (String name : new TreeMap<String, String>(added).keySet()) {
+            ArrayDeque<String> sources = bySha.get(added.get(name));
+            if (sources != null && !sources.isEmpty()) {
+                renames.put(name, sources.poll());
+            } else {
+                unmatchedAdded.add(name);
+            }
+        }
+        ArrayList<String> unmatchedDeleted = new ArrayList<String>();
+        for (ArrayDeque<String> sources : bySha.values()) {
+            unmatchedDeleted.addAll(sources);
+        }
+        Collections.sort(unmatchedDeleted);
+        if (!unmatchedDeleted.isEmpty() && !unmatchedAdded.isEmpty()) {
+            similar(unmatchedDeleted, unmatchedAdded, oldContents,
+                    newContents, renames);
+        }
+        return renames;
+    }
+
+    /** Return a function reading the blob that SNAP records for a file.
+     *  Blobs stored in chunks read as empty, so huge files are only
+     *  matched when they are unchanged.
+     *  @param snap : A snapshot, <name, SHA-1>.
+     *  @return : A function from file name to contents. */
+    static Utils.Function<String, byte[]> repoContents(
+            final Map<String, String> snap) {
+        return new Utils.Function<String, byte[]>() {
+            @Override
+            byte[] apply(String name) {
+                if (ObjectStore.local().isChunked(snap.get(name))) {
+                    return new byte[0];
+                }
+                return WorkingDirectory.readBlobFromRepo(snap.get(name));
+            }
+        };
+    }
+
+    /** Return a function reading a file from the working directory. Files
+     *  large enough to be stored in chunks read as empty.
+     *  @return : A function from file name to contents. */
+    static Utils.Function<String, byte[]> workingContents() {
+        final long threshold = ObjectStore.local().bigFileThreshold();
+        return new Utils.Function<String, byte[]>() {
+            @Override
+            byte[] apply(String name) {
+                File file = Utils.join(WorkingDirectory.cwd(), name);
+                if (file.length() >= threshold) {
+                    return new byte[0];
+                }
+                return Utils.readContents(file);
+            }
+        };
+    }
+
+    /** Pair up the files in DELETED and ADDED whose estimated similarity
+     *  is at least THRESHOLD, best matches first, and record them in
+     *  RENAMES.
+     *  @param deleted : Names of deleted files with no exact match.
+     *  @param added : Names of added files with no exact match.
+     *  @param oldContents : Reads the contents of a deleted file.
+     *  @param newContents : Reads the contents of an added file.
+     *  @param renames : The renames found so far, <new name, old name>. */
+    private static void similar(List<String> deleted, List<String> added,
+                                Utils.Function<String, byte[]> oldContents,
+                                Utils.Function<String, byte[]> newContents,
+                                Map<String, String> renames) {
+        HashMap<String, long[]> oldSigs = new HashMap<String, long[]>();
+        HashMap<String, ArrayList<String>> buckets =
+                new HashMap<String, ArrayList<String>>();
+        for (String name : deleted) {
+            long[] sig = signature(oldContents.apply(name));
+            if (sig != null) {
+                oldSigs.put(name, sig);
+                for (int band = 0; band < BANDS; band += 1) {
+                    String key = bandKey(sig, band);
+                    if (!buckets.containsKey(key)) {
+                        buckets.put(key, new ArrayList<String>());
+                    }
+                    buckets.get(key).add(name);
+                }
+            }
+        }
+        ArrayList<Candidate> candidates = new ArrayList<Candidate>();
+        for (String name : added) {
+            long[] sig = signature(newContents.apply(name));
+            if (sig == null) {
+                continue;
+            }
+            HashSet<String> seen = new HashSet<String>();
+            for (int band = 0; band < BANDS; band += 1) {
+                ArrayList<String> bucket = buckets.get(bandKey(sig, band));
+                if (bucket == null || bucket.size() > MAX_BUCKET) {
+                    continue;
+                }
+                for (String oldName : bucket) {
+                    if (seen.add(oldName)) {
+                        int score = score(oldSigs.get(oldName), sig);
+                        if (score >= THRESHOLD) {
+                            candidates.add(new Candidate(oldName, name,
+                                    score));
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(candidates, BEST_FIRST);
+        HashSet<String> usedOld = new HashSet<String>();
+        for (Candidate c : candidates) {
+            if (!renames.containsKey(c.newName)
+                    && !usedOld.contains(c.oldName)) {
+                usedOld.add(c.oldName);
+                renames.put(c.newName, c.oldName);
+            }
+        }
+    }
+
+    /** Return the estimated similarity of two files as a percentage.
+     *  @param oldContents : The contents of the old file.
+     *  @param newContents : The contents of the new file.
+     *  @return : A number from 0 to 100. */
+    static int similarity(byte[] oldContents, byte[] newContents) {
+        long[] oldSig = signature(oldContents);
+        long[] newSig = signature(newContents);
+        if (oldSig == null || newSig == null) {
+            return 0;
+        }
+        return score(oldSig, newSig);
+    }
+
+    /** Return the MinHash signature of the set of lines in CONTENTS, or
+     *  null if CONTENTS is empty.
+     *  @param contents : The contents of a file.
+     *  @return : An array of HASHES minimum hash values. */
+    static long[] signature(byte[] contents) {
+        if (contents.length == 0) {
+            return null;
+        }
+        long[] sig = new long[HASHES];
+        Arrays.fill(sig, Long.MAX_VALUE);
+        String text = new String(contents, StandardCharsets.UTF_8);
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            long token = fnv(text, start, end);
+            for (int i = 0; i < HASHES; i += 1) {
+                long h = mix(token ^ SEEDS[i]);
+                if (h < sig[i]) {
+                    sig[i] = h;
+                }
+            }
+            start = end + 1;
+        }
+        return sig;
+    }
+
+    /** Return the percentage of positions at which two signatures agree,
+     *  which estimates the Jaccard similarity of their line sets.
+     *  @param a : A signature.
+     *  @param b : Another signature.
+     *  @return : A number from 0 to 100. */
+    private static int score(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / HASHES;
+    }
+
+    /** Return the bucket key for the given band of SIG.
+     *  @param sig : A signature.
+     *  @param band : The index of a band.
+     *  @return : The key of the band's bucket. */
+    private static String bandKey(long[] sig, int band) {
+        StringBuilder key = new StringBuilder().append(band);
+        for (int r = band * ROWS; r < (band + 1) * ROWS; r += 1) {
+            key.append(':').append(sig[r]);
+        }
+        return key.toString();
+    }
+
+    /** Return the 64-bit FNV-1a hash of TEXT[START..END).
+     *  @param text : The text.
+     *  @param start : The start of a line.
+     *  @param end : The end of a line.
+     *  @return : The hash. */
+    private static long fnv(String text, int start, int end) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < end; i += 1) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Return a well mixed version of X (the splitmix64 finalizer).
+     *  @param x : A value.
+     *  @return : The mixed value. */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** A possible rename with its estimated similarity. */
+    private static class Candidate {
+        /** A candidate rename from OLDNAME to NEWNAME with SCORE.
+         *  @param oldName : The deleted file.
+         *  @param newName : The added file.
+         *  @param score : The estimated similarity. */
+        Candidate(String oldName, String newName, int score) {
+            this.oldName = oldName;
+            this.newName = newName;
+            this.score = score;
+        }
+
+        /** The deleted file. */
+        private final String oldName;
+        /** The added file. */
+        private final String newName;
+        /** The estimated similarity, from 0 to 100. */
+        private final int score;
+    }
+
+    /** Orders candidates by descending score, then by name. */
+    private static final Comparator<Candidate> BEST_FIRST =
+        new Comparator<Candidate>() {
+            @Override
+            public int compare(Candidate x, Candidate y) {
+                if (x.score != y.score) {
+                    return y.score - x.score;
+                }
+                int c = x.newName.compareTo(y.newName);
+                return c != 0 ? c : x.oldName.compareTo(y.oldName);
+            }
+        };
+
+    /** Least estimated similarity, in percent, for a rename. */
+    static final int THRESHOLD = 50;
+
+    /** Number of bands the signature is split into for bucketing. */
+    private static final int BANDS = 32;
+
+    /** Number of signature values in each band. */
+    private static final int ROWS = 3;
+
+    /** Number of hash functions in a signature. */
+    private static final int HASHES = BANDS * ROWS;
+
+    /** Buckets holding more files than this are too common to be useful
+     *  and are skipped, which keeps the candidate search near linear. */
+    private static final int MAX_BUCKET = 256;
+
+    /** The seed of each hash function. */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x9e3779b97f4a7c15L;
+        for (int i = 0; i < HASHES; i += 1) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+}
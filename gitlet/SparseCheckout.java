@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The paths of each snapshot that are kept in the working directory,
+ *  for repositories where only part of the tree is needed. The patterns
+ *  are lines of .gitlet/sparse-checkout, written as in .gitletignore; a
+ *  file is included if a pattern matches it or one of the directories it
+ *  is in. Without the file every path is included.
+ *
+ *  Commits still hold the whole snapshot. checkout of a branch, reset
+ *  and merge only write the files included, and status, add -A and
+ *  commit -a only look at included files, so the files left out are
+ *  neither read nor taken for deleted.
+ *  @author David Oh */
+class SparseCheckout {
+
+    /** The sparse checkout of the patterns in LINES.
+     *  @param lines : The patterns, or null to include every path. */
+    SparseCheckout(String[] lines) {
+        this.lines = lines;
+        this.matcher = lines == null ? null : new IgnoreMatcher(lines);
+    }
+
+    /** Return the sparse checkout of the current worktree.
+     *  @return : Its patterns. */
+    static SparseCheckout local() {
+        return Context.current().sparse();
+    }
+
+    /** Read the sparse checkout of the worktree whose own state is in
+     *  GITDIR.
+     *  @param gitDir : The .gitlet directory or that of a linked worktree.
+     *  @return : Its patterns. */
+    static SparseCheckout read(File gitDir) {
+        File file = Utils.join(gitDir, FILE_NAME);
+        return new SparseCheckout(!file.isFile() ? null
+                : Utils.readContentsAsString(file).split("\r?\n"));
+    }
+
+    /** Change or show which paths are kept in the working directory. Used
+     *  for the sparse-checkout set [pattern]..., sparse-checkout list and
+     *  sparse-checkout disable commands.
+     *  @param args : The arguments of the sparse-checkout command. */
+    static void sparseCheckout(String[] args) {
+        SparseCheckout old = local();
+        if (args[1].equals("list")) {
+            if (old.lines != null) {
+                for (String line : old.lines) {
+                    System.out.println(line);
+                }
+            }
+            return;
+        }
+        SparseCheckout sparse = new SparseCheckout(args[1].equals("set")
+                ? Arrays.copyOfRange(args, 2, args.length) : null);
+        old.apply(sparse);
+        File file = Utils.join(WorkingDirectory.gitDir(), FILE_NAME);
+        if (sparse.lines == null) {
+            file.delete();
+        } else {
+            Utils.writeContents(file, String.join("\n", sparse.lines)
+                    + "\n");
+        }
+        Context.current().setSparse(sparse);
+    }
+
+    /** Return true if the file NAME is kept in the working directory.
+     *  @param name : The name of a file in a snapshot.
+     *  @return : A boolean. */
+    boolean includes(String name) {
+        if (matcher == null) {
+            return true;
+        }
+        int slash = name.lastIndexOf('/');
+        if (matcher.ignored(name, name.substring(slash + 1), false)) {
+            return true;
+        }
+        for (; slash > 0; slash = name.lastIndexOf('/', slash - 1)) {
+            String dir = name.substring(0, slash);
+            if (matcher.ignored(dir, dir.substring(dir.lastIndexOf('/') + 1),
+                    true)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the files of SNAPSHOT that are kept in the working
+     *  directory.
+     *  @param snapshot : A snapshot, or null.
+     *  @return : Its included files, <name, blob id>. */
+    HashMap<String, String> select(Map<String, String> snapshot) {
+        HashMap<String, String> selected = new HashMap<String, String>();
+        if (snapshot != null) {
+            for (Map.Entry<String, String> file : snapshot.entrySet()) {
+                if (includes(file.getKey())) {
+                    selected.put(file.getKey(), file.getValue());
+                }
+            }
+        }
+        return selected;
+    }
+
+    /** Make the working directory hold the files of the current commit
+     *  SPARSE includes in place of those this includes. Nothing is changed
+     *  if a file that would be deleted differs from the commit or a file
+     *  that would be written is already there and differs from it.
+     *  @param sparse : The new sparse checkout. */
+    private void apply(SparseCheckout sparse) {
+        StagingArea stage = StagingArea.readStage();
+        if (!stage.getFilesInStage().isEmpty()
+                || !stage.getRemovedFiles().isEmpty()) {
+            throw new GitletException("You have uncommitted changes.");
+        }
+        Branch head = WorkingDirectory.readHead().getBranchPointer();
+        HashMap<String, String> snapshot =
+                Commit.readCommit(head.getCommitID()).getSnapshot();
+        HashEngine hash = ObjectStore.local().getHash();
+        ArrayList<String> dropped = new ArrayList<String>();
+        ArrayList<String> added = new ArrayList<String>();
+        for (Map.Entry<String, String> file : select(snapshot).entrySet()) {
+            if (!sparse.includes(file.getKey())) {
+                dropped.add(file.getKey());
+            }
+        }
+        for (Map.Entry<String, String> file
+                 : sparse.select(snapshot).entrySet()) {
+            if (!includes(file.getKey())) {
+                added.add(file.getKey());
+            }
+        }
+        for (String name : dropped) {
+            File file = WorkingTree.file(name);
+            if (file.isFile() && !hash.hashFile(file).equals(
+                    snapshot.get(name))) {
+                throw new GitletException("You have uncommitted changes.");
+            }
+        }
+        for (String name : added) {
+            File file = WorkingTree.file(name);
+            if (file.exists() && !(file.isFile() && hash.hashFile(file)
+                    .equals(snapshot.get(name)))) {
+                throw new GitletException("There is an untracked file in "
+                        + "the way; delete it or add it first.");
+            }
+        }
+        for (String name : dropped) {
+            WorkingTree.delete(name);
+        }
+        for (String name : added) {
+            WorkingTree.write(name, snapshot.get(name));
+        }
+    }
+
+    /** Name of the file of patterns inside .gitlet. */
+    static final String FILE_NAME = "sparse-checkout";
+
+    /** The patterns, or null if every path is included. */
+    private final String[] lines;
+
+    /** The compiled patterns, or null if every path is included. */
+    private final IgnoreMatcher matcher;
+}
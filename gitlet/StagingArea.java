@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.TreeSet;
 
 /** Files added to the staging area through the add command are
  *  staged for the next commit.
@@ -19,7 +20,7 @@ public class StagingArea implements Serializable {
 
     /** Save the stage file. */
     void saveStage() {
-        Utils.writeObject(Utils.join(WorkingDirectory.REPO, this.name),
+        Utils.writeObject(Utils.join(WorkingDirectory.gitDir(), this.name),
                 this);
     }
 
@@ -27,7 +28,15 @@ public class StagingArea implements Serializable {
      *  staging area object to update during add.
      *  @return : The staging area file from disk stored in .gitlet director. */
     static StagingArea readStage() {
-        File stageFile = Utils.join(WorkingDirectory.REPO, "stage");
+        return readStage(WorkingDirectory.gitDir());
+    }
+
+    /** Read the staging area of the worktree whose own state is in GITDIR,
+     *  which gc and fsck keep the staged blobs of.
+     *  @param gitDir : The .gitlet directory or that of a linked worktree.
+     *  @return : The staging area. */
+    static StagingArea readStage(File gitDir) {
+        File stageFile = Utils.join(gitDir, "stage");
         return Utils.readObject(stageFile, StagingArea.class);
     }
 
@@ -36,7 +45,7 @@ public class StagingArea implements Serializable {
      *  @param fileName : The name of Blob to read.
      *  @return : The contents of the read blob. */
     static byte[] readBlobFromCWD(String fileName) {
-        File blobFile = Utils.join(WorkingDirectory.CWD, fileName);
+        File blobFile = Utils.join(WorkingDirectory.cwd(), fileName);
         if (!blobFile.exists()) {
             throw new GitletException("File does not exist.");
         } else {
@@ -44,23 +53,20 @@ public class StagingArea implements Serializable {
         }
     }
 
-    /** Write the blob to the .gitlet repository.
-     *  @param blobID : The Sha-1 Hash of the blob to write.
-     *  @param byteContent : The contents of the blob. */
-    private static void saveBlobToRepo(String blobID, byte[] byteContent) {
-        File blobFile = Utils.join(WorkingDirectory.REPO, blobID);
-        Utils.writeContents(blobFile, byteContent);
-    }
-
     /** Add a copy of the file with the given name from the working
      *  directory to the staging area. Method reads the blob, saves it
      *  to disk, reads the staging area, adds the blob to the staging area,
      *  then writes the updated staging area back to disk.
      *  @param fileName : The name of the file user wishes to add. */
     void add(String fileName) {
-        byte[] blob = readBlobFromCWD(fileName);
-        String blobSHA = Utils.sha1(blob);
-        saveBlobToRepo(blobSHA, blob);
+        fileName = WorkingTree.normalize(fileName);
+        File blobFile = WorkingTree.file(fileName);
+        if (!blobFile.isFile()) {
+            throw new GitletException("File does not exist.");
+        }
+        Trace.Span span = Trace.start("add.store");
+        String blobSHA = ObjectStore.local().writeFile(blobFile);
+        span.close();
         Branch head = WorkingDirectory.readHead();
         Branch branch = Branch.readBranch(head.getBranchPointer().getName());
         Commit currentCommit = Commit.readCommit(branch);
@@ -82,6 +88,47 @@ public class StagingArea implements Serializable {
         saveStage();
     }
 
+    /** Stage every change in the working directory: new and modified
+     *  files are added, and tracked files that are gone are staged for
+     *  removal. Files whose contents are unchanged are not read when a
+     *  watcher is running. Used for the add -A command. */
+    void addAll() {
+        Trace.Span span = Trace.start("add.scan");
+        StatusCache working = StatusCache.load();
+        Branch head = WorkingDirectory.readHead();
+        Branch branch = Branch.readBranch(head.getBranchPointer().getName());
+        HashMap<String, String> currentSnap =
+                Commit.readCommit(branch).getSnapshot();
+        TreeSet<String> names = new TreeSet<String>(working.files());
+        names.addAll(SparseCheckout.local().select(currentSnap).keySet());
+        names.addAll(filesInStage.keySet());
+        working.hashAll(names);
+        span.close();
+        span = Trace.start("add.store");
+        ObjectStore store = ObjectStore.local();
+        for (String name : names) {
+            String blobSHA = working.hash(name);
+            if (blobSHA == null) {
+                filesInStage.remove(name);
+                if (currentSnap.containsKey(name)) {
+                    removedFiles.add(name);
+                }
+                continue;
+            }
+            removedFiles.remove(name);
+            if (blobSHA.equals(currentSnap.get(name))) {
+                filesInStage.remove(name);
+            } else if (!blobSHA.equals(filesInStage.get(name))
+                    || !store.containsBlob(blobSHA)) {
+                filesInStage.put(name,
+                        store.writeFile(WorkingTree.file(name)));
+            }
+        }
+        span.close();
+        saveStage();
+        working.save();
+    }
+
     /** Check if the file user wishes to add is already staged. Returns
      *  true if file is already staged. False otherwise.
      *  @param fileName : The name of the file to check.
@@ -112,4 +159,7 @@ public class StagingArea implements Serializable {
 
     /** Staging area file name. */
     private String name;
+
+    /** Version of the serialized form of the stage. */
+    private static final long serialVersionUID = -1242766952312523628L;
 }
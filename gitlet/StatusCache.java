@@ -0,0 +1,325 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** The files of the working directory and the Sha-1 Hash of their
+ *  contents, as status and add -A see them. Without a Watcher running,
+ *  every run walks the working directory and hashes every file it asks
+ *  about, as before. With one, the files and hashes found are saved in
+ *  .gitlet/watch/cache together with the position in the watcher's
+ *  journal they are current to, and the next run replays only the paths
+ *  the journal names after that position: a file is hashed again only
+ *  if it changed. Whenever the journal cannot account for every change,
+ *  because it overflowed, was started over or the watcher did not answer
+ *  in time, the working directory is walked again.
+ *  @author David Oh */
+class StatusCache {
+
+    /** A cache kept in the watch directory DIR.
+     *  @param dir : The watch directory of the repository. */
+    private StatusCache(File dir) {
+        this.dir = dir;
+    }
+
+    /** Return the files of the working directory as they are now.
+     *  @return : The cache. */
+    static StatusCache load() {
+        File dir = Utils.join(WorkingDirectory.gitDir(), Watcher.DIR);
+        StatusCache cache = new StatusCache(dir);
+        String running = Watcher.readEpoch(dir);
+        if (running != null && running.equals(readJournalEpoch(dir))) {
+            StatusCache saved = readSaved(dir);
+            boolean replay = saved != null && running.equals(saved.epoch);
+            List<String> lines = cache.sync(running,
+                    replay ? saved.offset : 0);
+            if (lines != null) {
+                cache.epoch = running;
+                if (replay && !lines.contains(OVERFLOW)) {
+                    cache.files = saved.files;
+                    cache.changed = cache.apply(lines);
+                } else {
+                    cache.changed = true;
+                }
+            }
+        }
+        if (cache.files == null) {
+            cache.files = new TreeMap<String, String>();
+            for (String name : WorkingTree.list()) {
+                cache.files.put(name, UNKNOWN);
+            }
+        }
+        return cache;
+    }
+
+    /** Return the names of the files in the working directory, leaving
+     *  out ignored files.
+     *  @return : The names, sorted. */
+    Set<String> files() {
+        return files.keySet();
+    }
+
+    /** Return the Sha-1 Hash of the contents of the file NAME in the
+     *  working directory.
+     *  @param name : The name of a file, which may be ignored.
+     *  @return : The hash, or null if there is no such file. */
+    String hash(String name) {
+        String hash = files.get(name);
+        if (hash != null && !hash.equals(UNKNOWN)) {
+            return hash;
+        }
+        if (hash == null && others.containsKey(name)) {
+            return others.get(name);
+        }
+        File file = WorkingTree.file(name);
+        if (!file.isFile()) {
+            return null;
+        }
+        String computed = ObjectStore.local().getHash().hashFile(file);
+        Metrics.CACHE_MISSES.add("status", 1);
+        if (hash != null) {
+            files.put(name, computed);
+            changed = true;
+        }
+        return computed;
+    }
+
+    /** Hash each file of NAMES that has no hash yet, on a pool of
+     *  threads, so that hash() answers from the cache afterwards. Each
+     *  name counts as a hit of the status cache if its hash was known,
+     *  and a miss if it was not.
+     *  @param names : Names of files, which may be ignored or missing. */
+    void hashAll(Collection<String> names) {
+        ArrayList<String> unknown = new ArrayList<String>();
+        for (String name : names) {
+            String hash = files.get(name);
+            if (hash == null ? !others.containsKey(name)
+                    : hash.equals(UNKNOWN)) {
+                unknown.add(name);
+            }
+        }
+        Metrics.CACHE_HITS.add("status", names.size() - unknown.size());
+        Metrics.CACHE_MISSES.add("status", unknown.size());
+        final HashEngine engine = ObjectStore.local().getHash();
+        HashMap<String, String> hashes = WorkingTree.map(unknown,
+                new Utils.Function<String, String>() {
+                    @Override
+                    String apply(String name) {
+                        File file = WorkingTree.file(name);
+                        return file.isFile() ? engine.hashFile(file) : null;
+                    }
+                });
+        for (String name : unknown) {
+            String hash = hashes.get(name);
+            if (files.containsKey(name) && hash != null) {
+                files.put(name, hash);
+                changed = true;
+            } else if (!files.containsKey(name)) {
+                others.put(name, hash);
+            }
+        }
+    }
+
+    /** Save the cache for the next run, if a watcher is keeping it
+     *  current. */
+    void save() {
+        if (epoch == null || !changed) {
+            return;
+        }
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("tmp-", null, dir);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeUTF(epoch);
+                out.writeLong(offset);
+                out.writeInt(files.size());
+                for (Map.Entry<String, String> entry : files.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeUTF(entry.getValue());
+                }
+            }
+            Files.move(tmp.toPath(), Utils.join(dir, FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /** Ask the watcher to catch up by creating a cookie file, and return
+     *  the lines of the journal from START up to the watcher's answer.
+     *  @param running : The epoch of the running watcher.
+     *  @param start : Where in the journal to start reading.
+     *  @return : The lines read, or null if the watcher did not answer in
+     *  time or started its journal over. */
+    private List<String> sync(String running, long start) {
+        String cookie = Watcher.COOKIE + ProcessHandle.current().pid() + "-"
+                + System.nanoTime();
+        File cookieFile = Utils.join(dir, cookie);
+        try {
+            cookieFile.createNewFile();
+        } catch (IOException excp) {
+            return null;
+        }
+        String answer = "!cookie " + cookie;
+        File journal = Utils.join(dir, Watcher.JOURNAL);
+        ArrayList<String> lines = new ArrayList<String>();
+        long position = start;
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+        long waitStart = System.nanoTime();
+        try {
+            while (true) {
+                try (RandomAccessFile in = new RandomAccessFile(journal,
+                        "r")) {
+                    if (in.length() < position) {
+                        return null;
+                    }
+                    byte[] bytes = new byte[(int) (in.length() - position)];
+                    in.seek(position);
+                    in.readFully(bytes);
+                    int lineStart = 0;
+                    for (int i = 0; i < bytes.length; i += 1) {
+                        if (bytes[i] != '\n') {
+                            continue;
+                        }
+                        String line = new String(bytes, lineStart,
+                                i - lineStart, StandardCharsets.UTF_8);
+                        lines.add(line);
+                        lineStart = i + 1;
+                        if (line.equals(answer)) {
+                            offset = position + lineStart;
+                            return running.equals(readJournalEpoch(dir))
+                                    ? lines : null;
+                        }
+                    }
+                    position += lineStart;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    return null;
+                }
+                Thread.sleep(1);
+            }
+        } catch (IOException | InterruptedException excp) {
+            return null;
+        } finally {
+            cookieFile.delete();
+            Metrics.WATCHER_SYNC.observe("", System.nanoTime() - waitStart);
+        }
+    }
+
+    /** Bring the files under every path named in LINES up to date.
+     *  When LINES name no paths, the saved cache is left as it is, with
+     *  its older position, and the next run reads those lines again.
+     *  @param lines : Lines of the journal.
+     *  @return : True if LINES named any path. */
+    private boolean apply(List<String> lines) {
+        TreeSet<String> dirty = new TreeSet<String>();
+        for (String line : lines) {
+            if (!line.startsWith("!")) {
+                dirty.add(line);
+            }
+        }
+        for (String name : dirty) {
+            files.remove(name);
+            files.subMap(name + "/", name + (char) ('/' + 1)).clear();
+            for (String file : WorkingTree.list(name)) {
+                files.put(file, UNKNOWN);
+            }
+        }
+        return !dirty.isEmpty();
+    }
+
+    /** Return the epoch named on the first line of the journal in DIR.
+     *  @param dir : The watch directory.
+     *  @return : The epoch, or null if there is no journal. */
+    private static String readJournalEpoch(File dir) {
+        File journal = Utils.join(dir, Watcher.JOURNAL);
+        try (RandomAccessFile in = new RandomAccessFile(journal, "r")) {
+            String line = in.readLine();
+            if (line == null || !line.startsWith("epoch ")) {
+                return null;
+            }
+            return line.substring("epoch ".length());
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return the cache saved in DIR.
+     *  @param dir : The watch directory.
+     *  @return : The cache, or null if there is none. */
+    private static StatusCache readSaved(File dir) {
+        File file = Utils.join(dir, FILE);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            StatusCache saved = new StatusCache(dir);
+            saved.epoch = in.readUTF();
+            saved.offset = in.readLong();
+            saved.files = new TreeMap<String, String>();
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                saved.files.put(in.readUTF(), in.readUTF());
+            }
+            return saved;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Name of the cache file in the watch directory. */
+    static final String FILE = "cache";
+
+    /** The hash of a file not hashed since it last changed. */
+    private static final String UNKNOWN = "";
+
+    /** The journal line recording lost events. */
+    private static final String OVERFLOW = "!overflow";
+
+    /** Milliseconds to wait for the watcher to answer a cookie. */
+    static final long SYNC_TIMEOUT = 2000;
+
+    /** The watch directory. */
+    private final File dir;
+
+    /** The epoch of the journal this cache is current to, or null if no
+     *  watcher keeps it current. */
+    private String epoch;
+
+    /** The position in the journal this cache is current to. */
+    private long offset;
+
+    /** The files of the working directory and their hashes, UNKNOWN for
+     *  a file not hashed yet. */
+    private TreeMap<String, String> files;
+
+    /** Hashes of files that are not in FILES, because they are ignored
+     *  or missing (null), found by hashAll() for this run only. */
+    private final HashMap<String, String> others =
+            new HashMap<String, String>();
+
+    /** True if the cache differs from the one saved. */
+    private boolean changed;
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Timing of the phases of a command. A phase is a Span, started with
+ *  start(NAME) and closed when the phase ends; spans started while another
+ *  is open on the same thread are nested in it. A span measures wall
+ *  time, CPU time of the whole process, bytes read and written by gitlet
+ *  and objects deserialized while it is open, its children's included.
+ *
+ *  With GITLET_TRACE=1 in the environment each span is printed to
+ *  standard error as one line of JSON when it closes, children before
+ *  their parents. When the JVM runs a flight recording, as with
+ *  -XX:StartFlightRecording, each span is also committed as a gitlet.Span
+ *  event. Otherwise start() returns a span that does nothing and the
+ *  counters are not updated, so tracing costs a test of a constant.
+ *  @author David Oh */
+class Trace {
+
+    /** Return a new span named NAME, nested in the span open on this
+     *  thread.
+     *  @param name : The name of the phase, such as merge.findSplitPoint.
+     *  @return : The span, to be closed when the phase ends. */
+    static Span start(String name) {
+        if (!ON) {
+            return NONE;
+        }
+        Span span = new Span(name, OPEN.get());
+        OPEN.set(span);
+        return span;
+    }
+
+    /** Record that N bytes were read.
+     *  @param n : A number of bytes. */
+    static void read(long n) {
+        if (ON) {
+            READ.add(n);
+        }
+    }
+
+    /** Record that the whole of FILE was read.
+     *  @param file : A file. */
+    static void read(File file) {
+        if (ON) {
+            READ.add(file.length());
+        }
+    }
+
+    /** Record that FILE was written.
+     *  @param file : A file, after it is written. */
+    static void wrote(File file) {
+        if (ON) {
+            WRITTEN.add(file.length());
+        }
+    }
+
+    /** Record that an object was deserialized. */
+    static void deserialized() {
+        if (ON) {
+            OBJECTS.increment();
+        }
+    }
+
+    /** Return the CPU time used by this process so far.
+     *  @return : Nanoseconds, or 0 if the JVM cannot tell. */
+    private static long cpuTime() {
+        java.lang.management.OperatingSystemMXBean bean =
+                ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean)
+                    .getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    /** Return TEXT as a JSON string.
+     *  @param text : Any text.
+     *  @return : TEXT quoted, with quotes, backslashes and control
+     *  characters escaped. */
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < ' ') {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /** One phase of a command. */
+    static class Span implements AutoCloseable {
+
+        /** A span named NAME nested in PARENT, started now.
+         *  @param name : The name of the phase.
+         *  @param parent : The open span, or null. */
+        private Span(String name, Span parent) {
+            this.name = name;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            if (JFR) {
+                event = new SpanEvent();
+                event.begin();
+            }
+            startRead = READ.sum();
+            startWritten = WRITTEN.sum();
+            startObjects = OBJECTS.sum();
+            startCpu = cpuTime();
+            startWall = System.nanoTime();
+        }
+
+        /** The span that does nothing, used when tracing is off. */
+        private Span() {
+            name = null;
+            parent = null;
+            depth = 0;
+            closed = true;
+        }
+
+        /** End this span and report it. Closing a span closes the spans
+         *  still open inside it first; closing it again does nothing. */
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            for (Span open = OPEN.get(); open != null && open != this;
+                 open = open.parent) {
+                open.close();
+            }
+            long wall = System.nanoTime() - startWall;
+            long cpu = cpuTime() - startCpu;
+            long read = READ.sum() - startRead;
+            long written = WRITTEN.sum() - startWritten;
+            long deserialized = OBJECTS.sum() - startObjects;
+            closed = true;
+            OPEN.set(parent);
+            if (LOG) {
+                System.err.println("{\"span\":" + quote(name)
+                        + ",\"parent\":"
+                        + (parent == null ? "null" : quote(parent.name))
+                        + ",\"depth\":" + depth
+                        + ",\"wall_us\":" + wall / 1000
+                        + ",\"cpu_us\":" + cpu / 1000
+                        + ",\"bytes_read\":" + read
+                        + ",\"bytes_written\":" + written
+                        + ",\"objects\":" + deserialized + "}");
+            }
+            if (event != null) {
+                event.name = name;
+                event.parentName = parent == null ? null : parent.name;
+                event.cpuTime = cpu;
+                event.bytesRead = read;
+                event.bytesWritten = written;
+                event.objects = deserialized;
+                event.commit();
+            }
+        }
+
+        /** The name of the phase. */
+        private final String name;
+
+        /** The span this one is nested in, or null. */
+        private final Span parent;
+
+        /** The number of spans this one is nested in. */
+        private final int depth;
+
+        /** The flight recorder event, or null if none is recording. */
+        private SpanEvent event;
+
+        /** The bytes read before this span started. */
+        private long startRead;
+
+        /** The bytes written before this span started. */
+        private long startWritten;
+
+        /** The objects deserialized before this span started. */
+        private long startObjects;
+
+        /** The process CPU time when this span started, in nanoseconds. */
+        private long startCpu;
+
+        /** System.nanoTime() when this span started. */
+        private long startWall;
+
+        /** True once this span has been reported. */
+        private boolean closed;
+    }
+
+    /** A span as a flight recorder event. Its duration is the wall time
+     *  of the span. */
+    @Name("gitlet.Span")
+    @Label("Gitlet Span")
+    @Category("Gitlet")
+    @Description("A phase of a gitlet command")
+    static class SpanEvent extends Event {
+
+        /** The name of the phase. */
+        @Label("Name")
+        private String name;
+
+        /** The name of the enclosing phase, or null. */
+        @Label("Parent")
+        private String parentName;
+
+        /** The CPU time of the process during the phase. */
+        @Label("CPU Time")
+        @Timespan(Timespan.NANOSECONDS)
+        private long cpuTime;
+
+        /** The bytes gitlet read during the phase. */
+        @Label("Bytes Read")
+        @DataAmount
+        private long bytesRead;
+
+        /** The bytes gitlet wrote during the phase. */
+        @Label("Bytes Written")
+        @DataAmount
+        private long bytesWritten;
+
+        /** The objects deserialized during the phase. */
+        @Label("Objects Deserialized")
+        private long objects;
+    }
+
+    /** True if spans are printed, as GITLET_TRACE asks. */
+    static final boolean LOG = System.getenv("GITLET_TRACE") != null
+            && !System.getenv("GITLET_TRACE").isEmpty()
+            && !System.getenv("GITLET_TRACE").equals("0");
+
+    /** True if a flight recording was started with the JVM. */
+    static final boolean JFR = FlightRecorder.isInitialized();
+
+    /** True if spans are measured at all. */
+    static final boolean ON = LOG || JFR;
+
+    /** The span that does nothing. */
+    private static final Span NONE = new Span();
+
+    /** The innermost span open on each thread. */
+    private static final ThreadLocal<Span> OPEN = new ThreadLocal<Span>();
+
+    /** Bytes read from files by gitlet. */
+    private static final LongAdder READ = new LongAdder();
+
+    /** Bytes written to files by gitlet. */
+    private static final LongAdder WRITTEN = new LongAdder();
+
+    /** Objects deserialized. */
+    private static final LongAdder OBJECTS = new LongAdder();
+}
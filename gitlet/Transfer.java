@@ -0,0 +1,466 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/** Moves the history reachable from some commits out of one object store
+ *  as a single stream of pack entries, and stores such a stream in
+ *  another. The stream is a pack header followed by every blob the
+ *  receiver lacks, in full or as a delta against a blob sent before it,
+ *  then the chunk lists of chunked blobs, then the commits, oldest first,
+ *  and an empty id. Stored objects are sent as the bytes they are kept
+ *  as, so nothing is decoded and encoded again on the way.
+ *
+ *  What the receiver lacks is found by walking back from the wanted
+ *  commits and stopping at every commit the receiver has: objects only
+ *  ever arrive in a store together with all they reach, so a commit the
+ *  receiver has stands for all of its history. The receiver writes the
+ *  blobs into one new pack, checks it, and only then writes the chunk
+ *  lists and commits, parents before children, so a transfer that is cut
+ *  short leaves no commit whose history is incomplete.
+ *  @author David Oh */
+class Transfer {
+
+    /** A transfer out of FROM to a store TO.
+     *  @param from : The store sending objects.
+     *  @param to : The store receiving them, or null if every reachable
+     *  object is to be sent. */
+    Transfer(ObjectStore from, ObjectStore to) {
+        if (to != null && from.getHash() != to.getHash()) {
+            throw new GitletException("The repositories use different "
+                    + "hash algorithms.");
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    /** Add the commit ID and its history to what is sent, except for what
+     *  the receiver already has. Parents are listed before their children.
+     *  @param id : The id of a commit in the sending store. */
+    void want(String id) {
+        want(id, null);
+    }
+
+    /** Add the commit ID and the DEPTH commits closest to it in its
+     *  history, less what the receiver already has, to what is sent. The
+     *  sent commits whose parents are left behind are recorded as the edge
+     *  of a shallow history when the transfer is copied.
+     *  @param id : The id of a commit in the sending store.
+     *  @param depth : The number of generations to send, at least one. */
+    void want(String id, int depth) {
+        HashSet<String> limit = new HashSet<String>();
+        ArrayList<String> generation = new ArrayList<String>();
+        generation.add(id);
+        for (int i = 0; i < depth && !generation.isEmpty(); i += 1) {
+            ArrayList<String> next = new ArrayList<String>();
+            for (String commitID : generation) {
+                if (limit.add(commitID)) {
+                    next.addAll(from.parents(from.readCommit(commitID)));
+                }
+            }
+            generation = next;
+        }
+        want(id, limit);
+    }
+
+    /** Leave the blobs of the commits sent behind, for a receiver that
+     *  fetches them from the sender when it first reads them. */
+    void omitBlobs() {
+        omitBlobs = true;
+    }
+
+    /** Add the commit ID and its history to what is sent, except for what
+     *  the receiver already has and, if LIMIT is not null, the commits
+     *  outside LIMIT. Parents are listed before their children.
+     *  @param id : The id of a commit in the sending store.
+     *  @param limit : The commits that may be sent, or null for all. */
+    private void want(String id, HashSet<String> limit) {
+        ArrayDeque<String> stack = new ArrayDeque<String>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (listed.contains(top)) {
+                stack.pop();
+            } else if (expanded.add(top)) {
+                if (to != null && to.containsCommit(top)) {
+                    stack.pop();
+                    listed.add(top);
+                    continue;
+                }
+                Commit commit = from.readCommit(top);
+                addBlobs(commit);
+                List<String> parents = from.parents(commit);
+                if (from.isShallow(top) && (to == null
+                        || !to.containsCommit(commit.getPreviousCommit()))
+                        || cutsHistory(parents, limit)) {
+                    shallow.add(top);
+                }
+                for (int i = parents.size() - 1; i >= 0; i -= 1) {
+                    if (limit == null || limit.contains(parents.get(i))) {
+                        stack.push(parents.get(i));
+                    }
+                }
+            } else {
+                stack.pop();
+                listed.add(top);
+                commits.add(top);
+            }
+        }
+    }
+
+    /** Return true if some of PARENTS are outside LIMIT and missing from
+     *  the receiver, so that the commit they belong to ends its history
+     *  there.
+     *  @param parents : The parents of a commit being sent.
+     *  @param limit : The commits that may be sent, or null for all.
+     *  @return : A boolean. */
+    private boolean cutsHistory(List<String> parents,
+                                HashSet<String> limit) {
+        if (limit == null) {
+            return false;
+        }
+        for (String parent : parents) {
+            if (!limit.contains(parent)
+                    && (to == null || !to.containsCommit(parent))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Add the blobs of COMMIT the receiver lacks, with the chunks of
+     *  those stored in chunks, unless blobs are left behind.
+     *  @param commit : A commit being sent. */
+    private void addBlobs(Commit commit) {
+        if (omitBlobs) {
+            return;
+        }
+        for (String blobID : commit.getSnapshot().values()) {
+            if (!seenBlobs.add(blobID)
+                    || to != null && to.containsBlob(blobID)) {
+                continue;
+            }
+            ObjectStore.Chunks chunks = from.readChunks(blobID);
+            if (chunks == null) {
+                blobs.add(blobID);
+                continue;
+            }
+            for (String chunkID : chunks.getIds()) {
+                if (seenBlobs.add(chunkID)
+                        && (to == null || !to.containsBlob(chunkID))) {
+                    blobs.add(chunkID);
+                }
+            }
+            chunkLists.add(blobID);
+        }
+    }
+
+    /** Write the stream of everything wanted to STREAM, one entry at a
+     *  time. A packed blob stored as a delta is sent as one if its base
+     *  was sent before it, and in full otherwise.
+     *  @param stream : Where the stream goes; it is flushed, not closed. */
+    void send(OutputStream stream) {
+        send(stream, null);
+    }
+
+    /** Write the stream to STREAM as send(STREAM) does, recording the
+     *  offset of each entry from the start of the stream in INDEX.
+     *  @param stream : Where the stream goes; it is flushed, not closed.
+     *  @param index : The index to fill, or null.
+     *  @return : The length of the stream. */
+    long send(OutputStream stream, Pack.Index index) {
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(stream, Codec.BUFFER_SIZE));
+            Pack.writeHeader(out);
+            long position = Pack.HEADER_LENGTH;
+            HashSet<String> sent = new HashSet<String>();
+            for (String blobID : blobs) {
+                position = write(blobEntry(blobID, sent), out, position,
+                        index);
+                sent.add(blobID);
+            }
+            for (String blobID : chunkLists) {
+                position = write(from.looseEntry(blobID,
+                        from.blobFile(blobID), Pack.FULL), out, position,
+                        index);
+            }
+            for (String commitID : commits) {
+                position = write(from.looseEntry(commitID,
+                        from.commitFile(commitID), Pack.COMMIT), out,
+                        position, index);
+            }
+            out.writeUTF(Pack.END);
+            out.flush();
+            return position + 2;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Write ENTRY to OUT at POSITION, recording it in INDEX.
+     *  @param entry : The entry.
+     *  @param out : The stream.
+     *  @param position : The offset of the entry in the stream.
+     *  @param index : The index to fill, or null.
+     *  @return : The offset of the next entry.
+     *  @throws IOException : In case of problems writing. */
+    private static long write(Pack.Entry entry, DataOutputStream out,
+                              long position, Pack.Index index)
+        throws IOException {
+        entry.write(out);
+        if (index != null) {
+            index.put(entry.getID(), position);
+        }
+        return position + entry.length();
+    }
+
+    /** Return the entry to send for the blob BLOBID.
+     *  @param blobID : The Sha-1 Hash of a blob of the sending store.
+     *  @param sent : The blobs sent so far.
+     *  @return : The entry. */
+    private Pack.Entry blobEntry(String blobID, HashSet<String> sent) {
+        File file = from.blobFile(blobID);
+        if (file.isFile()) {
+            return from.looseEntry(blobID, file, Pack.FULL);
+        }
+        Pack pack = from.packFor(blobID);
+        if (pack != null) {
+            Pack.Entry entry = pack.readEntry(blobID);
+            if (entry.getBaseID() == null
+                    || sent.contains(entry.getBaseID())) {
+                return entry;
+            }
+        }
+        return Pack.Entry.encode(blobID, Pack.FULL, null,
+                from.readBlob(blobID), from.getCodec());
+    }
+
+    /** Send everything wanted straight into the receiving store, with
+     *  the sender writing into a pipe on a thread of its own while this
+     *  thread stores what it reads, so that neither side holds more than
+     *  one entry at once.
+     *  @return : The number of objects received. */
+    int copy() {
+        final PipedOutputStream out = new PipedOutputStream();
+        final RuntimeException[] failure = new RuntimeException[1];
+        final boolean[] closed = new boolean[1];
+        PipedInputStream in;
+        try {
+            in = new PipedInputStream(out, Codec.BUFFER_SIZE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    send(out);
+                    out.close();
+                } catch (IOException | RuntimeException excp) {
+                    synchronized (failure) {
+                        if (!closed[0]) {
+                            failure[0] = excp instanceof RuntimeException
+                                    ? (RuntimeException) excp
+                                    : new IllegalArgumentException(
+                                            excp.getMessage());
+                        }
+                    }
+                    try {
+                        out.close();
+                    } catch (IOException ignored) {
+                        /* The receiver sees the stream end early. */
+                    }
+                }
+            }
+        }, "gitlet-send");
+        to.addShallow(shallow);
+        sender.start();
+        RuntimeException received = null;
+        int count = 0;
+        try {
+            count = receive(to, in);
+        } catch (RuntimeException excp) {
+            received = excp;
+        }
+        synchronized (failure) {
+            closed[0] = true;
+        }
+        try {
+            in.close();
+            sender.join();
+        } catch (IOException | InterruptedException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        } else if (received != null) {
+            throw received;
+        }
+        return count;
+    }
+
+    /** Store the stream read from IN in the store TO.
+     *  @param to : The receiving store.
+     *  @param stream : A stream written by send.
+     *  @return : The number of objects received. */
+    static int receive(ObjectStore to, InputStream stream) {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(stream, Codec.BUFFER_SIZE));
+        Receiver receiver = new Receiver(to);
+        try {
+            Pack.readHeader(in);
+            for (Pack.Entry entry = Pack.Entry.read(in); entry != null;
+                 entry = Pack.Entry.read(in)) {
+                receiver.accept(entry);
+            }
+        } catch (IOException excp) {
+            receiver.abort();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (RuntimeException excp) {
+            receiver.abort();
+            throw excp;
+        }
+        return receiver.finish();
+    }
+
+    /** Stores the entries of a stream in a store as they arrive. Blobs go
+     *  into one new pack, which is finished and verified as soon as the
+     *  first chunk list or commit arrives, before that is written. */
+    static class Receiver {
+        /** A receiver storing entries in TO.
+         *  @param to : The receiving store. */
+        Receiver(ObjectStore to) {
+            this.to = to;
+            this.writer = new Pack.Writer(Utils.join(to.getRepo(),
+                    Pack.DIR));
+        }
+
+        /** Store ENTRY. A delta whose base was not received, because the
+         *  store already has it, is stored in full.
+         *  @param entry : The next entry of the stream. */
+        void accept(Pack.Entry entry) {
+            count += 1;
+            byte kind = entry.getKind();
+            if (kind == Pack.FULL || kind == Pack.DELTA) {
+                if (writer == null) {
+                    throw new IllegalArgumentException(
+                            "blob after commits in stream");
+                }
+                if (kind == Pack.DELTA
+                        && !writer.contains(entry.getBaseID())) {
+                    entry = Pack.Entry.encode(entry.getID(), Pack.FULL,
+                            null, Delta.apply(to.readBlob(entry.getBaseID()),
+                                    entry.decode()), to.getCodec());
+                }
+                writer.writeEntry(entry);
+                return;
+            }
+            finishPack();
+            if (kind == Pack.COMMIT) {
+                to.writeEntry(to.commitFile(entry.getID()), entry);
+                commits.add(entry.getID());
+            } else {
+                to.writeEntry(to.blobFile(entry.getID()), entry);
+            }
+        }
+
+        /** Finish storing the stream, adding its commits to the commit
+         *  tree of the receiving repository.
+         *  @return : The number of objects received. */
+        int finish() {
+            finishPack();
+            if (!commits.isEmpty()) {
+                CommitTree.update(to.getRepo(), commits,
+                        Collections.<String>emptyList());
+            }
+            return count;
+        }
+
+        /** Give up on the stream, deleting the pack if it is unfinished. */
+        void abort() {
+            if (writer != null) {
+                writer.abort();
+                writer = null;
+            }
+        }
+
+        /** Finish the pack of received blobs and check every blob in it,
+         *  or drop it if nothing was written to it. Does nothing once the
+         *  pack is finished. */
+        private void finishPack() {
+            if (writer == null) {
+                return;
+            }
+            Pack.Writer finished = writer;
+            writer = null;
+            if (finished.size() == 0) {
+                finished.abort();
+                return;
+            }
+            Pack pack = new Pack(finished.finish());
+            if (Pack.verify(to, pack) < 0) {
+                throw new GitletException("Received objects do not match "
+                        + "their ids; nothing was stored.");
+            }
+            to.reloadPacks();
+        }
+
+        /** The receiving store. */
+        private final ObjectStore to;
+
+        /** The writer of the pack of blobs, or null once it is finished. */
+        private Pack.Writer writer;
+
+        /** The commits received. */
+        private final ArrayList<String> commits = new ArrayList<String>();
+
+        /** The number of entries received. */
+        private int count;
+    }
+
+    /** The store sending objects. */
+    private final ObjectStore from;
+
+    /** The store receiving them, or null. */
+    private final ObjectStore to;
+
+    /** The commits to send, parents first. */
+    private final ArrayList<String> commits = new ArrayList<String>();
+
+    /** The commits whose parents have been pushed onto the walk. */
+    private final HashSet<String> expanded = new HashSet<String>();
+
+    /** The commits the walk is done with, sent or not. */
+    private final HashSet<String> listed = new HashSet<String>();
+
+    /** The blobs and chunks to send, newest commit first, so that the base
+     *  of a packed delta usually goes before it. */
+    private final LinkedHashSet<String> blobs = new LinkedHashSet<String>();
+
+    /** The blobs stored in chunks whose chunk lists are sent. */
+    private final ArrayList<String> chunkLists = new ArrayList<String>();
+
+    /** The commits sent whose history ends at them. */
+    private final ArrayList<String> shallow = new ArrayList<String>();
+
+    /** Whether blobs are left behind. */
+    private boolean omitBlobs;
+
+    /** Every blob looked at so far. */
+    private final HashSet<String> seenBlobs = new HashSet<String>();
+}
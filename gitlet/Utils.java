@@ -13,9 +13,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
 
 
@@ -30,27 +28,26 @@ class Utils {
     static final int UID_LENGTH = 40;
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
-     *  be any mixture of byte arrays and Strings. */
+     *  be any mixture of byte arrays and Strings. The digest is the
+     *  calling thread's own, reused from call to call. Objects are named
+     *  with their repository's HashEngine, which may not be SHA-1. */
     static String sha1(Object... vals) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-1");
-            for (Object val : vals) {
-                if (val instanceof byte[]) {
-                    md.update((byte[]) val);
-                } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
-                } else {
-                    throw new IllegalArgumentException("improper type to sha1");
-                }
-            }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
+        MessageDigest md = HashEngine.SHA1.threadDigest();
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+                Metrics.HASHED_BYTES.add(((byte[]) val).length);
+            } else if (val instanceof String) {
+                byte[] bytes = ((String) val).getBytes(
+                        StandardCharsets.UTF_8);
+                md.update(bytes);
+                Metrics.HASHED_BYTES.add(bytes.length);
+            } else {
+                md.reset();
+                throw new IllegalArgumentException("improper type to sha1");
             }
-            return result.toString();
-        } catch (NoSuchAlgorithmException excp) {
-            throw new IllegalArgumentException("System does not support SHA-1");
         }
+        return HashEngine.hex(md.digest());
     }
 
     /** Returns the SHA-1 hash of the concatenation of the strings in
@@ -94,7 +91,9 @@ class Utils {
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
-            return Files.readAllBytes(file.toPath());
+            byte[] contents = Files.readAllBytes(file.toPath());
+            Trace.read(contents.length);
+            return contents;
         } catch (IOException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -127,6 +126,7 @@ class Utils {
                 }
             }
             str.close();
+            Trace.wrote(file);
         } catch (IOException | ClassCastException excp) {
             throw new IllegalArgumentException(excp.getMessage());
         }
@@ -141,6 +141,8 @@ class Utils {
                 new ObjectInputStream(new FileInputStream(file));
             T result = expectedClass.cast(in.readObject());
             in.close();
+            Trace.read(file);
+            Trace.deserialized();
             return result;
         } catch (IOException | ClassCastException
                  | ClassNotFoundException excp) {
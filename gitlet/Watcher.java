@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/** Watches the working directory and appends the path of every file or
+ *  directory that changes to a journal, .gitlet/watch/journal, so status
+ *  and add -A can look at only the paths that changed instead of hashing
+ *  every file. The journal starts with a line naming its epoch, which
+ *  changes each time a watcher starts or the journal is started over, so
+ *  a reader knows when positions it saved no longer apply. A line
+ *  "!overflow" means events were lost and every path must be examined.
+ *
+ *  A reader cannot tell from the journal alone whether the events of its
+ *  own latest changes have been written yet, since the kernel delivers
+ *  them a little later. It therefore creates a cookie file in the watch
+ *  directory and waits for the watcher to write "!cookie NAME": events
+ *  arrive in order, so every change made before the cookie is in the
+ *  journal by then.
+ *  @author David Oh */
+class Watcher {
+
+    /** A watcher of the working directory writing to the journal in
+     *  DIR.
+     *  @param dir : The watch directory of the repository. */
+    Watcher(File dir) {
+        this.dir = dir;
+        this.root = WorkingDirectory.cwd().toPath().toAbsolutePath()
+                .normalize();
+        this.dirPath = dir.toPath().toAbsolutePath().normalize();
+    }
+
+    /** Watch the working directory until stopped, or stop the watcher
+     *  that is running. Used for the watch [--stop] command.
+     *  @param args : The arguments of the watch command. */
+    static void watch(String[] args) {
+        File dir = Utils.join(WorkingDirectory.gitDir(), DIR);
+        if (args.length == 2) {
+            if (readEpoch(dir) == null) {
+                throw new GitletException("No watcher is running.");
+            }
+            Utils.join(dir, STATE).delete();
+            return;
+        }
+        if (isRunning(dir)) {
+            throw new GitletException("A watcher is already running.");
+        }
+        dir.mkdirs();
+        new Watcher(dir).run();
+    }
+
+    /** Return the epoch of the running watcher.
+     *  @param dir : The watch directory of the repository.
+     *  @return : The epoch, or null if no watcher is running. */
+    static String readEpoch(File dir) {
+        File state = Utils.join(dir, STATE);
+        if (!state.isFile() || System.currentTimeMillis()
+                - state.lastModified() > STALE_AFTER) {
+            return null;
+        }
+        try {
+            return Utils.readContentsAsString(state);
+        } catch (IllegalArgumentException excp) {
+            return null;
+        }
+    }
+
+    /** Return true if a watcher is running in DIR.
+     *  @param dir : The watch directory of the repository.
+     *  @return : A boolean. */
+    static boolean isRunning(File dir) {
+        return readEpoch(dir) != null;
+    }
+
+    /** Register the working directory, start the journal and write the
+     *  paths of changes to it until the state file is removed. */
+    void run() {
+        try (WatchService service = FileSystems.getDefault()
+                .newWatchService()) {
+            this.service = service;
+            registerAll();
+            startJournal();
+            try {
+                loop();
+            } finally {
+                journal.close();
+            }
+        } catch (IOException excp) {
+            Utils.join(dir, STATE).delete();
+            throw new GitletException("Cannot watch the working directory: "
+                    + excp.getMessage());
+        } catch (InterruptedException excp) {
+            Utils.join(dir, STATE).delete();
+        }
+    }
+
+    /** Write events to the journal until the state file no longer holds
+     *  this watcher's epoch, touching the state file every HEARTBEAT
+     *  milliseconds so readers know the watcher is alive.
+     *  @throws IOException : In case of problems writing.
+     *  @throws InterruptedException : If interrupted while waiting. */
+    private void loop() throws IOException, InterruptedException {
+        File state = Utils.join(dir, STATE);
+        long beat = System.currentTimeMillis();
+        while (true) {
+            WatchKey key = service.poll(HEARTBEAT, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                handle(key);
+                journal.flush();
+            }
+            long now = System.currentTimeMillis();
+            if (now - beat >= HEARTBEAT) {
+                if (!state.isFile() || !epoch.equals(
+                        Utils.readContentsAsString(state))) {
+                    return;
+                }
+                state.setLastModified(now);
+                beat = now;
+                if (written > JOURNAL_LIMIT) {
+                    journal.close();
+                    startJournal();
+                }
+            }
+        }
+    }
+
+    /** Write the events of KEY to the journal.
+     *  @param key : A key with pending events.
+     *  @throws IOException : In case of problems writing. */
+    private void handle(WatchKey key) throws IOException {
+        Path watched = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || watched == null) {
+                write("!overflow");
+                continue;
+            }
+            Path path = watched.resolve((Path) event.context());
+            if (watched.equals(dirPath)) {
+                cookie(path, event);
+                continue;
+            }
+            String name = name(path);
+            if (name.equals(IgnoreMatcher.FILE)) {
+                registerAll();
+                write("!overflow");
+                return;
+            }
+            boolean isDir = Files.isDirectory(path);
+            if (isDir && event.kind() == StandardWatchEventKinds.ENTRY_MODIFY
+                    || ignore.ignored(name, path.getFileName().toString(),
+                            isDir)) {
+                continue;
+            }
+            if (isDir && event.kind()
+                    == StandardWatchEventKinds.ENTRY_CREATE) {
+                registerTree(path);
+            }
+            write(name);
+        }
+        if (!key.reset()) {
+            keys.remove(key);
+        }
+    }
+
+    /** Acknowledge a cookie file created in the watch directory.
+     *  @param path : A file in the watch directory.
+     *  @param event : The event on it.
+     *  @throws IOException : In case of problems writing. */
+    private void cookie(Path path, WatchEvent<?> event) throws IOException {
+        String name = path.getFileName().toString();
+        if (name.startsWith(COOKIE)
+                && event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+            write("!cookie " + name);
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /** Read .gitletignore and register the watch directory and every
+     *  directory of the working tree that is not ignored, dropping the
+     *  directories registered before.
+     *  @throws IOException : In case of problems registering. */
+    private void registerAll() throws IOException {
+        for (WatchKey key : keys.keySet()) {
+            key.cancel();
+        }
+        keys.clear();
+        ignore = IgnoreMatcher.read(WorkingDirectory.cwd());
+        register(dirPath);
+        registerTree(root);
+    }
+
+    /** Register every directory under START that is not ignored.
+     *  @param start : A directory of the working tree.
+     *  @throws IOException : In case of problems registering. */
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path,
+                    BasicFileAttributes attrs) throws IOException {
+                if (!path.equals(root)) {
+                    String name = path.getFileName().toString();
+                    if (name.equals(".gitlet")
+                            || ignore.ignored(name(path), name, true)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                }
+                register(path);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path,
+                                                   IOException excp) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Watch the directory PATH. Registering a directory twice returns
+     *  the key it already has.
+     *  @param path : A directory.
+     *  @throws IOException : In case of problems registering. */
+    private void register(Path path) throws IOException {
+        WatchKey key = path.register(service,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, path);
+    }
+
+    /** Start a new journal under a new epoch and record the epoch in the
+     *  state file.
+     *  @throws IOException : In case of problems writing. */
+    private void startJournal() throws IOException {
+        epoch = System.currentTimeMillis() + "-"
+                + ProcessHandle.current().pid();
+        journal = new BufferedOutputStream(new FileOutputStream(
+                Utils.join(dir, JOURNAL)));
+        written = 0;
+        write("epoch " + epoch);
+        journal.flush();
+        Utils.writeContents(Utils.join(dir, STATE), epoch);
+    }
+
+    /** Append LINE to the journal.
+     *  @param line : A path or a line starting with '!'.
+     *  @throws IOException : In case of problems writing. */
+    private void write(String line) throws IOException {
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        journal.write(bytes);
+        written += bytes.length;
+    }
+
+    /** Return the name of PATH in the working tree.
+     *  @param path : An absolute path under the working directory.
+     *  @return : Its slash-separated name. */
+    private String name(Path path) {
+        return root.relativize(path).toString()
+                .replace(File.separatorChar, '/');
+    }
+
+    /** Name of the watch directory in .gitlet. */
+    static final String DIR = "watch";
+
+    /** Name of the journal in the watch directory. */
+    static final String JOURNAL = "journal";
+
+    /** Name of the file holding the running watcher's epoch. */
+    static final String STATE = "state";
+
+    /** Prefix of cookie files. */
+    static final String COOKIE = "cookie-";
+
+    /** Milliseconds between touches of the state file. */
+    static final long HEARTBEAT = 1000;
+
+    /** A state file untouched for this many milliseconds belongs to a
+     *  watcher that has died. */
+    static final long STALE_AFTER = 5 * HEARTBEAT;
+
+    /** Size in bytes past which the journal is started over. */
+    static final long JOURNAL_LIMIT = 16L << 20;
+
+    /** The watch directory. */
+    private final File dir;
+
+    /** The working directory, absolute. */
+    private final Path root;
+
+    /** The watch directory, absolute. */
+    private final Path dirPath;
+
+    /** The service delivering events. */
+    private WatchService service;
+
+    /** The directory watched by each key. */
+    private final HashMap<WatchKey, Path> keys =
+            new HashMap<WatchKey, Path>();
+
+    /** The patterns of .gitletignore. */
+    private IgnoreMatcher ignore;
+
+    /** The current epoch. */
+    private String epoch;
+
+    /** The journal being written. */
+    private OutputStream journal;
+
+    /** Bytes written to the journal in this epoch. */
+    private long written;
+}
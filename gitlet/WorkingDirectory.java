@@ -1,9 +1,10 @@
 package gitlet;
 
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
-import java.util.List;
 import java.util.HashSet;
 import java.util.Arrays;
 import java.util.ArrayList;
@@ -16,15 +17,17 @@ public abstract class WorkingDirectory {
 
     /** Initializes a new Gitlet version-control system in the current
      *  repository. Creates a directory called .gitlet in which all the
-     *  necessary Gitlet files and directories will be stored.*/
-    public static void init() {
-        if (!REPO.exists()) {
-            if (!REFS.exists()) {
-                REFS.mkdirs();
-            }
-            if (!COMMITS.exists()) {
-                COMMITS.mkdir();
-            }
+     *  necessary Gitlet files and directories will be stored.
+     *  @param hash : The hash engine the repository's objects are named
+     *  by. */
+    public static void init(HashEngine hash) {
+        File repo = repo();
+        if (!repo.exists()) {
+            Utils.join(repo, "commits").mkdirs();
+            Config config = new Config();
+            config.setLayout(Config.FANOUT_LAYOUT);
+            config.setHash(hash);
+            config.saveConfig(repo);
             StagingArea stage = new StagingArea();
             stage.saveStage();
             Commit initialCommit = new Commit();
@@ -32,34 +35,35 @@ public abstract class WorkingDirectory {
             Branch master = new Branch("master", initialCommit);
             Branch head = new Branch("HEAD", master);
             saveHead(head);
-            saveBranch(master);
-            saveHead(head);
+            saveBranch(master, "commit (initial): "
+                    + initialCommit.getMessage());
         } else {
             throw new GitletException("A Gitlet version-control system already "
                     + "exists in the current directory.");
         }
     }
 
-    /** Save the head pointer to disk in the .gitlet directory.
-     *  @param headPointer : The branch that head points to. */
+    /** Point HEAD at the branch the head pointer points to. Nothing is
+     *  written unless that is a different branch.
+     *  @param headPointer : The head pointer. */
     static void saveHead(Branch headPointer) {
-        Utils.writeObject(Utils.join(WorkingDirectory.REPO,
-                headPointer.getName()), headPointer);
+        Refs.local().setHead(headPointer.getBranchPointer().getName());
     }
 
     /** Read the head pointer from disk located in the .gitlet directory.
-     *  @return : The branch that the head pointer points at. */
+     *  @return : The head pointer, pointing at a copy of the current
+     *  branch. */
     static Branch readHead() {
-        File headFile = Utils.join(WorkingDirectory.REPO, "HEAD");
-        Branch head = Utils.readObject(headFile, Branch.class);
-        return head;
+        Refs refs = Refs.local();
+        String name = refs.headName();
+        return new Branch(Refs.HEAD, new Branch(name, refs.get(name)));
     }
 
-    /** Save the branch to disk in the refs directory.
-     *  @param branch : The branch to save. */
-    static void saveBranch(Branch branch) {
-        Utils.writeObject(Utils.join(WorkingDirectory.REFS, branch.getName()),
-                branch);
+    /** Save the branch, logging MESSAGE in its reflog if it moved.
+     *  @param branch : The branch to save.
+     *  @param message : Why it moved, such as "commit: MSG". */
+    static void saveBranch(Branch branch, String message) {
+        Refs.local().update(branch.getName(), branch.getCommitID(), message);
     }
 
     /** Creates a new branch with the given name and points it at the
@@ -68,25 +72,20 @@ public abstract class WorkingDirectory {
     static void createBranch(String branchName) {
         Branch head = WorkingDirectory.readHead();
         Branch headBranch = head.getBranchPointer();
-        File branchFile = Utils.join(WorkingDirectory.REFS, branchName);
-        if (branchFile.exists()) {
+        if (Refs.local().get(branchName) != null) {
             throw new GitletException("A branch with that name already"
                     + " exists.");
         }
-        Commit currentCommit = Commit.readCommit(headBranch.getCommitID());
-        Branch newBranch = new Branch(branchName, currentCommit);
-        saveHead(head);
-        saveBranch(newBranch);
+        Branch newBranch = new Branch(branchName, headBranch.getCommitID());
+        saveBranch(newBranch, "branch: Created from HEAD");
     }
 
     /** Delete the branch with the given name.
      *  @param branchName : The name of the branch. */
     static void deleteBranch(String branchName) {
         Branch head = WorkingDirectory.readHead();
-        Branch branchHead = Branch.readBranch(
-                head.getBranchPointer().getName());
-        File branchFile = Utils.join(WorkingDirectory.REFS, branchName);
-        if (!branchFile.exists()) {
+        Branch branchHead = head.getBranchPointer();
+        if (Refs.local().get(branchName) == null) {
             throw new GitletException("A branch with that name does not"
                     + " exist.");
         } else {
@@ -94,8 +93,8 @@ public abstract class WorkingDirectory {
                 throw new GitletException("Cannot remove the current "
                         + "branch.");
             } else {
-                saveHead(head);
-                branchFile.delete();
+                Worktree.checkNotCheckedOut(branchName);
+                Refs.local().delete(branchName);
             }
         }
     }
@@ -106,6 +105,7 @@ public abstract class WorkingDirectory {
      *  Working Directory.
      *  @param fileName : The name of the file user wishes to remove. */
     static void rm(String fileName) {
+        fileName = WorkingTree.normalize(fileName);
         StagingArea stage = StagingArea.readStage();
         Branch head = WorkingDirectory.readHead();
         Branch branch = Branch.readBranch(head.getBranchPointer().getName());
@@ -122,7 +122,7 @@ public abstract class WorkingDirectory {
                 stage.getFilesInStage().remove(fileName);
             }
             if (currentSnap != null && currentSnap.containsKey(fileName)) {
-                Utils.restrictedDelete(fileName);
+                WorkingTree.delete(fileName);
                 stage.getRemovedFiles().add(fileName);
             }
         }
@@ -132,27 +132,24 @@ public abstract class WorkingDirectory {
     /** Display untracked files in status.
      *  @param stagedBlobs : A set of all staged blobs.
      *  @param currentSnapshot : A HashMap of all blobs in the current
-     *  commit.*/
+     *  commit.
+     *  @param filesInCWD : The files of the working directory, sorted. */
     static void printUntracked(Set<String> stagedBlobs,
-                               HashMap<String, String> currentSnapshot) {
+                               HashMap<String, String> currentSnapshot,
+                               Set<String> filesInCWD) {
         ArrayList<String> untracked = new ArrayList<String>();
-        List<String> filesInCWD = Utils.plainFilenamesIn(WorkingDirectory.CWD);
         for (String fileName : filesInCWD) {
-            File file = Utils.join(WorkingDirectory.CWD, fileName);
-            if (!file.isDirectory()) {
-                if (!stagedBlobs.contains(fileName)) {
-                    if (currentSnapshot == null) {
+            if (!stagedBlobs.contains(fileName)) {
+                if (currentSnapshot == null) {
+                    untracked.add(fileName);
+                } else {
+                    Set<String> blobsInCommit = currentSnapshot.keySet();
+                    if (!blobsInCommit.contains(fileName)) {
                         untracked.add(fileName);
-                    } else {
-                        Set<String> blobsInCommit = currentSnapshot.keySet();
-                        if (!blobsInCommit.contains(fileName)) {
-                            untracked.add(fileName);
-                        }
                     }
                 }
             }
         }
-        Collections.sort(untracked);
         for (String untrackedFile : untracked) {
             System.out.println(untrackedFile);
         }
@@ -168,24 +165,30 @@ public abstract class WorkingDirectory {
         Commit currentCommit = Commit.readCommit(branch);
         HashMap<String, String> currentSnapshot = currentCommit.getSnapshot();
         StagingArea stage = StagingArea.readStage();
+        Trace.Span span = Trace.start("status.scan");
+        StatusCache working = StatusCache.load();
+        SparseCheckout sparse = SparseCheckout.local();
+        HashSet<String> tracked = new HashSet<String>(
+                sparse.select(currentSnapshot).keySet());
+        tracked.addAll(stage.getFilesInStage().keySet());
+        working.hashAll(tracked);
+        span.close();
         Set<String> stagedBlobs = printBranchesStagingRemoved(branch,
-                stage, modNotStagedForCommit);
+                stage, currentSnapshot, modNotStagedForCommit, working);
         System.out.println("=== Modifications Not Staged For Commit ===");
         if (currentSnapshot != null) {
             Set<String> blobsInCommit = currentSnapshot.keySet();
             Iterator blobInCommitIter = blobsInCommit.iterator();
             while (blobInCommitIter.hasNext()) {
                 String blobName = (String) blobInCommitIter.next();
-                if (!stagedBlobs.contains(blobName)) {
-                    File blobFile = Utils.join(WorkingDirectory.CWD, blobName);
-                    if (blobFile.exists()) {
-                        byte[] blob = Utils.readContents(blobFile);
-                        String blobSHA = Utils.sha1(blob);
+                if (!stagedBlobs.contains(blobName)
+                        && sparse.includes(blobName)) {
+                    String blobSHA = working.hash(blobName);
+                    if (blobSHA != null) {
                         if (!blobSHA.equals(currentSnapshot.get(blobName))) {
                             modNotStagedForCommit.add(blobName + " (modified)");
                         }
-                    } else if (!stage.getRemovedFiles().contains(blobName)
-                            && !blobFile.exists()) {
+                    } else if (!stage.getRemovedFiles().contains(blobName)) {
                         modNotStagedForCommit.add(blobName + " (deleted)");
                     }
                 }
@@ -198,22 +201,28 @@ public abstract class WorkingDirectory {
         }
         System.out.println();
         System.out.println("=== Untracked Files ===");
-        printUntracked(stagedBlobs, currentSnapshot);
+        printUntracked(stagedBlobs, currentSnapshot, working.files());
         System.out.println();
         stage.saveStage();
+        working.save();
     }
 
     /** Helper function prints the branches, removed files, and staging area.
+     *  A staged file that matches a file staged for removal is shown as a
+     *  rename of that file.
      *  @param branch : The current branch.
      *  @param stage : The staging area.
+     *  @param currentSnapshot : A HashMap of all blobs in the current
+     *  commit.
      *  @param modNotStagedForCommit : A Set of file names that are modified
      *  but not staged for commit.
+     *  @param working : The files of the working directory.
      *  @return : A set of blobs. */
     static Set<String> printBranchesStagingRemoved(Branch branch,
-            StagingArea stage, ArrayList<String> modNotStagedForCommit) {
+            StagingArea stage, HashMap<String, String> currentSnapshot,
+            ArrayList<String> modNotStagedForCommit, StatusCache working) {
         System.out.println("=== Branches ===");
-        List<String> branches = Utils.plainFilenamesIn(WorkingDirectory.REFS);
-        Iterator branchIter = branches.iterator();
+        Iterator branchIter = Refs.local().branches().keySet().iterator();
         while (branchIter.hasNext()) {
             String branchName = (String) branchIter.next();
             if (branch.getName().equals(branchName)) {
@@ -225,15 +234,33 @@ public abstract class WorkingDirectory {
         System.out.println();
         System.out.println("=== Staged Files ===");
         Set<String> stagedBlobs = stage.getFilesInStage().keySet();
+        HashMap<String, String> removed = new HashMap<String, String>();
+        for (String removedFile : stage.getRemovedFiles()) {
+            if (currentSnapshot.containsKey(removedFile)) {
+                removed.put(removedFile, currentSnapshot.get(removedFile));
+            }
+        }
+        HashMap<String, String> added = new HashMap<String, String>();
+        for (String stagedFile : stagedBlobs) {
+            if (!currentSnapshot.containsKey(stagedFile)) {
+                added.put(stagedFile, stage.getFilesInStage().get(stagedFile));
+            }
+        }
+        Map<String, String> renames = RenameDetector.detect(removed, added,
+                RenameDetector.repoContents(removed),
+                RenameDetector.repoContents(added));
         Object[] stagedArray = stage.getFilesInStage().keySet().toArray();
         Arrays.sort(stagedArray);
         for (Object blob : stagedArray) {
             String blobName = (String) blob;
-            System.out.println(blobName);
-            File blobFile = Utils.join(WorkingDirectory.CWD, blobName);
-            if (blobFile.exists()) {
-                byte[] blobContent = Utils.readContents(blobFile);
-                String blobInWorkingDirSha = Utils.sha1(blobContent);
+            if (renames.containsKey(blobName)) {
+                System.out.println(blobName + " (renamed from "
+                        + renames.get(blobName) + ")");
+            } else {
+                System.out.println(blobName);
+            }
+            String blobInWorkingDirSha = working.hash(blobName);
+            if (blobInWorkingDirSha != null) {
                 if (!blobInWorkingDirSha.equals(
                         stage.getFilesInStage().get(blobName))) {
                     modNotStagedForCommit.add(blobName + " (modified)");
@@ -257,7 +284,7 @@ public abstract class WorkingDirectory {
      *  one.
      *  @param fileName : the arguments of checkout command.*/
     static void checkout(String[] fileName) {
-        String name = fileName[2];
+        String name = WorkingTree.normalize(fileName[2]);
         Branch head = readHead();
         Branch branch = head.getBranchPointer();
         Commit currentCommit = Commit.readCommit(branch.getCommitID());
@@ -265,9 +292,7 @@ public abstract class WorkingDirectory {
         if (!currentSnap.containsKey(name)) {
             throw new GitletException("File does not exist in that commit.");
         } else {
-            String blobSha = currentSnap.get(name);
-            byte[] blob = readBlobFromRepo(blobSha);
-            saveBlobToCWD(name, blob);
+            WorkingTree.write(name, currentSnap.get(name));
         }
     }
 
@@ -275,32 +300,14 @@ public abstract class WorkingDirectory {
      *  @param commitID : The Sha-1 hash of the commit.
      *  @param fileName : The file name in the given commit's snapshot. */
     static void checkout(String commitID, String fileName) {
-        File commitTreeFile = Utils.join(WorkingDirectory.REPO,
-                "commitTree");
-        CommitTree commitTree = Utils.readObject(commitTreeFile,
-                CommitTree.class);
-        Iterator iter = commitTree.getAllCommits().iterator();
-        boolean commitIDFound = false;
-        boolean keepLooking = true;
-        while (iter.hasNext() && keepLooking) {
-            String commitSha = (String) iter.next();
-            Commit commit = Commit.readCommit(commitSha);
-            if (commit.getSha1().contains(commitID)) {
-                commitIDFound = true;
-                keepLooking = false;
-                HashMap<String, String> currentSnap = commit.getSnapshot();
-                if (!currentSnap.containsKey(fileName)) {
-                    throw new GitletException("File does not exist in that"
-                            + " commit.");
-                } else {
-                    String blobSha = currentSnap.get(fileName);
-                    byte[] blob = readBlobFromRepo(blobSha);
-                    saveBlobToCWD(fileName, blob);
-                }
-            }
-        }
-        if (!commitIDFound) {
-            throw new GitletException("No commit with that id exists.");
+        fileName = WorkingTree.normalize(fileName);
+        Commit commit = Commit.findCommit(commitID);
+        HashMap<String, String> currentSnap = commit.getSnapshot();
+        if (currentSnap == null || !currentSnap.containsKey(fileName)) {
+            throw new GitletException("File does not exist in that"
+                    + " commit.");
+        } else {
+            WorkingTree.write(fileName, currentSnap.get(fileName));
         }
     }
 
@@ -315,6 +322,7 @@ public abstract class WorkingDirectory {
             throw new GitletException("No need to checkout the current"
                     + " branch.");
         }
+        Worktree.checkNotCheckedOut(branchName);
         Commit currentCommit = Commit.readCommit(headBranch.getCommitID());
         HashMap<String, String> currentSnap = currentCommit.getSnapshot();
         if (currentSnap == null) {
@@ -322,18 +330,17 @@ public abstract class WorkingDirectory {
         }
         Commit checkedOutCommit = Commit.readCommit(branch.getCommitID());
         HashMap<String, String> checkedOutSnap = checkedOutCommit.getSnapshot();
-
+        Trace.Span span = Trace.start("checkout.files");
         Set<String> currentBlobs = currentSnap.keySet();
         if (checkedOutSnap == null) {
             for (String trackedBlob : currentBlobs) {
-                File trackedBlobFile = Utils.join(WorkingDirectory.CWD,
-                        trackedBlob);
-                Utils.restrictedDelete(trackedBlobFile);
+                WorkingTree.delete(trackedBlob);
             }
         } else {
-            Set<String> checkedOutBlobs = checkedOutSnap.keySet();
+            Set<String> checkedOutBlobs = SparseCheckout.local()
+                    .select(checkedOutSnap).keySet();
             for (String checkedOutBlob : checkedOutBlobs) {
-                File workingFile = Utils.join(WorkingDirectory.CWD,
+                File workingFile = Utils.join(WorkingDirectory.cwd(),
                         checkedOutBlob);
                 if (workingFile.exists()
                         && !currentSnap.containsKey(checkedOutBlob)) {
@@ -342,23 +349,20 @@ public abstract class WorkingDirectory {
                 }
             }
             for (String trackedBlob : currentBlobs) {
-                if (!checkedOutSnap.containsKey(trackedBlob)) {
-                    File trackedBlobFile = Utils.join(WorkingDirectory.CWD,
-                            trackedBlob);
-                    Utils.restrictedDelete(trackedBlobFile);
+                if (!checkedOutBlobs.contains(trackedBlob)) {
+                    WorkingTree.delete(trackedBlob);
                 }
             }
             Iterator blobIter = checkedOutSnap.keySet().iterator();
             while (blobIter.hasNext()) {
                 String blobName = (String) blobIter.next();
                 String blobSha = checkedOutSnap.get(blobName);
-                byte[] blob = readBlobFromRepo(blobSha);
-                saveBlobToCWD(blobName, blob);
+                saveBlobToCWD(blobName, blobSha);
             }
         }
+        span.close();
         head.setBranchPointer(branch);
         saveHead(head);
-        saveBranch(branch);
         StagingArea stage = StagingArea.readStage();
         stage.getFilesInStage().clear();
         stage.getRemovedFiles().clear();
@@ -369,20 +373,7 @@ public abstract class WorkingDirectory {
      *  @param commitID : The Sha-1 hash of the commit user wishes to
      *  checkout. */
     static void reset(String commitID) {
-        CommitTree commitTree = Utils.readObject(Utils.join(REPO,
-                "commitTree"),
-                CommitTree.class);
-        boolean commitFound = false;
-        Commit commit = null;
-        for (String commitSHA : commitTree.getAllCommits()) {
-            if (commitSHA.contains(commitID)) {
-                commitFound = true;
-                commit = Commit.readCommit(commitSHA);
-            }
-        }
-        if (!commitFound) {
-            throw new GitletException("No commit with that id exists.");
-        }
+        Commit commit = Commit.findCommit(commitID);
         Branch head = WorkingDirectory.readHead();
         Branch branchHead = Branch.readBranch(
                 head.getBranchPointer().getName());
@@ -394,9 +385,10 @@ public abstract class WorkingDirectory {
         } else if (commitSnap == null) {
             commitSnap = new HashMap<String, String>();
         }
-        Set<String> checkedOutBlobs = commitSnap.keySet();
+        Set<String> checkedOutBlobs = SparseCheckout.local()
+                .select(commitSnap).keySet();
         for (String checkedOutBlob : checkedOutBlobs) {
-            File workingFile = Utils.join(WorkingDirectory.CWD,
+            File workingFile = Utils.join(WorkingDirectory.cwd(),
                     checkedOutBlob);
             if (workingFile.exists()
                     && !currentSnap.containsKey(checkedOutBlob)) {
@@ -406,23 +398,18 @@ public abstract class WorkingDirectory {
         }
         Set<String> currentBlobs = currentSnap.keySet();
         for (String trackedBlob : currentBlobs) {
-            if (!commitSnap.containsKey(trackedBlob)) {
-                File trackedBlobFile = Utils.join(WorkingDirectory.CWD,
-                        trackedBlob);
-                Utils.restrictedDelete(trackedBlobFile);
+            if (!checkedOutBlobs.contains(trackedBlob)) {
+                WorkingTree.delete(trackedBlob);
             }
         }
         Iterator blobIter = commitSnap.keySet().iterator();
         while (blobIter.hasNext()) {
             String blobName = (String) blobIter.next();
             String blobSha = commitSnap.get(blobName);
-            byte[] blob = readBlobFromRepo(blobSha);
-            saveBlobToCWD(blobName, blob);
+            saveBlobToCWD(blobName, blobSha);
         }
         branchHead.setCommitID(commit.getSha1());
-        head.setBranchPointer(branchHead);
-        saveBranch(branchHead);
-        saveHead(head);
+        saveBranch(branchHead, "reset: moving to " + commitID);
         StagingArea stage = StagingArea.readStage();
         stage.getFilesInStage().clear();
         stage.getRemovedFiles().clear();
@@ -437,15 +424,14 @@ public abstract class WorkingDirectory {
                 || !stage.getRemovedFiles().isEmpty()) {
             throw new GitletException("You have uncommitted changes.");
         }
-        File branchFile = Utils.join(WorkingDirectory.REFS, branchName);
-        if (!branchFile.exists()) {
+        String givenID = Refs.local().get(branchName);
+        if (givenID == null) {
             throw new GitletException("A branch with that name does not"
                     + " exist.");
         }
-        Branch givenBranch = Utils.readObject(branchFile, Branch.class);
         Branch head = readHead();
         Branch currentBranch = head.getBranchPointer();
-        if (givenBranch.getCommitID().equals(currentBranch.getCommitID())) {
+        if (givenID.equals(currentBranch.getCommitID())) {
             throw new GitletException("Cannot merge a branch with itself.");
         }
     }
@@ -464,15 +450,10 @@ public abstract class WorkingDirectory {
                     + " current branch.");
         }
         if (splitPoint.equals(currentCommit)) {
-            currentBranch.setBranch(mergedInCommit);
-            head.setHead(currentBranch);
-            saveBranch(currentBranch);
-            saveHead(head);
+            currentBranch.setBranch(mergedInCommit, "merge: Fast-forward");
             for (String trackedBlob : currentCommit.getSnapshot().keySet()) {
                 if (!mergedInCommit.getSnapshot().containsKey(trackedBlob)) {
-                    File trackedBlobFile = Utils.join(WorkingDirectory.CWD,
-                            trackedBlob);
-                    Utils.restrictedDelete(trackedBlobFile);
+                    WorkingTree.delete(trackedBlob);
                 }
             }
             throw new GitletException("Current branch fast-forwarded.");
@@ -498,8 +479,7 @@ public abstract class WorkingDirectory {
                     && splitPointSnapshot.get(blobName).equals(
                     currentSnapshot.get(blobName))) {
                 String blobSha = givenSnapshot.get(blobName);
-                byte[] blob = readBlobFromRepo(blobSha);
-                saveBlobToCWD(blobName, blob);
+                saveBlobToCWD(blobName, blobSha);
                 stage.getFilesInStage().put(blobName, blobSha);
             }
         }
@@ -521,7 +501,7 @@ public abstract class WorkingDirectory {
                 && !givenSnapshot.containsKey(blobName)) {
             if (currentSnapshot.get(blobName).equals(
                     splitPointSnapshot.get(blobName))) {
-                Utils.restrictedDelete(blobName);
+                WorkingTree.delete(blobName);
                 stage.getRemovedFiles().add(blobName);
             }
         }
@@ -530,7 +510,7 @@ public abstract class WorkingDirectory {
                 && givenSnapshot.containsKey(blobName)) {
             if (givenSnapshot.get(blobName).equals(
                     splitPointSnapshot.get(blobName))) {
-                Utils.restrictedDelete(blobName);
+                WorkingTree.delete(blobName);
             }
         }
     }
@@ -557,8 +537,9 @@ public abstract class WorkingDirectory {
     static void checkUntracked(String blobName,
                                HashMap<String, String> currentSnapshot,
                                HashMap<String, String> givenSnapshot) {
-        File workingFile = Utils.join(WorkingDirectory.CWD, blobName);
-        if (givenSnapshot.containsKey(blobName)) {
+        File workingFile = Utils.join(WorkingDirectory.cwd(), blobName);
+        if (givenSnapshot.containsKey(blobName)
+                && SparseCheckout.local().includes(blobName)) {
             if (workingFile.exists() && !currentSnapshot.containsKey(
                     blobName)) {
                 throw new GitletException("There is an untracked file"
@@ -572,36 +553,38 @@ public abstract class WorkingDirectory {
     static void merge(String branchName) {
         checkMergeFailures(branchName);
         StagingArea stage = StagingArea.readStage();
-        File branchFile = Utils.join(WorkingDirectory.REFS, branchName);
-        Branch givenBranch = Utils.readObject(branchFile, Branch.class);
+        Branch givenBranch = Branch.readBranch(branchName);
         Commit mergedInCommit = Commit.readCommit(givenBranch.getCommitID());
         Branch head = readHead();
         Branch currentBranch = readHead().getBranchPointer();
         Commit currentCommit = Commit.readCommit(currentBranch.getCommitID());
-        HashMap<String, Integer> ancestors = new HashMap<String, Integer>();
-        findCurrentAncestors(currentCommit.getSha1(), ancestors, 0);
-        int[] min = {Integer.MAX_VALUE};
-        String[] result = {mergedInCommit.getSha1()};
-        findSplitPoints(mergedInCommit.getSha1(), ancestors, min, result);
-        Commit splitPoint = Commit.readCommit(result[0]);
+        Trace.Span span = Trace.start("merge.findSplitPoint");
+        Commit splitPoint = Commit.readCommit(findSplitPoint(
+                currentCommit.getSha1(), mergedInCommit.getSha1()));
+        span.close();
         checkMergeExceptions(head, currentBranch,
                 splitPoint, mergedInCommit, currentCommit);
         HashMap<String, String> givenSnapshot = mergedInCommit.getSnapshot();
         HashMap<String, String> currentSnapshot = currentCommit.getSnapshot();
         HashMap<String, String> splitPointSnapshot = splitPoint.getSnapshot();
         boolean encounteredMergeConflict = false;
+        span = Trace.start("merge.files");
+        HashSet<String> renamed = followRenames(splitPointSnapshot,
+                currentSnapshot, givenSnapshot, stage);
         Iterator allBlobsIter = makeSet(splitPointSnapshot,
                 currentSnapshot, givenSnapshot);
         while (allBlobsIter.hasNext()) {
             String blobName = (String) allBlobsIter.next();
+            if (renamed.contains(blobName)) {
+                continue;
+            }
             checkUntracked(blobName, currentSnapshot, givenSnapshot);
             fileInAll(blobName, splitPointSnapshot,
                     currentSnapshot, givenSnapshot, stage);
             if (!splitPointSnapshot.containsKey(blobName)
                     && givenSnapshot.containsKey((blobName))) {
                 String blobSha = givenSnapshot.get(blobName);
-                byte[] blob = readBlobFromRepo(blobSha);
-                saveBlobToCWD(blobName, blob);
+                saveBlobToCWD(blobName, blobSha);
                 stage.getFilesInStage().put(blobName, blobSha);
             }
             fileNotInOne(blobName, splitPointSnapshot,
@@ -614,16 +597,96 @@ public abstract class WorkingDirectory {
                 stage.getFilesInStage().put(blobName, newSHA1);
             }
         }
+        span.close();
         stage.saveStage();
         String message = "Merged " + givenBranch.getName()
                 + " into " + currentBranch.getName() + ".";
+        span = Trace.start("merge.commit");
         new MergeCommit(message, currentCommit.getSha1(),
                 mergedInCommit.getSha1());
+        span.close();
         if (encounteredMergeConflict) {
             System.out.println("Encountered a merge conflict.");
         }
     }
 
+    /** Carry changes across files that were renamed on one side of a merge
+     *  and modified on the other. When one side only moved a file and the
+     *  other side changed it under its old name, the changed contents are
+     *  written under the new name instead of reporting a conflict.
+     *  @param splitPointSnapshot : The snapshot of the split point commit.
+     *  @param currentSnapshot : The snapshot of the current commit.
+     *  @param givenSnapshot : The snapshot of the given commit.
+     *  @param stage : The staging area.
+     *  @return : The names of the files that were handled here. */
+    static HashSet<String> followRenames(
+            HashMap<String, String> splitPointSnapshot,
+            HashMap<String, String> currentSnapshot,
+            HashMap<String, String> givenSnapshot, StagingArea stage) {
+        HashSet<String> handled = new HashSet<String>();
+        Map<String, String> givenRenames = renamesSince(splitPointSnapshot,
+                givenSnapshot);
+        for (Map.Entry<String, String> rename : givenRenames.entrySet()) {
+            String newName = rename.getKey();
+            String oldName = rename.getValue();
+            String splitSha = splitPointSnapshot.get(oldName);
+            if (currentSnapshot.containsKey(oldName)
+                    && !currentSnapshot.containsKey(newName)
+                    && !currentSnapshot.get(oldName).equals(splitSha)
+                    && givenSnapshot.get(newName).equals(splitSha)) {
+                checkUntracked(newName, currentSnapshot, givenSnapshot);
+                String blobSha = currentSnapshot.get(oldName);
+                saveBlobToCWD(newName, blobSha);
+                stage.getFilesInStage().put(newName, blobSha);
+                WorkingTree.delete(oldName);
+                stage.getRemovedFiles().add(oldName);
+                handled.add(oldName);
+                handled.add(newName);
+            }
+        }
+        Map<String, String> currentRenames = renamesSince(
+                splitPointSnapshot, currentSnapshot);
+        for (Map.Entry<String, String> rename : currentRenames.entrySet()) {
+            String newName = rename.getKey();
+            String oldName = rename.getValue();
+            String splitSha = splitPointSnapshot.get(oldName);
+            if (givenSnapshot.containsKey(oldName)
+                    && !givenSnapshot.containsKey(newName)
+                    && !givenSnapshot.get(oldName).equals(splitSha)
+                    && currentSnapshot.get(newName).equals(splitSha)) {
+                String blobSha = givenSnapshot.get(oldName);
+                saveBlobToCWD(newName, blobSha);
+                stage.getFilesInStage().put(newName, blobSha);
+                handled.add(oldName);
+                handled.add(newName);
+            }
+        }
+        return handled;
+    }
+
+    /** Find the files renamed between two snapshots.
+     *  @param base : The earlier snapshot.
+     *  @param other : The later snapshot.
+     *  @return : The renames found, <new name, old name>. */
+    static Map<String, String> renamesSince(HashMap<String, String> base,
+                                            HashMap<String, String> other) {
+        HashMap<String, String> deleted = new HashMap<String, String>();
+        HashMap<String, String> added = new HashMap<String, String>();
+        for (String name : base.keySet()) {
+            if (!other.containsKey(name)) {
+                deleted.put(name, base.get(name));
+            }
+        }
+        for (String name : other.keySet()) {
+            if (!base.containsKey(name)) {
+                added.put(name, other.get(name));
+            }
+        }
+        return RenameDetector.detect(deleted, added,
+                RenameDetector.repoContents(base),
+                RenameDetector.repoContents(other));
+    }
+
     /** Returns true if files are modified in different ways.
      *  @param blobName : The name of the blob to check if modified.
      *  @param splitPointSnapshot : The snapshot of the split point commit.
@@ -687,6 +750,7 @@ public abstract class WorkingDirectory {
     static String replaceContents(String blobName,
                                   HashMap<String, String> currentSnapshot,
                                   HashMap<String, String> givenSnapshot) {
+        Trace.Span span = Trace.start("merge.replaceContents");
         String beginning = "<<<<<<< HEAD" + System.lineSeparator();
         String middle = "=======" + System.lineSeparator();
         String end = ">>>>>>>" + System.lineSeparator();
@@ -694,25 +758,54 @@ public abstract class WorkingDirectory {
         String contentsOfGiven = "";
         if (currentSnapshot.containsKey(blobName)) {
             String currentBlobSha = currentSnapshot.get(blobName);
-            File currentBlobFile = Utils.join(WorkingDirectory.REPO,
-                    currentBlobSha);
-            contentsOfCurrent = Utils.readContentsAsString(currentBlobFile);
+            contentsOfCurrent = new String(readBlobFromRepo(currentBlobSha),
+                    StandardCharsets.UTF_8);
         }
         if (givenSnapshot.containsKey(blobName)) {
             String givenBlobSha = givenSnapshot.get(blobName);
-            File givenBlobFile = Utils.join(WorkingDirectory.REPO,
-                    givenBlobSha);
-            contentsOfGiven = Utils.readContentsAsString(givenBlobFile);
+            contentsOfGiven = new String(readBlobFromRepo(givenBlobSha),
+                    StandardCharsets.UTF_8);
         }
         String replaced = beginning + contentsOfCurrent + middle
                 + contentsOfGiven + end;
-        File replacedFile = Utils.join(WorkingDirectory.CWD, blobName);
+        File replacedFile = WorkingTree.file(blobName);
+        replacedFile.getParentFile().mkdirs();
         Utils.writeContents(replacedFile, replaced);
         byte[] blob = StagingArea.readBlobFromCWD(blobName);
-        String blobSHA = Utils.sha1(blob);
+        String blobSHA = ObjectStore.local().getHash().hash(blob);
+        span.close();
         return blobSHA;
     }
 
+    /** Find the split point of the current commit and the given commit,
+     *  using the merge base cache when this pair has been merged before.
+     *  In a shallow clone the two histories may end before they meet, and
+     *  then there is no split point to merge from.
+     *  @param currentID : The Sha-1 Hash of the current commit.
+     *  @param givenID : The Sha-1 Hash of the commit being merged in.
+     *  @return : The Sha-1 Hash of the split point commit. */
+    static String findSplitPoint(String currentID, String givenID) {
+        MergeBaseCache cache = MergeBaseCache.readCache();
+        String cached = cache.get(currentID, givenID);
+        if (cached != null) {
+            Metrics.CACHE_HITS.add("merge-base", 1);
+            return cached;
+        }
+        Metrics.CACHE_MISSES.add("merge-base", 1);
+        HashMap<String, Integer> ancestors = new HashMap<String, Integer>();
+        findCurrentAncestors(currentID, ancestors, 0);
+        int[] min = {Integer.MAX_VALUE};
+        String[] result = {givenID};
+        findSplitPoints(givenID, ancestors, min, result);
+        if (min[0] == Integer.MAX_VALUE) {
+            throw new GitletException("Merge base is outside the shallow "
+                    + "history.");
+        }
+        cache.put(currentID, givenID, result[0]);
+        cache.saveCache();
+        return result[0];
+    }
+
     /** Find all the ancestors of the current commit. Used in the process of
      *  finding the split point. Recursive function.
      *  @param commitID : The Sha-1 Hash of the commit.
@@ -727,12 +820,8 @@ public abstract class WorkingDirectory {
         if (commitID != null || ancestors.containsKey(commitID)) {
             ancestors.put(commitID, path);
             Commit commit = Commit.readCommit(commitID);
-            findCurrentAncestors(commit.getPreviousCommit(), ancestors,
-                    path + 1);
-            if (commit instanceof MergeCommit) {
-                findCurrentAncestors(((MergeCommit) commit).
-                                getPreviousCommit2(),
-                        ancestors, path + 1);
+            for (String parent : ObjectStore.local().parents(commit)) {
+                findCurrentAncestors(parent, ancestors, path + 1);
             }
         }
     }
@@ -758,13 +847,8 @@ public abstract class WorkingDirectory {
                 result[0] = commitID;
             }
         } else {
-            if (commit.getPreviousCommit() != null) {
-                findSplitPoints(commit.getPreviousCommit(), ancestors,
-                        min, result);
-                if (commit instanceof MergeCommit) {
-                    findSplitPoints(((MergeCommit) commit).getPreviousCommit2(),
-                            ancestors, min, result);
-                }
+            for (String parent : ObjectStore.local().parents(commit)) {
+                findSplitPoints(parent, ancestors, min, result);
             }
         }
     }
@@ -775,32 +859,37 @@ public abstract class WorkingDirectory {
      *  @param blobSHA : The SHa-1 Hash of the blob to be read.
      *  @return : The byte array that is the blob's contents. */
     static byte[] readBlobFromRepo(String blobSHA) {
-        File blobFile = Utils.join(WorkingDirectory.REPO, blobSHA);
-        if (!blobFile.exists()) {
-            throw new GitletException("File does not exist.");
-        } else {
-            return Utils.readContents(blobFile);
-        }
+        return ObjectStore.local().readBlob(blobSHA);
     }
 
-    /** Write the blob into the Working Directory.
+    /** Write the blob into the Working Directory, streaming it from the
+     *  repository so that large files are never held in memory. Files the
+     *  sparse checkout leaves out are not written.
      *  @param blobName : The file name of the blob.
-     *  @param byteContent : The contents of the blob. */
-    private static void saveBlobToCWD(String blobName, byte[] byteContent) {
-        File blobFile = Utils.join(WorkingDirectory.CWD, blobName);
-        Utils.writeContents(blobFile, byteContent);
+     *  @param blobSHA : The Sha-1 Hash of the blob. */
+    private static void saveBlobToCWD(String blobName, String blobSHA) {
+        if (SparseCheckout.local().includes(blobName)) {
+            WorkingTree.write(blobName, blobSHA);
+        }
     }
 
-    /** Current working directory. */
-    static final File CWD = new File(".");
-
-    /** Our .gitlet repository. */
-    static final File REPO = Utils.join(CWD, ".gitlet");
+    /** Return the root of the current worktree.
+     *  @return : The working directory of this command. */
+    static File cwd() {
+        return Context.current().getWorkTree();
+    }
 
-    /** A folder for all the references that point to commits. */
-    static final File REFS = Utils.join(REPO, "refs");
+    /** Return the .gitlet repository, shared by every worktree.
+     *  @return : The .gitlet directory of the main worktree. */
+    static File repo() {
+        return Context.current().getRepo();
+    }
 
-    /** A folder for all commits inside the .gitlet repo. */
-    static final File COMMITS = Utils.join(REPO, "commits");
+    /** Return the directory of the state of the current worktree alone,
+     *  its HEAD, staging area and caches.
+     *  @return : The .gitlet directory, or that of a linked worktree. */
+    static File gitDir() {
+        return Context.current().getGitDir();
+    }
 
 }
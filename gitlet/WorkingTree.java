@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+/** The files of the working directory. A file is named by its path from
+ *  the working directory with a '/' between directories, as in
+ *  src/gitlet/Main.java, on every platform; these names are the keys of
+ *  the staging area and of commit snapshots.
+ *  @author David Oh */
+class WorkingTree {
+
+    /** Return the names of every plain file in the working directory and
+     *  its subdirectories, leaving out the .gitlet directory, worktrees
+     *  made inside this one and whatever .gitletignore ignores. Each
+     *  directory is listed by its own fork/join task, so a large tree is
+     *  walked on every core at once, and an ignored directory is never
+     *  opened.
+     *  @return : The names, sorted. */
+    static List<String> list() {
+        IgnoreMatcher ignore = IgnoreMatcher.read(WorkingDirectory.cwd());
+        List<String> names = ForkJoinPool.commonPool().invoke(
+                new Walk(WorkingDirectory.cwd().toPath(), "", ignore));
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Return the names of the plain files at or under NAME: NAME itself
+     *  if it is a file, the files of its subtree if it is a directory
+     *  other than a link, and none otherwise. Ignored files are left out
+     *  of a subtree, as in list(), but NAME itself is not checked, nor
+     *  are the directories above it.
+     *  @param name : The name of a file or directory.
+     *  @return : The names, sorted. */
+    static List<String> list(String name) {
+        File file = file(name);
+        BasicFileAttributes attrs = Walk.attributes(file.toPath());
+        ArrayList<String> names = new ArrayList<String>();
+        if (attrs == null) {
+            return names;
+        } else if (attrs.isDirectory()) {
+            if (!prune(file.getName())) {
+                names.addAll(ForkJoinPool.commonPool().invoke(new Walk(
+                        file.toPath(), name + "/",
+                        IgnoreMatcher.read(WorkingDirectory.cwd()))));
+                Collections.sort(names);
+            }
+        } else if (file.isFile()) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    /** Return the name of the file at PATH, given relative to the working
+     *  directory or absolute, in the form used as a key in snapshots:
+     *  relative to the working directory, with "." and ".." resolved and
+     *  '/' between directories.
+     *  @param path : A path typed by the user.
+     *  @return : The name of the file. */
+    static String normalize(String path) {
+        Path root = WorkingDirectory.cwd().toPath().toAbsolutePath()
+                .normalize();
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new GitletException("File is outside the working"
+                    + " directory.");
+        }
+        Path relative = root.relativize(file);
+        if (prune(relative.getName(0).toString())) {
+            throw new GitletException("File is outside the working"
+                    + " directory.");
+        }
+        StringBuilder name = new StringBuilder();
+        for (Path part : relative) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part.toString());
+        }
+        return name.toString();
+    }
+
+    /** Return FUNCTION applied to each of NAMES, computed on a pool of
+     *  one thread per core, for work such as hashing many files where
+     *  each file is read on its own.
+     *  @param names : Names of files.
+     *  @param function : The function, which must be safe to call from
+     *  several threads at once.
+     *  @return : The results that are not null, by name. */
+    static HashMap<String, String> map(Collection<String> names,
+            final Utils.Function<String, String> function) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        HashMap<String, Future<String>> futures =
+                new HashMap<String, Future<String>>();
+        HashMap<String, String> results = new HashMap<String, String>();
+        try {
+            for (final String name : names) {
+                futures.put(name, pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() {
+                        return function.apply(name);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<String>> entry
+                    : futures.entrySet()) {
+                String result = entry.getValue().get();
+                if (result != null) {
+                    results.put(entry.getKey(), result);
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        return results;
+    }
+
+    /** Return the file in the working directory with the given name.
+     *  @param name : The name of a file.
+     *  @return : The file. */
+    static File file(String name) {
+        return Utils.join(WorkingDirectory.cwd(), name);
+    }
+
+    /** Write the blob with the given id to the file NAME, creating the
+     *  directories it is in if needed.
+     *  @param name : The name of a file.
+     *  @param blobID : The Sha-1 Hash of the blob. */
+    static void write(String name, String blobID) {
+        File file = file(name);
+        file.getParentFile().mkdirs();
+        ObjectStore.local().copyBlob(blobID, file);
+    }
+
+    /** Delete the file NAME from the working directory, then every
+     *  directory it was in that is left empty.
+     *  @param name : The name of a file.
+     *  @return : True if the file was deleted. */
+    static boolean delete(String name) {
+        if (!WorkingDirectory.repo().isDirectory()) {
+            throw new IllegalArgumentException("not .gitlet working"
+                    + " directory");
+        }
+        File file = file(name);
+        if (file.isDirectory() || !file.delete()) {
+            return false;
+        }
+        String root = WorkingDirectory.cwd().getPath();
+        File dir = file.getParentFile();
+        while (dir != null && !dir.getPath().equals(root) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+        return true;
+    }
+
+    /** Return true if a directory named NAME is never entered, nor a
+     *  file so named listed: the .gitlet file of a linked worktree.
+     *  @param name : The last component of a path.
+     *  @return : A boolean. */
+    private static boolean prune(String name) {
+        return name.equals(".gitlet");
+    }
+
+    /** Lists one directory, forking a task for each of its
+     *  subdirectories. */
+    private static class Walk extends RecursiveTask<List<String>> {
+
+        /** A task listing DIR, whose files are named with PREFIX,
+         *  leaving out what IGNORE matches.
+         *  @param dir : The directory.
+         *  @param prefix : The name of DIR followed by '/', or "".
+         *  @param ignore : The patterns of .gitletignore. */
+        Walk(Path dir, String prefix, IgnoreMatcher ignore) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.ignore = ignore;
+        }
+
+        @Override
+        protected List<String> compute() {
+            ArrayList<String> names = new ArrayList<String>();
+            ArrayList<Walk> subdirs = new ArrayList<Walk>();
+            try (DirectoryStream<Path> entries =
+                         Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    String path = prefix + name;
+                    BasicFileAttributes attrs = attributes(entry);
+                    if (attrs == null) {
+                        continue;
+                    } else if (attrs.isDirectory()) {
+                        if (!prune(name)
+                                && !ignore.ignored(path, name, true)
+                                && !Files.exists(entry.resolve(
+                                        Context.DOT_GITLET))) {
+                            Walk walk = new Walk(entry, path + "/", ignore);
+                            walk.fork();
+                            subdirs.add(walk);
+                        }
+                    } else if ((attrs.isRegularFile()
+                            || attrs.isSymbolicLink()
+                            && Files.isRegularFile(entry))
+                            && !prune(name)
+                            && !ignore.ignored(path, name, false)) {
+                        names.add(path);
+                    }
+                }
+            } catch (NoSuchFileException excp) {
+                names.clear();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            for (Walk walk : subdirs) {
+                names.addAll(walk.join());
+            }
+            return names;
+        }
+
+        /** Return the attributes of PATH itself, not following a symbolic
+         *  link, so a link to a directory cannot lead the walk in a loop.
+         *  @param path : An entry of the directory.
+         *  @return : The attributes, or null if PATH is gone. */
+        private static BasicFileAttributes attributes(Path path) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException excp) {
+                return null;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** The directory listed. */
+        private final Path dir;
+
+        /** The name of DIR followed by '/', or "" for the working
+         *  directory. */
+        private final String prefix;
+
+        /** The patterns of .gitletignore. */
+        private final IgnoreMatcher ignore;
+
+        /** Version of the serialized form of the task, which is never
+         *  serialized but inherits Serializable from ForkJoinTask. */
+        private static final long serialVersionUID = 8875375983745806207L;
+    }
+}
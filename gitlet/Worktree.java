@@ -0,0 +1,162 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/** Linked worktrees: more working directories of one repository, each
+ *  with a branch of its own checked out, so that several branches can be
+ *  built at once without copying the repository. A linked worktree shares
+ *  the objects and branches of the main worktree, whose .gitlet directory
+ *  keeps a directory for it, .gitlet/worktrees/NAME, holding its HEAD and
+ *  staging area and a file, gitdir, naming the worktree's own .gitlet
+ *  file. A branch is checked out in at most one worktree, so no worktree
+ *  moves the branch another one is working on.
+ *  @author David Oh */
+class Worktree {
+
+    /** Add or list worktrees. Used for the worktree add [path] [branch
+     *  name] and worktree list commands.
+     *  @param args : The arguments of the worktree command. */
+    static void worktree(String[] args) {
+        if (args[1].equals("add")) {
+            add(args[2], args[3]);
+            return;
+        }
+        for (Context context : all()) {
+            Refs refs = refs(context);
+            String head = refs.headName();
+            System.out.println(absolute(context.getWorkTree()) + " "
+                    + refs.get(head).substring(0, 7) + " [" + head + "]");
+        }
+    }
+
+    /** Make a worktree in the directory PATH, which must be empty or not
+     *  exist, with the branch BRANCH checked out.
+     *  @param path : A directory, relative to the working directory unless
+     *  it is absolute.
+     *  @param branch : The name of a branch. */
+    static void add(String path, String branch) {
+        File root = new File(path);
+        if (!root.isAbsolute()) {
+            root = Utils.join(WorkingDirectory.cwd(), path);
+        }
+        root = absolute(root);
+        String[] children = root.list();
+        if (root.exists() && (children == null || children.length > 0)) {
+            throw new GitletException("That path already exists.");
+        }
+        String id = Refs.local().get(branch);
+        if (id == null) {
+            throw new GitletException("A branch with that name does not "
+                    + "exist.");
+        }
+        if (checkedOut(branch) != null) {
+            throw new GitletException("That branch is checked out in "
+                    + "another worktree.");
+        }
+        File repo = absolute(WorkingDirectory.repo());
+        File dir = Utils.join(repo, DIR);
+        String name = root.getName();
+        for (int i = 1; Utils.join(dir, name).exists(); i += 1) {
+            name = root.getName() + i;
+        }
+        File gitDir = Utils.join(dir, name);
+        gitDir.mkdirs();
+        root.mkdirs();
+        File dotGitlet = Utils.join(root, Context.DOT_GITLET);
+        Utils.writeContents(dotGitlet, Context.GITDIR + gitDir.getPath()
+                + "\n");
+        Utils.writeContents(Utils.join(gitDir, GITDIR_FILE),
+                dotGitlet.getPath() + "\n");
+        Map<String, String> snapshot = Commit.readCommit(id).getSnapshot();
+        Context here = Context.current();
+        Context.enter(new Context(root, gitDir, repo));
+        try {
+            new StagingArea().saveStage();
+            Refs.local().setHead(branch);
+            for (Map.Entry<String, String> file : snapshot.entrySet()) {
+                WorkingTree.write(file.getKey(), file.getValue());
+            }
+        } finally {
+            Context.enter(here);
+        }
+    }
+
+    /** Refuse to go on if the branch BRANCH is checked out in a worktree
+     *  other than the current one.
+     *  @param branch : The name of a branch. */
+    static void checkNotCheckedOut(String branch) {
+        File gitDir = checkedOut(branch);
+        if (gitDir != null && !gitDir.equals(absolute(
+                WorkingDirectory.gitDir()))) {
+            throw new GitletException("That branch is checked out in "
+                    + "another worktree.");
+        }
+    }
+
+    /** Return the directory of the state of the worktree where BRANCH is
+     *  checked out.
+     *  @param branch : The name of a branch.
+     *  @return : The directory, absolute, or null if there is none. */
+    private static File checkedOut(String branch) {
+        for (Context context : all()) {
+            if (branch.equals(refs(context).headName())) {
+                return absolute(context.getGitDir());
+            }
+        }
+        return null;
+    }
+
+    /** Return FILE made absolute, without "." and "..".
+     *  @param file : A file.
+     *  @return : The same file. */
+    private static File absolute(File file) {
+        return file.toPath().toAbsolutePath().normalize().toFile();
+    }
+
+    /** Return the contexts of the main worktree and of every linked
+     *  worktree that still exists.
+     *  @return : The contexts, the main worktree first. */
+    static List<Context> all() {
+        File repo = WorkingDirectory.repo();
+        ArrayList<Context> contexts = new ArrayList<Context>();
+        contexts.add(new Context(repo.getAbsoluteFile().getParentFile(),
+                repo, repo));
+        File[] dirs = Utils.join(repo, DIR).listFiles();
+        if (dirs == null) {
+            return contexts;
+        }
+        Arrays.sort(dirs);
+        for (File gitDir : dirs) {
+            File gitdirFile = Utils.join(gitDir, GITDIR_FILE);
+            if (!gitdirFile.isFile()) {
+                continue;
+            }
+            File dotGitlet = new File(new String(Utils.readContents(
+                    gitdirFile), StandardCharsets.UTF_8).trim());
+            if (dotGitlet.isFile()) {
+                contexts.add(new Context(dotGitlet.getParentFile(), gitDir,
+                        repo));
+            }
+        }
+        return contexts;
+    }
+
+    /** Return the refs as the worktree of CONTEXT sees them, read afresh.
+     *  @param context : The context of a worktree.
+     *  @return : The refs. */
+    private static Refs refs(Context context) {
+        return new Refs(context.getRepo(), context.getGitDir());
+    }
+
+    /** Directory of the linked worktrees inside .gitlet. */
+    static final String DIR = "worktrees";
+
+    /** Name of the file inside a linked worktree's directory naming its
+     *  .gitlet file. */
+    static final String GITDIR_FILE = "gitdir";
+}
@@ -0,0 +1,432 @@
+import sys, re, json, shlex, time
+from subprocess import Popen, PIPE, DEVNULL, check_call, CalledProcessError
+from os.path import abspath, basename, dirname, exists, join, splitext
+from getopt import getopt, GetoptError
+from os import chdir, environ, getcwd, makedirs, access, wait4, W_OK, \
+     waitstatus_to_exitcode
+from shutil import copytree, rmtree
+from tempfile import TemporaryFile, mkdtemp
+from threading import Timer
+
+import tester
+
+SHORT_USAGE = """\
+Usage: python3 perf.py OPTIONS [TEST.in ...]
+
+   OPTIONS may include
+       --repeat=N       Run each scenario N times (default 3).
+       --only=PATTERN   Run only the scenarios whose names match PATTERN.
+       --no-generated   Run only the TEST.in scenarios given.
+       --save=FILE      Write the results to FILE as JSON.
+       --baseline=FILE  Compare the results with those saved in FILE.
+       --threshold=PCT  Percent by which a measure may exceed the baseline
+                        before it counts as a regression (default 25).
+       --min-delta=MS   Milliseconds by which a latency may exceed the
+                        baseline without counting as a regression, however
+                        large the percentage (default 50).
+       --progdir=DIR    Directory containing the gitlet application.
+       --generator=DIR  Directory containing gitlet.RepoGenerator (default
+                        ../benchmarks/gen-classes).
+       --src=SRC        Use SRC instead of "src" as the subdirectory
+                        containing files referenced by + and =.
+       --keep           Keep scenario directories.
+"""
+
+USAGE = SHORT_USAGE + """\
+
+Runs scenarios against gitlet and measures every gitlet command they run:
+its wall-clock time, its CPU time and peak resident set size (from the
+operating system's accounting for the child process), and the bytes gitlet
+read and wrote and the objects it deserialized (from the span gitlet prints
+with GITLET_TRACE=1). Nothing runs but gitlet itself.
+
+A scenario is either a TEST.in file, replayed as tester.py would (the
+output of each command is still checked, and a scenario whose output is
+wrong counts as a failure), or one of the generated scenarios listed in
+GENERATED below, which fill a directory with a large repository made by
+gitlet.RepoGenerator and then run a few commands there. The repository is
+made once and copied before each run, outside the time measured.
+
+The measures of a command are grouped by the scenario and the command's
+first operand: all the commands of the TEST.in files under "replay", so
+"replay: add" gathers every add of every file, and those of a generated
+scenario under its name, as in "status-10k: status". For each group the
+results give the number of runs, the 50th, 90th and 99th percentile and
+the maximum of the wall time, the median CPU time, the largest peak RSS,
+and the median bytes read and written.
+
+With --baseline, a group regresses if its median wall time or CPU time
+exceeds the baseline's by more than PCT percent and by more than MS
+milliseconds, or its peak RSS or median bytes read or written exceed the
+baseline's by more than PCT percent. The exit code is 1 if any group
+regressed or any scenario failed. Groups missing from either side are
+reported but do not fail. A baseline is only comparable with results from
+the same machine: make one with --save before a change, and compare with
+it after.
+"""
+
+GITLET_COMMAND = ["java", "gitlet.Main"]
+GENERATOR_COMMAND = ["java", "gitlet.RepoGenerator"]
+TIMEOUT = 600
+
+# The generated scenarios: a name, the options of gitlet.RepoGenerator,
+# and the steps run in the repository it makes. A step is a gitlet
+# command, or "edit N", which rewrites the first N files of the
+# repository outside the time measured.
+GENERATED = [
+    ("status-10k", "--files 10000 --commits 4 --churn 0.001",
+     ["status"]),
+    ("add-commit-10k", "--files 10000 --commits 4 --churn 0.001",
+     ["edit 100", "add -A", "commit edited"]),
+    ("commit-all-10k", "--files 10000 --commits 4 --churn 0.001",
+     ["edit 100", "commit -a edited"]),
+    ("checkout-10k", "--files 10000 --commits 20 --churn 0.005",
+     ["checkout other", "checkout master"]),
+    ("fsck-10k", "--files 10000 --commits 4 --churn 0.001",
+     ["fsck"]),
+    ("log-2k", "--files 10 --commits 2000 --churn 0",
+     ["log", "global-log"]),
+    ("merge-criss-cross", "--files 10 --commits 24 --churn 0 "
+     "--shape criss-cross --merge-every 1",
+     ["edit 1", "commit -a edited", "merge other"]),
+]
+
+# The measures compared with a baseline, whether each is a time, and the
+# name printed for it.
+MEASURES = [
+    ("p50_ms", True, "wall time"),
+    ("cpu_ms", True, "CPU time"),
+    ("peak_rss_kb", False, "peak RSS"),
+    ("bytes_read", False, "bytes read"),
+    ("bytes_written", False, "bytes written"),
+]
+
+def Usage():
+    print(SHORT_USAGE, file=sys.stderr)
+    sys.exit(1)
+
+def fileName(i):
+    """The name RepoGenerator gives its Ith file."""
+    return "d{}/f{}.txt".format(i // 100, i)
+
+def runGitlet(cmnd, dir, timeout, samples, key):
+    """Run gitlet with the operands in the string CMND in directory DIR,
+    killing it after TIMEOUT seconds, and add its measures to
+    SAMPLES[KEY]. Returns a message, "OK" if it ran to the end, and its
+    standard output."""
+    args = shlex.split(cmnd)
+    here = getcwd()
+    with TemporaryFile() as err:
+        try:
+            chdir(dir)
+            start = time.perf_counter()
+            proc = Popen(GITLET_COMMAND + args, stdin=DEVNULL, stdout=PIPE,
+                         stderr=err, universal_newlines=True)
+        finally:
+            chdir(here)
+        timer = Timer(timeout, proc.kill)
+        timer.start()
+        try:
+            out = proc.stdout.read()
+            _, status, usage = wait4(proc.pid, 0)
+            wall = time.perf_counter() - start
+        finally:
+            timer.cancel()
+            proc.stdout.close()
+        proc.returncode = code = waitstatus_to_exitcode(status)
+        if code < 0:
+            return "timeout", None
+        err.seek(0)
+        span = rootSpan(err.read().decode(errors="replace"))
+    rss = usage.ru_maxrss
+    if sys.platform == "darwin":
+        rss //= 1024
+    samples.setdefault(key, []).append({
+        "wall_ms": wall * 1000,
+        "cpu_ms": (usage.ru_utime + usage.ru_stime) * 1000,
+        "peak_rss_kb": rss,
+        "bytes_read": span.get("bytes_read"),
+        "bytes_written": span.get("bytes_written"),
+        "objects": span.get("objects"),
+    })
+    if code != 0:
+        return "java gitlet.Main exited with code {}".format(code), out
+    return "OK", out
+
+def rootSpan(text):
+    """The outermost span among the lines of TEXT, as a dictionary, or an
+    empty one if there is none."""
+    for line in text.splitlines():
+        if line.startswith("{"):
+            try:
+                span = json.loads(line)
+            except ValueError:
+                continue
+            if span.get("depth") == 0:
+                return span
+    return {}
+
+def replay(test, samples):
+    """Replay the scenario TEST.in with tester.py's interpreter, adding the
+    measures of its commands to SAMPLES. Every command is given TIMEOUT
+    seconds, whatever the scenario asks for, since it runs slower while
+    measured. Returns None if it ran as expected, and otherwise a message
+    saying what went wrong."""
+
+    def execute(cmnd, dir, timeout):
+        word = (shlex.split(cmnd) or ["gitlet"])[0]
+        return runGitlet(cmnd, dir, TIMEOUT, samples, "replay: " + word)
+
+    error = tester.runTest(test, execute)
+    if error is None:
+        return None
+    msg, line_num, _ = error
+    return "{} on line {}".format(msg, line_num)
+
+def generate(name, options, generator_dir, cache):
+    """Make the repository of the generated scenario NAME, with the
+    RepoGenerator options OPTIONS, in a directory under CACHE, unless a
+    scenario made it already. Returns the directory."""
+    dir = join(cache, re.sub(r'\W', '_', options))
+    if exists(dir):
+        return dir
+    makedirs(dir)
+    print("generating...", end=" ", flush=True)
+    check_call(GENERATOR_COMMAND + shlex.split(options), cwd=dir,
+               stdout=DEVNULL, env=dict(environ, CLASSPATH=generator_dir))
+    return dir
+
+def runGenerated(name, steps, repo, rep, samples):
+    """Run STEPS, those of the generated scenario NAME, in a copy of the
+    repository in REPO, for repetition number REP, adding the measures of
+    the gitlet commands to SAMPLES. Returns None if every command ran,
+    and otherwise a message saying what went wrong."""
+    dir = tester.createTempDir(name)
+    try:
+        rmtree(dir)
+        copytree(repo, dir, symlinks=True)
+        for step in steps:
+            M = re.match(r'edit\s+(\d+)$', step)
+            if M:
+                for i in range(int(M.group(1))):
+                    with open(join(dir, fileName(i)), "w") as out:
+                        out.write("edited {} {}\n".format(rep, i))
+                continue
+            msg, out = runGitlet(step, dir, TIMEOUT, samples,
+                                 "{}: {}".format(name,
+                                                 shlex.split(step)[0]))
+            if msg != "OK":
+                return "{} running {}".format(msg, step)
+        return None
+    finally:
+        if not keep:
+            tester.cleanTempDir(dir)
+
+def percentile(values, pct):
+    """The PCTth percentile of VALUES, which are sorted, by the nearest
+    rank."""
+    rank = max(1, -(-len(values) * pct // 100))
+    return values[int(rank) - 1]
+
+def median(values):
+    """The median of VALUES, leaving out None, or None if all are."""
+    values = sorted(v for v in values if v is not None)
+    return percentile(values, 50) if values else None
+
+def summarize(samples):
+    """The results of each group of SAMPLES."""
+    results = {}
+    for key, runs in sorted(samples.items()):
+        wall = sorted(r["wall_ms"] for r in runs)
+        results[key] = {
+            "n": len(runs),
+            "p50_ms": round(percentile(wall, 50), 1),
+            "p90_ms": round(percentile(wall, 90), 1),
+            "p99_ms": round(percentile(wall, 99), 1),
+            "max_ms": round(wall[-1], 1),
+            "cpu_ms": round(median(r["cpu_ms"] for r in runs), 1),
+            "peak_rss_kb": max(r["peak_rss_kb"] for r in runs),
+            "bytes_read": median(r["bytes_read"] for r in runs),
+            "bytes_written": median(r["bytes_written"] for r in runs),
+            "objects": median(r["objects"] for r in runs),
+        }
+    return results
+
+def printResults(results):
+    fmt = "{:<32} {:>4} {:>8} {:>8} {:>8} {:>8} {:>8} {:>8} {:>11} {:>11}"
+    print(fmt.format("command", "n", "p50 ms", "p90 ms", "p99 ms", "max ms",
+                     "cpu ms", "rss MB", "read", "written"))
+    for key, r in results.items():
+        print(fmt.format(key, r["n"], r["p50_ms"], r["p90_ms"], r["p99_ms"],
+                         r["max_ms"], r["cpu_ms"],
+                         round(r["peak_rss_kb"] / 1024),
+                         "-" if r["bytes_read"] is None else r["bytes_read"],
+                         "-" if r["bytes_written"] is None
+                         else r["bytes_written"]))
+
+def compare(results, baseline, threshold, min_delta):
+    """Print how RESULTS differ from BASELINE and return the number of
+    regressions."""
+    regressions = 0
+    print()
+    print("Compared with the baseline (threshold {}%):".format(threshold))
+    for key in sorted(set(results) | set(baseline)):
+        if key not in baseline:
+            print("  {}: new".format(key))
+            continue
+        if key not in results:
+            print("  {}: not run".format(key))
+            continue
+        for measure, is_time, label in MEASURES:
+            old, new = baseline[key].get(measure), results[key][measure]
+            if old is None or new is None:
+                continue
+            limit = old * (1 + threshold / 100)
+            if is_time:
+                limit = max(limit, old + min_delta)
+            if new > limit:
+                regressions += 1
+                change = "+{:.0f}%".format((new - old) * 100 / old) \
+                    if old else "from 0"
+                print("  {}: {} regressed, {} -> {} ({})"
+                      .format(key, label, old, new, change))
+    if regressions == 0:
+        print("  No regressions.")
+    return regressions
+
+if __name__ == "__main__":
+    keep = False
+    prog_dir = None
+    generator_dir = None
+    repeat = 3
+    only = None
+    generated = True
+    save = None
+    baseline_file = None
+    threshold = 25.0
+    min_delta = 50.0
+    tester.src_dir = 'src'
+    tester.output_tolerance = 3
+    tester.verbose = False
+
+    try:
+        opts, files = \
+            getopt(sys.argv[1:], '',
+                   ['repeat=', 'only=', 'no-generated', 'save=',
+                    'baseline=', 'threshold=', 'min-delta=', 'progdir=',
+                    'generator=', 'src=', 'keep', 'help'])
+        for opt, val in opts:
+            if opt == '--repeat':
+                repeat = int(val)
+            elif opt == '--only':
+                only = re.compile(val)
+            elif opt == '--no-generated':
+                generated = False
+            elif opt == '--save':
+                save = val
+            elif opt == '--baseline':
+                baseline_file = val
+            elif opt == '--threshold':
+                threshold = float(val)
+            elif opt == '--min-delta':
+                min_delta = float(val)
+            elif opt == '--progdir':
+                prog_dir = abspath(val)
+            elif opt == '--generator':
+                generator_dir = abspath(val)
+            elif opt == '--src':
+                tester.src_dir = abspath(val)
+            elif opt == '--keep':
+                keep = True
+            elif opt == '--help':
+                print(USAGE)
+                sys.exit(0)
+        if prog_dir is None:
+            prog_dir = abspath(getcwd())
+            k = 10
+            while k > 0 and access(prog_dir, W_OK):
+                k -= 1
+                if exists(join(prog_dir, 'gitlet', 'Main.class')):
+                    break
+                prog_dir = dirname(prog_dir)
+            else:
+                print("Could not find gitlet.Main.", file=sys.stderr)
+                sys.exit(1)
+    except (GetoptError, ValueError):
+        Usage()
+    if generator_dir is None:
+        generator_dir = join(dirname(abspath(__file__)), '..', 'benchmarks',
+                             'gen-classes')
+    tester.keep = keep
+    if generated and not exists(join(generator_dir, 'gitlet',
+                                     'RepoGenerator.class')):
+        print("Could not find gitlet.RepoGenerator in {}; run 'make"
+              " gen-sentinel' in benchmarks, or use --no-generated."
+              .format(generator_dir), file=sys.stderr)
+        sys.exit(1)
+
+    environ['CLASSPATH'] = prog_dir
+    environ['GITLET_TRACE'] = '1'
+
+    scenarios = [f for f in files if exists(f)]
+    if only:
+        scenarios = [f for f in scenarios
+                     if only.search(splitext(basename(f))[0])]
+    to_generate = [g for g in GENERATED
+                   if generated and (not only or only.search(g[0]))]
+    if not scenarios and not to_generate:
+        print(USAGE)
+        sys.exit(0)
+
+    samples = {}
+    failures = 0
+    for test in scenarios:
+        print("{}:".format(splitext(basename(test))[0]), end=" ",
+              flush=True)
+        try:
+            for rep in range(repeat):
+                msg = replay(test, samples)
+                if msg:
+                    break
+        except ValueError as excp:
+            msg = excp.args[0]
+        print("OK" if msg is None else "FAILED ({})".format(msg))
+        failures += msg is not None
+
+    cache = mkdtemp(prefix="gitlet-perf-")
+    try:
+        for name, options, steps in to_generate:
+            print("{}:".format(name), end=" ", flush=True)
+            try:
+                repo = generate(name, options, generator_dir, cache)
+                for rep in range(repeat):
+                    msg = runGenerated(name, steps, repo, rep, samples)
+                    if msg:
+                        break
+            except CalledProcessError as excp:
+                msg = "RepoGenerator exited with code {}" \
+                    .format(excp.returncode)
+            print("OK" if msg is None else "FAILED ({})".format(msg))
+            failures += msg is not None
+    finally:
+        rmtree(cache, ignore_errors=True)
+
+    results = summarize(samples)
+    print()
+    printResults(results)
+    if save:
+        with open(save, "w") as out:
+            json.dump({"repeat": repeat, "commands": results}, out,
+                      indent=1, sort_keys=True)
+            out.write("\n")
+    regressions = 0
+    if baseline_file:
+        with open(baseline_file) as inp:
+            baseline = json.load(inp)["commands"]
+        regressions = compare(results, baseline, threshold, min_delta)
+
+    print()
+    print("Ran {} scenarios, {} failed; {} regressions."
+          .format(len(scenarios) + len(to_generate), failures, regressions))
+    if failures or regressions:
+        sys.exit(1)
@@ -3,7 +3,7 @@ from subprocess import \
      check_output, PIPE, STDOUT, DEVNULL, CalledProcessError, TimeoutExpired
 from os.path import abspath, basename, dirname, exists, join, splitext
 from getopt import getopt, GetoptError
-from os import chdir, environ, getcwd, mkdir, remove, access, W_OK
+from os import chdir, environ, getcwd, mkdir, makedirs, remove, access, W_OK
 from shutil import copyfile, rmtree
 from math import log
 
@@ -140,6 +140,7 @@ def doDelete(name, dir):
 def doCopy(dest, src, dir):
     try:
         doDelete(dest, dir)
+        makedirs(dirname(join(dir, dest)), exist_ok=True)
         copyfile(join(src_dir, src), join(dir, dest))
     except OSError:
         raise ValueError("file {} could not be copied to {}".format(src, dest))
@@ -234,10 +235,29 @@ def line_reader(f, prefix):
     except FileNotFoundError:
         raise ValueError("file {} not found".format(f))
 
-def doTest(test):
-    last_groups = []
+def doTest(test, execute=None):
     base = splitext(basename(test))[0]
     print("{}:".format(base), end=" ")
+    error = runTest(test, execute)
+    if error is None:
+        print("OK")
+        return True
+    msg, line_num, included_files = error
+    print("ERROR ({})".format(msg))
+    reportDetails(test, included_files, line_num)
+    return False
+
+def runTest(test, execute=None):
+    """Execute the instructions in TEST in a new directory, running each
+    gitlet command with EXECUTE(COMMAND, DIR, TIMEOUT), which returns a
+    message, "OK" if the command ran to the end, and its output, as
+    doExecute does (the default).  Returns None if every check passed,
+    and otherwise a tuple of a message saying what went wrong, the number
+    of the line where it did and the files included so far."""
+    if execute is None:
+        execute = doExecute
+    last_groups = []
+    base = splitext(basename(test))[0]
     cdir = tmpdir = createTempDir(base)
     if verbose:
         print("Testing directory: {}".format(tmpdir))
@@ -273,8 +293,7 @@ def doTest(test):
         while True:
             line_num, line = next(inp, (line_num, ''))
             if line == "":
-                print("OK")
-                return True
+                return None
             if not Match(r'\s*#', line):
                 line = do_substs(line)
             if verbose:
@@ -313,7 +332,7 @@ def doTest(test):
                         is_regexp = Group(1)
                         break
                     expected.append(do_substs(L))
-                msg, out = doExecute(cmnd, cdir, timeout)
+                msg, out = execute(cmnd, cdir, timeout)
                 if verbose:
                     if out:
                         print(re.sub(r'(?m)^', '- ', chop_nl(out)))
@@ -322,26 +341,19 @@ def doTest(test):
                                                 is_regexp):
                         msg = "incorrect output"
                 if msg != "OK":
-                    print("ERROR ({})".format(msg))
-                    reportDetails(test, included_files, line_num)
-                    return False
+                    return msg, line_num, included_files
             elif Match(r'=\s*(\S+)\s+(\S+)', line):
                 if not correctFileOutput(Group(1), Group(2), cdir):
-                    print("ERROR (file {} has incorrect content)"
-                          .format(Group(1)))
-                    reportDetails(test, included_files, line_num)
-                    return False
+                    return ("file {} has incorrect content".format(Group(1)),
+                            line_num, included_files)
             elif Match(r'\*\s*(\S+)', line):
                 if fileExists(Group(1), cdir):
-                    print("ERROR (file {} present)".format(Group(1)))
-                    reportDetails(test, included_files, line_num)
-                    return False
+                    return ("file {} present".format(Group(1)), line_num,
+                            included_files)
             elif Match(r'E\s*(\S+)', line):
                 if not fileExists(Group(1), cdir):
-                    print("ERROR (file or directory {} not present)"
-                          .format(Group(1)))
-                    reportDetails(test, included_files, line_num)
-                    return False
+                    return ("file or directory {} not present"
+                            .format(Group(1)), line_num, included_files)
             elif Match(r'(?s)D\s*([a-zA-Z_][a-zA-Z_0-9]*)\s*"(.*)"\s*$', line):
                 defns[Group(1)] = Group(2)
             else: